@@ -14,22 +14,26 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
 import java.sql.SQLException;
-import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.xml.sax.SAXException;
 
 import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.batch.InvoiceMetrics;
+import com.itextpdf.zugferd.cache.ResourceCache;
 import com.itextpdf.zugferd.data.InvoiceData;
 import com.itextpdf.zugferd.exceptions.DataIncompleteException;
 import com.itextpdf.zugferd.exceptions.InvalidCodeException;
+import com.itextpdf.zugferd.html.ComfortHtmlWriter;
+import com.itextpdf.zugferd.pojo.CsvInvoiceSource;
 import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.InvoiceSource;
+import com.itextpdf.zugferd.pojo.JdbcInvoiceSource;
 import com.itextpdf.zugferd.pojo.PojoFactory;
 import com.itextpdf.zugferd.profiles.IComfortProfile;
 
@@ -52,10 +56,16 @@ public class HtmlInvoicesComfort {
     /** The Constant LOGO. */
     public static final String LOGO = "resources/zugferd/logo.png";
     
+    /** The CSV file with the metrics of every invoice, see {@link InvoiceMetrics#METRICS_PROPERTY}. */
+    public static final String METRICS = "results/zugferd/html/comfort.metrics.csv";
+    
+    /** Whether the HTML is written with the {@link ComfortHtmlWriter} instead of the XSLT stylesheet. */
+    protected boolean direct = ComfortHtmlWriter.isSelected();
+    
     /**
      * The main method.
      *
-     * @param args the arguments
+     * @param args optionally the path of a CSV export that is read instead of the database
      * @throws SQLException the SQL exception
      * @throws IOException Signals that an I/O exception has occurred.
      * @throws ParserConfigurationException the parser configuration exception
@@ -78,12 +88,28 @@ public class HtmlInvoicesComfort {
         File logo = new File(LOGO);
         copyFile(logo, new File(file.getParentFile(), logo.getName()));
         HtmlInvoicesComfort app = new HtmlInvoicesComfort();
-        PojoFactory factory = PojoFactory.getInstance();
-        List<Invoice> invoices = factory.getInvoices();
-        for (Invoice invoice : invoices) {
-            app.createHtml(invoice, new FileWriter(String.format(DEST, invoice.getId())));
+        PojoFactory factory = args.length > 0 ? null : PojoFactory.getInstance();
+        InvoiceSource source = factory == null
+            ? new CsvInvoiceSource(new File(args[0])) : new JdbcInvoiceSource(factory);
+        InvoiceMetrics metrics = InvoiceMetrics.fromSystemProperty(new File(METRICS));
+        try {
+            Invoice invoice;
+            while ((invoice = source.next()) != null) {
+                String dest = String.format(DEST, invoice.getId());
+                if (metrics != null)
+                    metrics.start();
+                app.createHtml(invoice, new FileWriter(dest));
+                if (metrics != null)
+                    metrics.stop(invoice, new File(dest).length());
+            }
+        }
+        finally {
+            if (metrics != null)
+                metrics.close();
         }
-        factory.close();
+        source.close();
+        if (factory != null)
+            factory.close();
     }
     
     /**
@@ -102,16 +128,29 @@ public class HtmlInvoicesComfort {
     	throws IOException, ParserConfigurationException, SAXException,
     	DataIncompleteException, InvalidCodeException, TransformerException {
         IComfortProfile comfort = new InvoiceData().createComfortProfileData(invoice);
-        InvoiceDOM dom = new InvoiceDOM(comfort);
-        StreamSource xml = new StreamSource(new ByteArrayInputStream(dom.toXML()));
-        StreamSource xsl = new StreamSource(new File(XSL));
-        TransformerFactory factory = TransformerFactory.newInstance();
-        Transformer transformer = factory.newTransformer(xsl);
-        transformer.transform(xml, new StreamResult(writer));
+        if (direct) {
+            new ComfortHtmlWriter(writer).write(comfort);
+        }
+        else {
+            InvoiceDOM dom = new InvoiceDOM(comfort);
+            StreamSource xml = new StreamSource(new ByteArrayInputStream(dom.toXML()));
+            Transformer transformer = ResourceCache.getTemplates(XSL).newTransformer();
+            transformer.transform(xml, new StreamResult(writer));
+        }
         writer.flush();
         writer.close();
     }
     
+    /**
+     * Chooses between the XSLT stylesheet and the {@link ComfortHtmlWriter}.
+     * The default is taken from the {@link ComfortHtmlWriter#ENGINE_PROPERTY} system property.
+     *
+     * @param direct true to write the HTML with the {@link ComfortHtmlWriter}
+     */
+    public void setDirectHtml(boolean direct) {
+        this.direct = direct;
+    }
+    
     /**
      * Copies a file.
      *
@@ -0,0 +1,107 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd;
+
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+
+/**
+ * Named sets of writer settings for the {@link ZugferdDocument} and
+ * {@link com.itextpdf.pdfa.PdfADocument} instances we create.
+ * The profiles trade writing speed for file size. Unless another profile is
+ * selected with the {@link #PROFILE_PROPERTY} system property, the examples
+ * use BASELINE and write exactly what a plain PdfWriter writes.
+ */
+public enum OutputProfile {
+    
+    /** The settings of a plain <code>new PdfWriter(dest)</code>: iText's defaults are left untouched. */
+    BASELINE(CompressionConstants.DEFAULT_COMPRESSION, false, false),
+    
+    /** Fastest deflate level, classic cross-reference table. */
+    FAST(CompressionConstants.BEST_SPEED, false, false),
+    
+    /** Default deflate level, with object streams and a cross-reference stream. */
+    BALANCED(CompressionConstants.DEFAULT_COMPRESSION, true, false),
+    
+    /** Best deflate level, object streams, and reuse of identical resources. */
+    SMALLEST(CompressionConstants.BEST_COMPRESSION, true, true);
+    
+    /** The system property that selects the profile used by the examples. */
+    public static final String PROFILE_PROPERTY = "zugferd.profile";
+    
+    /** The deflate level of the streams. */
+    private final int compressionLevel;
+    
+    /** Whether objects are stored in object streams, with a cross-reference stream. */
+    private final boolean fullCompression;
+    
+    /** Whether identical objects, e.g. fonts and images, are written only once. */
+    private final boolean smartMode;
+    
+    /**
+     * Creates a profile.
+     *
+     * @param compressionLevel the deflate level
+     * @param fullCompression whether object streams and a cross-reference stream are used
+     * @param smartMode whether identical objects are written only once
+     */
+    private OutputProfile(int compressionLevel, boolean fullCompression, boolean smartMode) {
+        this.compressionLevel = compressionLevel;
+        this.fullCompression = fullCompression;
+        this.smartMode = smartMode;
+    }
+    
+    /**
+     * Gets the writer properties of this profile.
+     *
+     * @return new writer properties
+     */
+    public WriterProperties getWriterProperties() {
+        if (this == BASELINE) {
+            return new WriterProperties();
+        }
+        WriterProperties properties = new WriterProperties()
+            .setCompressionLevel(compressionLevel)
+            .setFullCompressionMode(fullCompression);
+        if (smartMode) {
+            properties.useSmartMode();
+        }
+        return properties;
+    }
+    
+    /**
+     * Creates a writer with the settings of this profile.
+     *
+     * @param os the output stream
+     * @return the writer
+     */
+    public PdfWriter createWriter(OutputStream os) {
+        return new PdfWriter(os, getWriterProperties());
+    }
+    
+    /**
+     * Creates a writer with the settings of this profile.
+     *
+     * @param dest the path of the file
+     * @return the writer
+     * @throws FileNotFoundException if the file can't be created
+     */
+    public PdfWriter createWriter(String dest) throws FileNotFoundException {
+        return new PdfWriter(dest, getWriterProperties());
+    }
+    
+    /**
+     * Gets the profile selected with the {@link #PROFILE_PROPERTY} system property.
+     *
+     * @return the selected profile, BASELINE if none was selected
+     */
+    public static OutputProfile getDefault() {
+        return valueOf(System.getProperty(PROFILE_PROPERTY, BASELINE.name()).toUpperCase());
+    }
+}
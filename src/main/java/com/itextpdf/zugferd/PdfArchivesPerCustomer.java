@@ -0,0 +1,148 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.pdf.PdfAConformanceLevel;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfOutputIntent;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.property.AreaBreakType;
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.pdfa.PdfADocument;
+import com.itextpdf.zugferd.cache.ResourceCache;
+import com.itextpdf.zugferd.data.InvoiceData;
+import com.itextpdf.zugferd.pojo.Customer;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+import com.itextpdf.zugferd.profiles.IBasicProfile;
+
+/**
+ * Creates one PDF/A-3B archive per customer, containing all the invoices
+ * of that customer. Every invoice starts on a new page and its ZUGFeRD XML
+ * is attached as a separate file. The fonts and the output intent are
+ * stored only once per archive instead of once per invoice.
+ */
+public class PdfArchivesPerCustomer {
+    
+    /** The pattern of the destination paths. */
+    public static final String DEST = "results/zugferd/archive/customer%05d.pdf";
+    
+    /** The pattern of the names of the attached XML files. */
+    public static final String ATTACHMENT = "ZUGFeRD-invoice-%05d.xml";
+    
+    /** The output profile that determines compression and object streams. */
+    protected OutputProfile profile = OutputProfile.getDefault();
+    
+    /** How the XML is embedded. */
+    protected XmlAttachment attachment = new XmlAttachment();
+    
+    /** Creates the layout of every invoice. */
+    protected PdfInvoicesBasic layout = new PdfInvoicesBasic();
+    
+    /**
+     * The main method.
+     *
+     * @param args the arguments
+     * @throws Exception if an archive can't be created
+     */
+    public static void main(String[] args) throws Exception {
+    	LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+    	File file = new File(DEST);
+        file.getParentFile().mkdirs();
+        PojoFactory factory = PojoFactory.getInstance();
+        Map<Integer, List<Invoice>> invoices = groupByCustomer(factory.getInvoices());
+        PdfArchivesPerCustomer app = new PdfArchivesPerCustomer();
+        long bytes = 0;
+        for (Map.Entry<Integer, List<Invoice>> entry : invoices.entrySet()) {
+            File dest = new File(String.format(DEST, entry.getKey()));
+            app.createPdf(entry.getValue(), new FileOutputStream(dest));
+            bytes += dest.length();
+        }
+        factory.close();
+        System.out.println(String.format("%d archives, %d bytes", invoices.size(), bytes));
+    }
+    
+    /**
+     * Groups invoices by customer.
+     *
+     * @param invoices the invoices
+     * @return the invoices of every customer, ordered by customer id
+     */
+    public static Map<Integer, List<Invoice>> groupByCustomer(List<Invoice> invoices) {
+        Map<Integer, List<Invoice>> map = new TreeMap<Integer, List<Invoice>>();
+        for (Invoice invoice : invoices) {
+            int id = invoice.getCustomer().getId();
+            List<Invoice> list = map.get(id);
+            if (list == null) {
+                list = new ArrayList<Invoice>();
+                map.put(id, list);
+            }
+            list.add(invoice);
+        }
+        return map;
+    }
+    
+    /**
+     * Sets the output profile.
+     *
+     * @param profile the output profile
+     */
+    public void setOutputProfile(OutputProfile profile) {
+        this.profile = profile;
+    }
+    
+    /**
+     * Creates an archive with the invoices of a single customer.
+     *
+     * @param invoices the invoices of the customer
+     * @param os the output stream to which the PDF will be written
+     * @throws Exception if the archive can't be created
+     */
+    public void createPdf(List<Invoice> invoices, OutputStream os) throws Exception {
+        PdfADocument pdfDocument = new PdfADocument(
+            profile.createWriter(os), PdfAConformanceLevel.PDF_A_3B,
+            new PdfOutputIntent("Custom", "", "http://www.color.org",
+                "sRGB IEC61966-2.1", new ByteArrayInputStream(ResourceCache.getBytes(PdfInvoicesBasic.ICC))));
+        Customer customer = invoices.get(0).getCustomer();
+        pdfDocument.getDocumentInfo().setTitle(String.format("Invoices for %s %s",
+            customer.getFirstName(), customer.getLastName()));
+        
+        // The fonts are created once, so that they are embedded once
+    	Document document = new Document(pdfDocument);
+        document.setFont(PdfFontFactory.createFont(PdfInvoicesBasic.REGULAR, true))
+    			.setFontSize(12);
+    	PdfFont bold = PdfFontFactory.createFont(PdfInvoicesBasic.BOLD, true);
+    	
+        InvoiceData invoiceData = new InvoiceData();
+        boolean first = true;
+        for (Invoice invoice : invoices) {
+            IBasicProfile basic = invoiceData.createBasicProfileData(invoice);
+            InvoiceDOM dom = new InvoiceDOM(basic);
+            String name = String.format(ATTACHMENT, invoice.getId());
+            pdfDocument.addAssociatedFile(name, attachment.createFileSpec(
+                pdfDocument, invoice.getId(), dom.toXML(), String.format("ZUGFeRD invoice %s", basic.getId()), name,
+                PdfName.Data));
+            if (!first) {
+                document.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+            }
+            first = false;
+            layout.addContent(document, invoice, basic, bold);
+        }
+        
+        document.close();
+    }
+}
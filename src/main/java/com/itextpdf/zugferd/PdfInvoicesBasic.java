@@ -4,27 +4,25 @@
  */
 package com.itextpdf.zugferd;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
-import com.itextpdf.kernel.pdf.filespec.PdfFileSpec;
 import org.xml.sax.SAXException;
 
 import com.itextpdf.kernel.font.PdfFont;
 import com.itextpdf.kernel.font.PdfFontFactory;
-import com.itextpdf.kernel.pdf.PdfDictionary;
 import com.itextpdf.kernel.pdf.PdfName;
 import com.itextpdf.kernel.pdf.PdfOutputIntent;
-import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.borders.Border;
 import com.itextpdf.layout.element.Cell;
@@ -34,9 +32,13 @@ import com.itextpdf.layout.element.Text;
 import com.itextpdf.layout.property.TextAlignment;
 import com.itextpdf.layout.property.UnitValue;
 import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.batch.InvoiceBatch;
+import com.itextpdf.zugferd.batch.InvoiceFormat;
+import com.itextpdf.zugferd.cache.ResourceCache;
 import com.itextpdf.zugferd.data.InvoiceData;
 import com.itextpdf.zugferd.exceptions.DataIncompleteException;
 import com.itextpdf.zugferd.exceptions.InvalidCodeException;
+import com.itextpdf.zugferd.pojo.CsvInvoiceSource;
 import com.itextpdf.zugferd.pojo.Invoice;
 import com.itextpdf.zugferd.pojo.Item;
 import com.itextpdf.zugferd.pojo.PojoFactory;
@@ -53,6 +55,9 @@ public class PdfInvoicesBasic {
     /** The pattern of the destination paths. */
     public static final String DEST = "results/zugferd/pdf/basic%05d.pdf";
     
+    /** The checkpoint that allows an interrupted run to resume. */
+    public static final String CHECKPOINT = "results/zugferd/pdf/basic.checkpoint";
+    
     /** The path to the color profile. */
     public static final String ICC = "resources/color/sRGB_CS_profile.icm";
     
@@ -65,10 +70,34 @@ public class PdfInvoicesBasic {
     /** A <code>String</code> with a newline character. */
     public static final String NEWLINE = "\n";
     
+    /** The output profile that determines compression and object streams. */
+    protected OutputProfile profile = OutputProfile.getDefault();
+    
+    /** How the XML is embedded. */
+    protected XmlAttachment attachment = new XmlAttachment();
+    
+    /**
+     * Sets the output profile.
+     *
+     * @param profile the output profile
+     */
+    public void setOutputProfile(OutputProfile profile) {
+        this.profile = profile;
+    }
+    
+    /**
+     * Sets how the XML is embedded.
+     *
+     * @param attachment the attachment policy
+     */
+    public void setXmlAttachment(XmlAttachment attachment) {
+        this.attachment = attachment;
+    }
+    
     /**
      * The main method.
      *
-     * @param args the arguments
+     * @param args optionally the path of a CSV export that is read instead of the database
      * @throws IOException Signals that an I/O exception has occurred.
      * @throws ParserConfigurationException the parser configuration exception
      * @throws SQLException the SQL exception
@@ -82,13 +111,15 @@ public class PdfInvoicesBasic {
     	LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
     	File file = new File(DEST);
         file.getParentFile().mkdirs();
-        PdfInvoicesBasic app = new PdfInvoicesBasic();
-        PojoFactory factory = PojoFactory.getInstance();
-        List<Invoice> invoices = factory.getInvoices();
-        for (Invoice invoice : invoices) {
-            app.createPdf(invoice);
+        InvoiceBatch batch = new InvoiceBatch(InvoiceFormat.BASIC, new File(CHECKPOINT));
+        if (args.length > 0) {
+            batch.run(new CsvInvoiceSource(new File(args[0])));
+        }
+        else {
+            PojoFactory factory = PojoFactory.getInstance();
+            batch.run(factory);
+            factory.close();
         }
-        factory.close();
     }
     
     /**
@@ -104,8 +135,23 @@ public class PdfInvoicesBasic {
      * @throws InvalidCodeException the invalid code exception
      */
     public void createPdf(Invoice invoice) throws ParserConfigurationException, SAXException, TransformerException, IOException, ParseException, DataIncompleteException, InvalidCodeException {
-        
-    	String dest = String.format(DEST, invoice.getId());
+    	createPdf(invoice, new FileOutputStream(String.format(DEST, invoice.getId())));
+    }
+    
+    /**
+     * Creates a PDF file, given a certain invoice, and writes it to an output stream.
+     *
+     * @param invoice the invoice
+     * @param os the output stream to which the PDF will be written
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws SAXException the SAX exception
+     * @throws TransformerException the transformer exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws ParseException the parse exception
+     * @throws DataIncompleteException the data incomplete exception
+     * @throws InvalidCodeException the invalid code exception
+     */
+    public void createPdf(Invoice invoice, OutputStream os) throws ParserConfigurationException, SAXException, TransformerException, IOException, ParseException, DataIncompleteException, InvalidCodeException {
     	
     	// Create the XML
         InvoiceData invoiceData = new InvoiceData();
@@ -114,19 +160,34 @@ public class PdfInvoicesBasic {
         
         // Create the ZUGFeRD document
     	ZugferdDocument pdfDocument = new ZugferdDocument(
-    			new PdfWriter(dest), ZugferdConformanceLevel.ZUGFeRDBasic,
+    			profile.createWriter(os), ZugferdConformanceLevel.ZUGFeRDBasic,
     			new PdfOutputIntent("Custom", "", "http://www.color.org",
-        	            "sRGB IEC61966-2.1", new FileInputStream(ICC)));
-        pdfDocument.addFileAttachment("ZUGFeRD invoice", PdfFileSpec.createEmbeddedFileSpec(
-                pdfDocument, dom.toXML(), "ZUGFeRD invoice", "ZUGFeRD-invoice.xml",
-                PdfName.ApplicationXml, new PdfDictionary(), PdfName.Alternative));
+        	            "sRGB IEC61966-2.1", new ByteArrayInputStream(ResourceCache.getBytes(ICC))));
+        pdfDocument.addFileAttachment("ZUGFeRD invoice", attachment.createFileSpec(
+                pdfDocument, invoice.getId(), dom.toXML(), "ZUGFeRD invoice", "ZUGFeRD-invoice.xml",
+                PdfName.Alternative));
         
         // Create the document
     	Document document = new Document(pdfDocument);
         document.setFont(PdfFontFactory.createFont(REGULAR, true))
     			.setFontSize(12);
     	PdfFont bold = PdfFontFactory.createFont(BOLD, true);
-    	
+    	addContent(document, invoice, basic, bold);
+        
+        document.close();
+    }
+    
+    /**
+     * Adds the content of an invoice to a document.
+     * The regular font is expected to be set on the document.
+     *
+     * @param document the document
+     * @param invoice the invoice
+     * @param basic the {@link IBasicProfile} instance created for the invoice
+     * @param bold a bold font
+     * @throws ParseException the parse exception
+     */
+    public void addContent(Document document, Invoice invoice, IBasicProfile basic, PdfFont bold) throws ParseException {
         // Add the header
     	document.add(
     		new Paragraph()
@@ -146,10 +207,8 @@ public class PdfInvoicesBasic {
                 basic.getTaxBasisAmount(), basic.getTaxCalculatedAmount(), basic.getTaxCalculatedAmountCurrencyID(), bold));
         // Add the payment info
         document.add(getPaymentInfo(basic.getPaymentReference(), basic.getPaymentMeansPayeeFinancialInstitutionBIC(), basic.getPaymentMeansPayeeAccountIBAN()));
-        
-        document.close();
     }
-
+    
     /**
      * Convert a date to a String in a certain format.
      *
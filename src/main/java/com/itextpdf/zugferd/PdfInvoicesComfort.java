@@ -7,37 +7,47 @@ package com.itextpdf.zugferd;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import com.itextpdf.kernel.pdf.filespec.PdfFileSpec;
 import org.xml.sax.SAXException;
 
 import com.itextpdf.html2pdf.ConverterProperties;
 import com.itextpdf.html2pdf.HtmlConverter;
-import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfName;
 import com.itextpdf.kernel.pdf.PdfOutputIntent;
-import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.element.IBlockElement;
+import com.itextpdf.layout.element.IElement;
+import com.itextpdf.layout.element.Image;
 import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.batch.InvoiceBatch;
+import com.itextpdf.zugferd.batch.InvoiceFormat;
+import com.itextpdf.zugferd.cache.ResourceCache;
 import com.itextpdf.zugferd.data.InvoiceData;
 import com.itextpdf.zugferd.exceptions.DataIncompleteException;
+import com.itextpdf.zugferd.html.ComfortHtmlWriter;
+import com.itextpdf.zugferd.html.ConverterContext;
 import com.itextpdf.zugferd.exceptions.InvalidCodeException;
+import com.itextpdf.zugferd.pojo.CsvInvoiceSource;
 import com.itextpdf.zugferd.pojo.Invoice;
 import com.itextpdf.zugferd.pojo.PojoFactory;
 import com.itextpdf.zugferd.profiles.IComfortProfile;
+import com.itextpdf.zugferd.xml.XmlArchiveWriter;
 
 /**
  * Creates ZUGFeRD invoices using the Comfort profile.
@@ -49,19 +59,90 @@ public class PdfInvoicesComfort {
     /** The pattern for the destination files. */
     public static final String DEST = "results/zugferd/pdf/comfort%05d.pdf";
     
+    /** The checkpoint that allows an interrupted run to resume. */
+    public static final String CHECKPOINT = "results/zugferd/pdf/comfort.checkpoint";
+    
+    /** The base URI of the HTML, used to find the CSS and the logo. */
+    public static final String BASE = "resources/zugferd/";
+    
     /** The path to the XSL file. */
     public static final String XSL = "resources/zugferd/invoice.xsl";
     
     /** The path to the output intent file. */
     public static final String INTENT = "resources/color/sRGB_CS_profile.icm";
     
-    /** The converter properties. */
-    public static ConverterProperties properties;
+    /** The system property that switches to the incremental conversion by default. */
+    public static final String INCREMENTAL_PROPERTY = "zugferd.html.incremental";
+    
+    /** The output profile that determines compression and object streams. */
+    protected OutputProfile profile = OutputProfile.getDefault();
+    
+    /** How the XML is embedded. */
+    protected XmlAttachment attachment = new XmlAttachment();
+    
+    /** The archive to which the XML is added as well, or <code>null</code>. */
+    protected XmlArchiveWriter archive;
+    
+    /** Whether the HTML is written with the {@link ComfortHtmlWriter} instead of the XSLT stylesheet. */
+    protected boolean direct = ComfortHtmlWriter.isSelected();
+    
+    /** Whether the HTML is converted to elements that are added to a document with immediate flushing. */
+    protected boolean incremental = Boolean.getBoolean(INCREMENTAL_PROPERTY);
+    
+    /**
+     * Sets the output profile.
+     *
+     * @param profile the output profile
+     */
+    public void setOutputProfile(OutputProfile profile) {
+        this.profile = profile;
+    }
+    
+    /**
+     * Sets how the XML is embedded.
+     *
+     * @param attachment the attachment policy
+     */
+    public void setXmlAttachment(XmlAttachment attachment) {
+        this.attachment = attachment;
+    }
+    
+    /**
+     * Adds the XML of every invoice to an archive as well. The XML is then
+     * compressed once: the compressed data of the gzip member is reused
+     * for the attachment.
+     *
+     * @param archive the archive, or <code>null</code>
+     */
+    public void setXmlArchive(XmlArchiveWriter archive) {
+        this.archive = archive;
+    }
+    
+    /**
+     * Chooses between the XSLT stylesheet and the {@link ComfortHtmlWriter}.
+     * The default is taken from the {@link ComfortHtmlWriter#ENGINE_PROPERTY} system property.
+     *
+     * @param direct true to write the HTML with the {@link ComfortHtmlWriter}
+     */
+    public void setDirectHtml(boolean direct) {
+        this.direct = direct;
+    }
+    
+    /**
+     * Chooses between converting the HTML in one go and converting it to
+     * elements that are added to a document with immediate flushing.
+     * The default is taken from the {@link #INCREMENTAL_PROPERTY} system property.
+     *
+     * @param incremental true to convert the HTML incrementally
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
     
     /**
      * The main method.
      *
-     * @param args the arguments
+     * @param args optionally the path of a CSV export that is read instead of the database
      * @throws SQLException the SQL exception
      * @throws IOException Signals that an I/O exception has occurred.
      * @throws ParserConfigurationException the parser configuration exception
@@ -79,20 +160,22 @@ public class PdfInvoicesComfort {
         	+ "/itextkey-html2pdf_typography.xml");
        	File file = new File(DEST);
         file.getParentFile().mkdirs();
-        PdfInvoicesComfort app = new PdfInvoicesComfort();
-        PojoFactory factory = PojoFactory.getInstance();
-        List<Invoice> invoices = factory.getInvoices();
-        for (Invoice invoice : invoices) {
-        	app.createPdf(invoice, new FileOutputStream(String.format(DEST, invoice.getId())));
+        InvoiceBatch batch = new InvoiceBatch(InvoiceFormat.COMFORT, new File(CHECKPOINT));
+        if (args.length > 0) {
+            batch.run(new CsvInvoiceSource(new File(args[0])));
+        }
+        else {
+            PojoFactory factory = PojoFactory.getInstance();
+            batch.run(factory);
+            factory.close();
         }
-        factory.close();
     }
     
     /**
      * Creates a PDF invoice.
      *
      * @param invoice the invoice
-     * @param fos the fos
+     * @param os the output stream to which the PDF will be written
      * @throws IOException Signals that an I/O exception has occurred.
      * @throws ParserConfigurationException the parser configuration exception
      * @throws SAXException the SAX exception
@@ -100,49 +183,103 @@ public class PdfInvoicesComfort {
      * @throws InvalidCodeException the invalid code exception
      * @throws TransformerException the transformer exception
      */
-    public void createPdf(Invoice invoice, FileOutputStream fos)
+    public void createPdf(Invoice invoice, OutputStream os)
     	throws IOException, ParserConfigurationException,
     	SAXException, TransformerException,
     	DataIncompleteException, InvalidCodeException {
         IComfortProfile comfort =
         	new InvoiceData().createComfortProfileData(invoice);
         InvoiceDOM dom = new InvoiceDOM(comfort);
+        byte[] html = createHtml(comfort, dom);
         
+        ZugferdDocument pdfDocument = new ZugferdDocument(
+        	profile.createWriter(os), ZugferdConformanceLevel.ZUGFeRDComfort,
+        	new PdfOutputIntent("Custom", "", "http://www.color.org",
+        	    "sRGB IEC61966-2.1", new ByteArrayInputStream(ResourceCache.getBytes(INTENT))));
+        byte[] xml = dom.toXML();
+        byte[] deflated = archive == null ? null : archive.addDeflated(invoice.getId(), xml);
+        pdfDocument.addFileAttachment("ZUGFeRD invoice", attachment.createFileSpec(pdfDocument,
+                invoice.getId(), xml, deflated, "ZUGFeRD invoice", "ZUGFeRD-invoice.xml",
+        		PdfName.Alternative));
+        pdfDocument.setTagged();
+        if (incremental) {
+            addElements(pdfDocument, html);
+        }
+        else {
+            HtmlConverter.convertToPdf(
+            		new ByteArrayInputStream(html), pdfDocument, getProperties());
+        }
+    }
+    
+    /**
+     * Converts the HTML to elements and adds them to a document in immediate
+     * flush mode. {@link HtmlConverter#convertToPdf(java.io.InputStream, PdfDocument, ConverterProperties)}
+     * keeps every page in memory until the document is closed; here a page is
+     * written as soon as the next page is started, and every element is
+     * dropped as soon as it is laid out. This doesn't make the conversion of
+     * a long invoice run in constant memory: the lines of an invoice are a
+     * single table, which is converted and laid out in one piece, so the
+     * table and its cells stay in memory until the last line is placed.
+     * The invoice stylesheet has no page rules, so the default A4 page with
+     * the default margins is used in both cases.
+     *
+     * @param pdfDocument the PDF document
+     * @param html the HTML
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void addElements(PdfDocument pdfDocument, byte[] html) throws IOException {
+        ConverterProperties properties = getProperties();
+        List<IElement> elements = HtmlConverter.convertToElements(
+        		new ByteArrayInputStream(html), properties);
+        Document document = new Document(pdfDocument, PageSize.A4, true);
+        document.setFontProvider(properties.getFontProvider());
+        for (int i = 0; i < elements.size(); i++) {
+            IElement element = elements.set(i, null);
+            if (element instanceof IBlockElement)
+                document.add((IBlockElement)element);
+            else if (element instanceof Image)
+                document.add((Image)element);
+            else if (element instanceof AreaBreak)
+                document.add((AreaBreak)element);
+        }
+        document.close();
+    }
+    
+    /**
+     * Creates the HTML that is converted to PDF.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @param dom the XML of the invoice, used by the XSLT stylesheet
+     * @return the HTML
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws TransformerException the transformer exception
+     */
+    protected byte[] createHtml(IComfortProfile comfort, InvoiceDOM dom)
+        throws IOException, TransformerException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (direct) {
+            Writer htmlWriter = new OutputStreamWriter(baos, StandardCharsets.UTF_8);
+            new ComfortHtmlWriter(htmlWriter).write(comfort);
+            htmlWriter.close();
+            return baos.toByteArray();
+        }
         StreamSource xml = new StreamSource(
         		new ByteArrayInputStream(dom.toXML()));
-        StreamSource xsl = new StreamSource(
-        		new File(XSL));
-        TransformerFactory factory = TransformerFactory.newInstance();
-        Transformer transformer = factory.newTransformer(xsl);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Transformer transformer = ResourceCache.getTemplates(XSL).newTransformer();
         Writer htmlWriter = new OutputStreamWriter(baos);
         transformer.transform(xml, new StreamResult(htmlWriter));
         htmlWriter.flush();
         htmlWriter.close();
-        byte[] html = baos.toByteArray();
-        
-        ZugferdDocument pdfDocument = new ZugferdDocument(
-        	new PdfWriter(fos), ZugferdConformanceLevel.ZUGFeRDComfort,
-        	new PdfOutputIntent("Custom", "", "http://www.color.org",
-        	    "sRGB IEC61966-2.1", new FileInputStream(INTENT)));
-        pdfDocument.addFileAttachment("ZUGFeRD invoice", PdfFileSpec.createEmbeddedFileSpec(pdfDocument,
-                dom.toXML(), "ZUGFeRD invoice", "ZUGFeRD-invoice.xml",
-        		PdfName.ApplicationXml, new PdfDictionary(), PdfName.Alternative));
-        pdfDocument.setTagged();
-        HtmlConverter.convertToPdf(
-        		new ByteArrayInputStream(html), pdfDocument, getProperties());
+        return baos.toByteArray();
     }
     
     /**
-     * Gets the converter properties.
+     * Gets the converter properties for a single conversion. The fonts and
+     * images behind them are prepared once and shared by all threads.
      *
      * @return the properties
      */
     public ConverterProperties getProperties() {
-    	if (properties == null) {
-		    properties = new ConverterProperties()
-				.setBaseUri("resources/zugferd/");
-    	}
-    	return properties;
+    	return ConverterContext.getInstance(BASE).getProperties();
     }
 }
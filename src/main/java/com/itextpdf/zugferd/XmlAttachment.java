@@ -0,0 +1,252 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.filespec.PdfFileSpec;
+import com.itextpdf.zugferd.xml.XmlArchiveWriter;
+
+/**
+ * Embeds the ZUGFeRD XML of an invoice with explicit control over the
+ * compression of the embedded file stream. By default the stream is
+ * compressed like every other stream of the document, at the level of the
+ * {@link OutputProfile}. A different deflate level can be chosen, or no
+ * compression at all. The XML can also be deflated before it is handed to
+ * iText: the stream is then written as is, with a FlateDecode filter. This
+ * allows callers that already have the deflated bytes to reuse them, e.g.
+ * the gzip member that {@link XmlArchiveWriter} wrote for the same XML,
+ * see {@link #gzipToZlib(byte[], byte[])}.
+ * <p>
+ * With the {@link #REPORT_PROPERTY} system property set to true, the size
+ * of the XML and the size of the embedded stream are printed per invoice.
+ * As the size of a stream that iText compresses is only known once the
+ * document is written, a copy of the XML is then deflated at the same
+ * level only to measure it; the stream itself is embedded as without
+ * the report.
+ */
+public class XmlAttachment {
+    
+    /** The system property with the deflate level of the attachment: -1 (default), 0 (none) to 9 (best). */
+    public static final String LEVEL_PROPERTY = "zugferd.attachment.level";
+    
+    /** The system property that makes the XML be deflated before it is embedded. */
+    public static final String PRECOMPRESS_PROPERTY = "zugferd.attachment.precompress";
+    
+    /** The system property that enables the size report. */
+    public static final String REPORT_PROPERTY = "zugferd.attachment.report";
+    
+    /** The deflate level, or {@link CompressionConstants#UNDEFINED} to use the level of the writer. */
+    protected int level;
+    
+    /** Whether the XML is deflated before it is embedded. */
+    protected boolean precompress;
+    
+    /** Whether the sizes are reported. */
+    protected boolean report;
+    
+    /**
+     * Creates an attachment policy with the settings of the system properties.
+     */
+    public XmlAttachment() {
+        this(getLevelProperty(), Boolean.getBoolean(PRECOMPRESS_PROPERTY));
+        report = Boolean.getBoolean(REPORT_PROPERTY);
+    }
+    
+    /**
+     * Creates an attachment policy.
+     *
+     * @param level the deflate level from {@link CompressionConstants#DEFAULT_COMPRESSION} to
+     * {@link CompressionConstants#BEST_COMPRESSION}, or {@link CompressionConstants#UNDEFINED}
+     * to use the level of the writer
+     * @param precompress whether the XML is deflated before it is embedded
+     * @throws IllegalArgumentException if the level isn't a deflate level
+     */
+    public XmlAttachment(int level, boolean precompress) {
+        if (level != CompressionConstants.UNDEFINED
+            && (level < CompressionConstants.DEFAULT_COMPRESSION || level > CompressionConstants.BEST_COMPRESSION))
+            throw new IllegalArgumentException(String.format("Invalid deflate level %d, use -1 to 9", level));
+        this.level = level;
+        this.precompress = precompress;
+    }
+    
+    /**
+     * Gets the deflate level of the {@link #LEVEL_PROPERTY} system property.
+     *
+     * @return the deflate level, or {@link CompressionConstants#UNDEFINED} if the property isn't set
+     * @throws IllegalArgumentException if the property isn't a number
+     */
+    protected static int getLevelProperty() {
+        String level = System.getProperty(LEVEL_PROPERTY);
+        if (level == null)
+            return CompressionConstants.UNDEFINED;
+        try {
+            return Integer.parseInt(level.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s: %s, use -1 to 9", LEVEL_PROPERTY, level));
+        }
+    }
+    
+    /**
+     * Enables or disables the size report.
+     *
+     * @param report true to print the sizes per invoice
+     */
+    public void setReport(boolean report) {
+        this.report = report;
+    }
+    
+    /**
+     * Gets the deflate level that is used in a document.
+     *
+     * @param pdfDocument the document
+     * @return the deflate level
+     */
+    public int getLevel(PdfDocument pdfDocument) {
+        if (level != CompressionConstants.UNDEFINED)
+            return level;
+        return pdfDocument.getWriter().getCompressionLevel();
+    }
+    
+    /**
+     * Deflates bytes in the zlib format that the FlateDecode filter expects.
+     *
+     * @param bytes the bytes
+     * @param level the deflate level
+     * @return the deflated bytes
+     */
+    public static byte[] deflate(byte[] bytes, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                baos.write(buffer, 0, n);
+            }
+            return baos.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * Converts a gzip member to the zlib format that the FlateDecode filter
+     * expects, without recompressing: both formats wrap the same raw deflate
+     * data. The gzip header and trailer are replaced by a zlib header and
+     * the Adler-32 checksum of the uncompressed bytes.
+     *
+     * @param gzip a single gzip member
+     * @param xml the uncompressed bytes of the member
+     * @return the same deflate data in the zlib format
+     * @throws IllegalArgumentException if the bytes aren't a gzip member of the XML
+     */
+    public static byte[] gzipToZlib(byte[] gzip, byte[] xml) {
+        if (gzip.length < 18 || (gzip[0] & 0xff) != 0x1f || (gzip[1] & 0xff) != 0x8b || gzip[2] != 8)
+            throw new IllegalArgumentException("Not a gzip member with deflate data");
+        int flags = gzip[3] & 0xff;
+        int start = 10;
+        if ((flags & 4) != 0)
+            start += 2 + ((gzip[start] & 0xff) | (gzip[start + 1] & 0xff) << 8);
+        if ((flags & 8) != 0)
+            while (gzip[start++] != 0);
+        if ((flags & 16) != 0)
+            while (gzip[start++] != 0);
+        if ((flags & 2) != 0)
+            start += 2;
+        int end = gzip.length - 8;
+        int size = (gzip[end + 4] & 0xff) | (gzip[end + 5] & 0xff) << 8
+            | (gzip[end + 6] & 0xff) << 16 | (gzip[end + 7] & 0xff) << 24;
+        if (start > end || size != xml.length)
+            throw new IllegalArgumentException("The gzip member doesn't contain the XML");
+        Adler32 adler = new Adler32();
+        adler.update(xml, 0, xml.length);
+        long checksum = adler.getValue();
+        byte[] zlib = new byte[2 + end - start + 4];
+        // deflate with a 32K window, default level; 0x789C is a multiple of 31
+        zlib[0] = 0x78;
+        zlib[1] = (byte)0x9c;
+        System.arraycopy(gzip, start, zlib, 2, end - start);
+        int pos = zlib.length - 4;
+        zlib[pos] = (byte)(checksum >>> 24);
+        zlib[pos + 1] = (byte)(checksum >>> 16);
+        zlib[pos + 2] = (byte)(checksum >>> 8);
+        zlib[pos + 3] = (byte)checksum;
+        return zlib;
+    }
+    
+    /**
+     * Creates the file specification of an XML attachment.
+     *
+     * @param pdfDocument the document
+     * @param invoiceId the id of the invoice, used in the report
+     * @param xml the XML
+     * @param description the description of the attachment
+     * @param name the file name of the attachment
+     * @param relationship the relationship of the attachment with the document
+     * @return the file specification
+     */
+    public PdfFileSpec createFileSpec(PdfDocument pdfDocument, int invoiceId, byte[] xml,
+        String description, String name, PdfName relationship) {
+        return createFileSpec(pdfDocument, invoiceId, xml, null, description, name, relationship);
+    }
+    
+    /**
+     * Creates the file specification of an XML attachment, reusing bytes
+     * that were already deflated if they are available. These bytes are
+     * embedded as they are, whatever the level they were deflated with,
+     * unless the level is {@link CompressionConstants#NO_COMPRESSION}.
+     *
+     * @param pdfDocument the document
+     * @param invoiceId the id of the invoice, used in the report
+     * @param xml the XML
+     * @param deflated the XML deflated in the zlib format, or <code>null</code>
+     * @param description the description of the attachment
+     * @param name the file name of the attachment
+     * @param relationship the relationship of the attachment with the document
+     * @return the file specification
+     */
+    public PdfFileSpec createFileSpec(PdfDocument pdfDocument, int invoiceId, byte[] xml, byte[] deflated,
+        String description, String name, PdfName relationship) {
+        PdfFileSpec spec = PdfFileSpec.createEmbeddedFileSpec(pdfDocument, xml, description, name,
+            PdfName.ApplicationXml, new PdfDictionary(), relationship);
+        PdfStream stream = ((PdfDictionary)spec.getPdfObject())
+            .getAsDictionary(PdfName.EF).getAsStream(PdfName.F);
+        int level = getLevel(pdfDocument);
+        long embedded = -1;
+        if (level == CompressionConstants.NO_COMPRESSION) {
+            stream.setCompressionLevel(CompressionConstants.NO_COMPRESSION);
+            embedded = xml.length;
+        }
+        else if (deflated != null || precompress) {
+            if (deflated == null)
+                deflated = deflate(xml, level);
+            // the Size parameter keeps the size of the XML itself
+            stream.setData(deflated);
+            stream.put(PdfName.Filter, PdfName.FlateDecode);
+            embedded = deflated.length;
+        }
+        else {
+            stream.setCompressionLevel(level);
+            if (report)
+                embedded = deflate(xml, level).length;
+        }
+        if (report) {
+            System.out.println(String.format("Invoice %s: %d XML bytes, %d embedded bytes (%.1f%%)",
+                invoiceId, xml.length, embedded, embedded * 100.0 / xml.length));
+        }
+        return spec;
+    }
+}
@@ -6,9 +6,10 @@ package com.itextpdf.zugferd;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
-import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -16,12 +17,18 @@ import javax.xml.transform.TransformerException;
 import org.xml.sax.SAXException;
 
 import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.batch.InvoiceMetrics;
 import com.itextpdf.zugferd.data.InvoiceData;
 import com.itextpdf.zugferd.exceptions.DataIncompleteException;
 import com.itextpdf.zugferd.exceptions.InvalidCodeException;
+import com.itextpdf.zugferd.pojo.CsvInvoiceSource;
 import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.InvoiceSource;
+import com.itextpdf.zugferd.pojo.JdbcInvoiceSource;
 import com.itextpdf.zugferd.pojo.PojoFactory;
 import com.itextpdf.zugferd.profiles.IBasicProfile;
+import com.itextpdf.zugferd.tools.XmlValidator;
+import com.itextpdf.zugferd.xml.ZugferdXmlWriter;
 
 /**
  * Creates a set of XML files that represent invoices.
@@ -33,10 +40,25 @@ public class XmlInvoicesComfort {
     /** The Constant DEST. */
     public static final String DEST = "results/zugferd/xml/comfort%05d.xml";
     
+    /** The CSV log with the validation time of every invoice. */
+    public static final String VALIDATION_LOG = "results/zugferd/xml/validation.csv";
+    
+    /** The CSV file with the metrics of every invoice, see {@link InvoiceMetrics#METRICS_PROPERTY}. */
+    public static final String METRICS = "results/zugferd/xml/comfort.metrics.csv";
+    
+    /** The optional validator, see {@link XmlValidator#SCHEMA_PROPERTY}. */
+    protected XmlValidator validator;
+    
+    /** Whether the XML is written with the {@link ZugferdXmlWriter} instead of InvoiceDOM. */
+    protected boolean streaming = ZugferdXmlWriter.isSelected();
+    
+    /** Whether the checks of InvoiceDOM run before the XML is written with the {@link ZugferdXmlWriter}. */
+    protected boolean checked = ZugferdXmlWriter.isChecked();
+    
     /**
      * The main method.
      *
-     * @param args the arguments
+     * @param args optionally the path of a CSV export that is read instead of the database
      * @throws SQLException the SQL exception
      * @throws ParserConfigurationException the parser configuration exception
      * @throws SAXException the SAX exception
@@ -49,21 +71,91 @@ public class XmlInvoicesComfort {
     	LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
     	File file = new File(DEST);
         file.getParentFile().mkdirs();
-        PojoFactory factory = PojoFactory.getInstance();
-        List<Invoice> invoices = factory.getInvoices();
-        InvoiceData invoiceData = new InvoiceData();
-        IBasicProfile comfort;
-        InvoiceDOM dom;
-        for (Invoice invoice : invoices) {
-            comfort = invoiceData.createComfortProfileData(invoice);
-            dom = new InvoiceDOM(comfort);
-            byte[] xml = dom.toXML();
-            FileOutputStream fos = new FileOutputStream(String.format(DEST, invoice.getId()));
-            fos.write(xml);
-            fos.flush();
-            fos.close();
+        XmlInvoicesComfort app = new XmlInvoicesComfort();
+        XmlValidator validator = XmlValidator.fromSystemProperty();
+        if (validator != null) {
+            validator.setLog(new FileWriter(VALIDATION_LOG));
+            app.setValidator(validator);
+        }
+        PojoFactory factory = args.length > 0 ? null : PojoFactory.getInstance();
+        InvoiceSource source = factory == null
+            ? new CsvInvoiceSource(new File(args[0])) : new JdbcInvoiceSource(factory);
+        InvoiceMetrics metrics = InvoiceMetrics.fromSystemProperty(new File(METRICS));
+        try {
+            Invoice invoice;
+            while ((invoice = source.next()) != null) {
+                String dest = String.format(DEST, invoice.getId());
+                if (metrics != null)
+                    metrics.start();
+                app.createXml(invoice, new FileOutputStream(dest));
+                if (metrics != null)
+                    metrics.stop(invoice, new File(dest).length());
+            }
+        }
+        finally {
+            if (metrics != null)
+                metrics.close();
+        }
+        source.close();
+        if (factory != null)
+            factory.close();
+        if (validator != null) {
+            validator.close();
+            System.out.println(validator.getSummary());
         }
-        factory.close();
     }
-
+    
+    /**
+     * Sets a validator that checks the XML of every invoice against the schema.
+     *
+     * @param validator the validator, or <code>null</code> to skip validation
+     */
+    public void setValidator(XmlValidator validator) {
+        this.validator = validator;
+    }
+    
+    /**
+     * Chooses between InvoiceDOM and the {@link ZugferdXmlWriter}.
+     * The default is taken from the {@link ZugferdXmlWriter#ENGINE_PROPERTY} system property.
+     *
+     * @param streaming true to write the XML with the {@link ZugferdXmlWriter}
+     */
+    public void setStreamingXml(boolean streaming) {
+        this.streaming = streaming;
+    }
+    
+    /**
+     * Creates the XML for an invoice and writes it to an output stream.
+     *
+     * @param invoice the invoice
+     * @param os the output stream to which the XML will be written
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws SAXException the SAX exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws TransformerException the transformer exception
+     * @throws DataIncompleteException the data incomplete exception
+     * @throws InvalidCodeException the invalid code exception
+     */
+    public void createXml(Invoice invoice, OutputStream os) throws ParserConfigurationException, SAXException, IOException, TransformerException, DataIncompleteException, InvalidCodeException {
+        IBasicProfile comfort = new InvoiceData().createComfortProfileData(invoice);
+        if (streaming && checked) {
+            ZugferdXmlWriter.check(comfort);
+        }
+        if (streaming && validator == null) {
+            new ZugferdXmlWriter(os).write(comfort);
+            os.close();
+            return;
+        }
+        byte[] xml = streaming ? ZugferdXmlWriter.toXML(comfort) : new InvoiceDOM(comfort).toXML();
+        if (validator != null) {
+            XmlValidator.Result result = validator.validate(String.format("%05d", invoice.getId()), xml);
+            for (String error : result.getErrors()) {
+                System.err.println(String.format("Invoice %s is invalid: %s", invoice.getId(), error));
+            }
+        }
+        os.write(xml);
+        os.flush();
+        os.close();
+    }
+    
 }
@@ -0,0 +1,280 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rendered documents to disk on a small pool of writer threads,
+ * so that the rendering thread doesn't wait for the disk. Documents are
+ * rendered into pooled in-memory buffers; the number of bytes that are
+ * rendered but not yet written is bounded, so that a slow disk slows
+ * down rendering instead of exhausting the heap.
+ */
+public class AsyncWriteStage {
+    
+    /** The system property that enables the write stage in {@link InvoiceBatch}. */
+    public static final String ASYNC_PROPERTY = "zugferd.async";
+    
+    /** The system property that overrides the number of writer threads. */
+    public static final String THREADS_PROPERTY = "zugferd.async.threads";
+    
+    /** The system property that overrides the maximum number of bytes in flight. */
+    public static final String BYTES_PROPERTY = "zugferd.async.bytes";
+    
+    /** The default number of writer threads. */
+    public static final int THREADS = 2;
+    
+    /** The default maximum number of bytes that are rendered but not yet written. */
+    public static final int MAX_BYTES = 64 * 1024 * 1024;
+    
+    /** The initial size of a buffer. */
+    public static final int INITIAL_SIZE = 256 * 1024;
+    
+    /** Buffers that grew larger than this size aren't reused. */
+    public static final int MAX_POOLED_SIZE = 4 * 1024 * 1024;
+    
+    /** The writer threads. */
+    protected ExecutorService writers;
+    
+    /** The number of writer threads. */
+    protected int threads;
+    
+    /** The maximum number of bytes in flight. */
+    protected int maxBytes;
+    
+    /** Permits for the bytes in flight. */
+    protected Semaphore inFlight;
+    
+    /** The buffers that can be reused. */
+    protected Queue<Buffer> pool = new ConcurrentLinkedQueue<Buffer>();
+    
+    /** The writes that were submitted since the last flush. */
+    protected Queue<Future<Boolean>> pending = new ConcurrentLinkedQueue<Future<Boolean>>();
+    
+    /** The time spent writing, summed over all writer threads. */
+    protected AtomicLong writeNanos = new AtomicLong();
+    
+    /** The number of bytes written. */
+    protected AtomicLong bytes = new AtomicLong();
+    
+    /** The number of documents written. */
+    protected AtomicInteger written = new AtomicInteger();
+    
+    /** The files that couldn't be written and weren't polled yet. */
+    protected Queue<File> failed = new ConcurrentLinkedQueue<File>();
+    
+    /**
+     * A buffer to which a document is rendered.
+     */
+    public static class Buffer extends ByteArrayOutputStream {
+    
+        /**
+         * Creates a buffer.
+         *
+         * @param size the initial size
+         */
+        public Buffer(int size) {
+            super(size);
+        }
+    
+        /**
+         * Gets the capacity of the buffer.
+         *
+         * @return the capacity
+         */
+        public int capacity() {
+            return buf.length;
+        }
+    
+        /**
+         * Writes the content of the buffer to a file.
+         *
+         * @param file the file
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        public void writeTo(File file) throws IOException {
+            FileOutputStream os = new FileOutputStream(file);
+            try {
+                os.write(buf, 0, count);
+            }
+            finally {
+                os.close();
+            }
+        }
+    }
+    
+    /**
+     * Creates a write stage with the settings of the system properties.
+     */
+    public AsyncWriteStage() {
+        this(Integer.getInteger(THREADS_PROPERTY, THREADS), Integer.getInteger(BYTES_PROPERTY, MAX_BYTES));
+    }
+    
+    /**
+     * Creates a write stage.
+     *
+     * @param threads the number of writer threads
+     * @param maxBytes the maximum number of bytes that are rendered but not yet written
+     */
+    public AsyncWriteStage(int threads, int maxBytes) {
+        this.threads = threads;
+        this.maxBytes = maxBytes;
+        inFlight = new Semaphore(maxBytes);
+        writers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "invoice-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Gets an empty buffer, reusing a buffer of an earlier document if possible.
+     *
+     * @return the buffer
+     */
+    public Buffer acquire() {
+        Buffer buffer = pool.poll();
+        return buffer != null ? buffer : new Buffer(INITIAL_SIZE);
+    }
+    
+    /**
+     * Returns a buffer that won't be submitted, e.g. because rendering failed.
+     *
+     * @param buffer the buffer
+     */
+    public void release(Buffer buffer) {
+        if (buffer.capacity() <= MAX_POOLED_SIZE && pool.size() < threads * 4) {
+            buffer.reset();
+            pool.offer(buffer);
+        }
+    }
+    
+    /**
+     * Submits a rendered document for writing. Blocks as long as
+     * writing the document would exceed the maximum number of bytes in flight.
+     *
+     * @param buffer the buffer with the document
+     * @param file the destination file
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void submit(final Buffer buffer, final File file) throws InterruptedIOException {
+        final int permits = Math.min(buffer.size(), maxBytes);
+        try {
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            release(buffer);
+            throw new InterruptedIOException(String.format("Interrupted before writing %s", file));
+        }
+        pending.add(writers.submit(new Callable<Boolean>() {
+            public Boolean call() {
+                long start = System.nanoTime();
+                try {
+                    buffer.writeTo(file);
+                    bytes.addAndGet(buffer.size());
+                    written.incrementAndGet();
+                    return true;
+                } catch (IOException e) {
+                    file.delete();
+                    failed.add(file);
+                    System.err.println(String.format("Writing %s failed: %s", file, e));
+                    return false;
+                }
+                finally {
+                    writeNanos.addAndGet(System.nanoTime() - start);
+                    inFlight.release(permits);
+                    release(buffer);
+                }
+            }
+        }));
+    }
+    
+    /**
+     * Waits until all submitted documents are written.
+     *
+     * @return the number of documents that couldn't be written
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public int flush() throws InterruptedIOException {
+        int failures = 0;
+        Future<Boolean> future;
+        while ((future = pending.poll()) != null) {
+            try {
+                if (!future.get())
+                    failures++;
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for the writers");
+            } catch (ExecutionException e) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+    
+    /**
+     * Waits until all submitted documents are written, and stops the writer threads.
+     *
+     * @return the number of documents that couldn't be written
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public int close() throws InterruptedIOException {
+        int failures = flush();
+        writers.shutdown();
+        return failures;
+    }
+    
+    /**
+     * Gets the time spent writing, summed over all writer threads.
+     *
+     * @return the time in milliseconds
+     */
+    public long getWriteMillis() {
+        return writeNanos.get() / 1000000;
+    }
+    
+    /**
+     * Gets the number of documents that were written completely.
+     *
+     * @return the number of documents
+     */
+    public int getWritten() {
+        return written.get();
+    }
+    
+    /**
+     * Gets and forgets the next file that couldn't be written.
+     *
+     * @return the file, or <code>null</code> if there are no more failed files
+     */
+    public File pollFailed() {
+        return failed.poll();
+    }
+    
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The durable state of a long batch run: the id of the last invoice that was
+ * completed, the outputs that were being written after that invoice, and
+ * the ids of the earlier invoices that failed and should be retried.
+ * The checkpoint is replaced atomically, so that a crash leaves either the
+ * previous or the new checkpoint behind, never a mix of both.
+ */
+public class Checkpoint {
+    
+    /** The checkpoint file. */
+    protected File file;
+    
+    /** The id of the last completed invoice, or <code>null</code> if there is none. */
+    protected Integer lastId;
+    
+    /** The paths of the outputs that may be half-written. */
+    protected List<String> partials = new ArrayList<String>();
+    
+    /** The ids of the invoices that failed. */
+    protected SortedSet<Integer> failed = new TreeSet<Integer>();
+    
+    /**
+     * Creates a checkpoint, reading its state if the file exists.
+     *
+     * @param file the checkpoint file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Checkpoint(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            Properties properties = new Properties();
+            InputStream is = new FileInputStream(file);
+            try {
+                properties.load(is);
+            }
+            finally {
+                is.close();
+            }
+            String id = properties.getProperty("last.id");
+            if (id != null) {
+                lastId = Integer.valueOf(id);
+            }
+            String partials = properties.getProperty("partials", "");
+            if (!partials.isEmpty()) {
+                for (String partial : partials.split(File.pathSeparator)) {
+                    this.partials.add(partial);
+                }
+            }
+            String failed = properties.getProperty("failed", "");
+            if (!failed.isEmpty()) {
+                for (String failedId : failed.split(",")) {
+                    this.failed.add(Integer.valueOf(failedId));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets the id of the last completed invoice.
+     *
+     * @return the id, or <code>null</code> if no invoice was completed yet
+     */
+    public Integer getLastId() {
+        return lastId;
+    }
+    
+    /**
+     * Gets the ids of the invoices that failed. The set is saved with the next commit.
+     *
+     * @return the ids, in ascending order
+     */
+    public SortedSet<Integer> getFailed() {
+        return failed;
+    }
+    
+    /**
+     * Deletes the outputs that may have been half-written when the previous
+     * run stopped. The invoices of those outputs follow the last completed
+     * invoice, so they will be rendered again.
+     *
+     * @return the number of files that were deleted
+     */
+    public int recover() {
+        int deleted = 0;
+        for (String partial : partials) {
+            if (new File(partial).delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+    
+    /**
+     * Commits a completed invoice and announces the outputs that will be
+     * written next, then saves the checkpoint.
+     *
+     * @param lastId the id of the last completed invoice, or <code>null</code>
+     * @param partials the outputs that will be written before the next commit
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void commit(Integer lastId, List<String> partials) throws IOException {
+        this.lastId = lastId;
+        this.partials = new ArrayList<String>(partials);
+        save();
+    }
+    
+    /**
+     * Saves the checkpoint: a temporary file is written and synced to disk,
+     * and then moved over the checkpoint file.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void save() throws IOException {
+        Properties properties = new Properties();
+        if (lastId != null) {
+            properties.setProperty("last.id", lastId.toString());
+        }
+        properties.setProperty("partials", String.join(File.pathSeparator, partials));
+        StringBuilder ids = new StringBuilder();
+        for (Integer id : failed) {
+            if (ids.length() > 0)
+                ids.append(',');
+            ids.append(id);
+        }
+        properties.setProperty("failed", ids.toString());
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            properties.store(fos, "Checkpoint");
+            fos.getFD().sync();
+        }
+        finally {
+            fos.close();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Deletes the checkpoint once the run is complete.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+        lastId = null;
+        partials.clear();
+        failed.clear();
+    }
+}
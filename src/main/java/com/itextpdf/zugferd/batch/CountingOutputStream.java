@@ -0,0 +1,42 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.OutputStream;
+
+/**
+ * An output stream that only counts the bytes written to it.
+ * Used to measure output sizes without any I/O.
+ */
+public class CountingOutputStream extends OutputStream {
+    
+    /** The number of bytes written. */
+    protected long count;
+    
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) {
+        count++;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+    
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return the number of bytes
+     */
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.InvoiceSource;
+import com.itextpdf.zugferd.pojo.JdbcInvoiceSource;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+
+/**
+ * Renders all the invoices of a source in one format, in the order of
+ * their ids, and keeps a {@link Checkpoint} so that an interrupted run
+ * resumes after the last completed invoice instead of starting over.
+ * <p>
+ * The invoices are processed in windows. Before a window is rendered, the
+ * checkpoint commits the previous window and lists the outputs of the new
+ * window as partial outputs. After a crash, those outputs are deleted and
+ * the window is rendered again. The ids of the invoices that fail are kept
+ * in the checkpoint too: a resumed run retries them first, and the ids of
+ * the invoices that still fail are listed at the end of the run.
+ * <p>
+ * With the {@link AsyncWriteStage#ASYNC_PROPERTY} system property set to true,
+ * the invoices are rendered in memory and written by an {@link AsyncWriteStage}.
+ * The stage is flushed before every checkpoint, so that a committed window
+ * is always completely on disk.
+ * <p>
+ * With the {@link InvoiceMetrics#METRICS_PROPERTY} system property set to true,
+ * the cost of every invoice is written to a CSV file next to the checkpoint,
+ * and the most expensive invoices are printed at the end of the run.
+ */
+public class InvoiceBatch {
+    
+    /** The default number of invoices between two checkpoints. */
+    public static final int INTERVAL = 100;
+    
+    /** The format that is rendered. */
+    protected InvoiceFormat format;
+    
+    /** The checkpoint. */
+    protected Checkpoint checkpoint;
+    
+    /** The number of invoices between two checkpoints. */
+    protected int interval;
+    
+    /** The number of rendered invoices, if they are written while rendering. */
+    protected int rendered;
+    
+    /** The number of invoices that couldn't be rendered. */
+    protected int failures;
+    
+    /** The stage that writes the rendered invoices, or <code>null</code> if they are written while rendering. */
+    protected AsyncWriteStage stage;
+    
+    /** The ids of the invoices submitted to the stage since the last flush, by destination path. */
+    protected Map<String, Integer> submitted = new HashMap<String, Integer>();
+    
+    /** The time spent rendering. */
+    protected long renderNanos;
+    
+    /** The per-invoice metrics, or <code>null</code> if they aren't recorded. */
+    protected InvoiceMetrics metrics;
+    
+    /** The ids of the invoices that failed in the last run. */
+    protected List<Integer> failedIds = new ArrayList<Integer>();
+    
+    /**
+     * Creates a batch with the default checkpoint interval.
+     *
+     * @param format the format that will be rendered
+     * @param checkpoint the checkpoint file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public InvoiceBatch(InvoiceFormat format, File checkpoint) throws IOException {
+        this(format, checkpoint, INTERVAL);
+    }
+    
+    /**
+     * Creates a batch.
+     *
+     * @param format the format that will be rendered
+     * @param checkpoint the checkpoint file
+     * @param interval the number of invoices between two checkpoints
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public InvoiceBatch(InvoiceFormat format, File checkpoint, int interval) throws IOException {
+        this.format = format;
+        this.checkpoint = new Checkpoint(checkpoint);
+        this.interval = interval;
+        if (Boolean.getBoolean(AsyncWriteStage.ASYNC_PROPERTY)) {
+            stage = new AsyncWriteStage();
+        }
+        String name = checkpoint.getName();
+        int dot = name.lastIndexOf('.');
+        metrics = InvoiceMetrics.fromSystemProperty(new File(checkpoint.getParentFile(),
+            (dot > 0 ? name.substring(0, dot) : name) + ".metrics.csv"));
+    }
+    
+    /**
+     * Renders the invoices of the database that weren't completed by a previous run.
+     *
+     * @param factory the factory that reads the invoices
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws SQLException the SQL exception
+     */
+    public void run(PojoFactory factory) throws IOException, SQLException {
+        try {
+            Integer lastId = recover();
+            retry(factory);
+            int after = lastId == null ? Integer.MIN_VALUE : lastId;
+            factory.preload(after + 1, Integer.MAX_VALUE);
+            run(new JdbcInvoiceSource(factory, after, interval), lastId);
+        }
+        finally {
+            closeMetrics();
+        }
+    }
+    
+    /**
+     * Renders the invoices of a source that weren't completed by a previous run.
+     * The source must deliver the invoices in the order of their ids; the
+     * invoices up to the last completed invoice are skipped.
+     *
+     * @param source the invoice source
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void run(InvoiceSource source) throws IOException {
+        try {
+            run(source, recover());
+        }
+        finally {
+            closeMetrics();
+        }
+    }
+    
+    /**
+     * Removes the partial outputs of a previous run.
+     *
+     * @return the id of the last invoice completed by the previous run, or <code>null</code>
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected Integer recover() throws IOException {
+        Integer lastId = checkpoint.getLastId();
+        int deleted = checkpoint.recover();
+        if (lastId != null) {
+            System.out.println(String.format(
+                "Resuming after invoice %s, %s partial outputs removed", lastId, deleted));
+        }
+        return lastId;
+    }
+    
+    /**
+     * Renders the invoices that failed in a previous run again.
+     *
+     * @param factory the factory that reads the invoices
+     * @throws SQLException the SQL exception
+     */
+    protected void retry(PojoFactory factory) throws SQLException {
+        List<Integer> ids = new ArrayList<Integer>(checkpoint.getFailed());
+        if (ids.isEmpty())
+            return;
+        System.out.println(String.format("Retrying %s invoices that failed before", ids.size()));
+        for (Integer id : ids) {
+            checkpoint.getFailed().remove(id);
+            Invoice invoice = factory.getInvoice(id);
+            if (invoice != null) {
+                render(invoice);
+            }
+        }
+    }
+    
+    /**
+     * Renders the invoices of a source in windows, and closes the source.
+     * The invoices up to the last completed invoice are skipped, except
+     * those that failed in a previous run: they are rendered again.
+     *
+     * @param source the invoice source
+     * @param lastId the id of the last completed invoice
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void run(InvoiceSource source, Integer lastId) throws IOException {
+        List<Invoice> window = new ArrayList<Invoice>(interval);
+        Invoice invoice;
+        while ((invoice = source.next()) != null) {
+            if (lastId != null && invoice.getId() <= lastId) {
+                if (checkpoint.getFailed().remove(invoice.getId()))
+                    render(invoice);
+                continue;
+            }
+            window.add(invoice);
+            if (window.size() == interval) {
+                lastId = render(window, lastId);
+                window.clear();
+            }
+        }
+        if (!window.isEmpty()) {
+            render(window, lastId);
+        }
+        source.close();
+        if (stage != null) {
+            failures += stage.close();
+            collectWriteFailures();
+        }
+        failedIds = new ArrayList<Integer>(checkpoint.getFailed());
+        checkpoint.delete();
+        System.out.println(String.format("%s invoices rendered, %s failures", getRendered(), failures));
+        if (!failedIds.isEmpty()) {
+            System.out.println(String.format("Failed invoices: %s", failedIds));
+        }
+        if (stage == null) {
+            System.out.println(String.format("Rendering and writing took %d ms", renderNanos / 1000000));
+        }
+        else {
+            System.out.println(String.format("Rendering took %d ms, writing took %d ms for %d bytes",
+                renderNanos / 1000000, stage.getWriteMillis(), stage.getBytes()));
+        }
+    }
+    
+    /**
+     * Renders a window of invoices after announcing their outputs in the checkpoint.
+     *
+     * @param window the invoices
+     * @param lastId the id of the last completed invoice
+     * @return the id of the last invoice of the window
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected Integer render(List<Invoice> window, Integer lastId) throws IOException {
+        List<String> partials = new ArrayList<String>();
+        for (Invoice invoice : window) {
+            partials.add(format.getDest(invoice.getId()));
+        }
+        if (stage != null) {
+            failures += stage.flush();
+            collectWriteFailures();
+        }
+        checkpoint.commit(lastId, partials);
+        for (Invoice invoice : window) {
+            render(invoice);
+        }
+        return window.get(window.size() - 1).getId();
+    }
+    
+    /**
+     * Renders a single invoice. A failure is reported, and the
+     * half-written output is removed, but the batch goes on.
+     *
+     * @param invoice the invoice
+     */
+    protected void render(Invoice invoice) {
+        try {
+            if (metrics != null) {
+                metrics.start();
+            }
+            long start = System.nanoTime();
+            if (stage == null) {
+                File file = format.render(invoice);
+                renderNanos += System.nanoTime() - start;
+                if (metrics != null) {
+                    metrics.stop(invoice, file.length());
+                }
+                rendered++;
+            }
+            else {
+                AsyncWriteStage.Buffer buffer = stage.acquire();
+                try {
+                    format.render(invoice, buffer);
+                } catch (Exception e) {
+                    stage.release(buffer);
+                    throw e;
+                }
+                finally {
+                    renderNanos += System.nanoTime() - start;
+                }
+                if (metrics != null) {
+                    metrics.stop(invoice, buffer.size());
+                }
+                String dest = format.getDest(invoice.getId());
+                stage.submit(buffer, new File(dest));
+                submitted.put(dest, invoice.getId());
+            }
+        } catch (Exception e) {
+            failures++;
+            checkpoint.getFailed().add(invoice.getId());
+            new File(format.getDest(invoice.getId())).delete();
+            System.err.println(String.format("Invoice %s failed: %s", invoice.getId(), e));
+        }
+    }
+    
+    /**
+     * Closes the metrics, if they are recorded, also when the run was aborted,
+     * so that the CSV file is complete up to the last measured invoice.
+     *
+     * @throws IOException if the CSV file can't be closed
+     */
+    protected void closeMetrics() throws IOException {
+        if (metrics != null) {
+            metrics.close();
+            metrics = null;
+        }
+    }
+    
+    /**
+     * Adds the invoices that the stage couldn't write to the failed invoices
+     * of the checkpoint. Must be called after the stage is flushed.
+     */
+    protected void collectWriteFailures() {
+        File file;
+        while ((file = stage.pollFailed()) != null) {
+            Integer id = submitted.get(file.getPath());
+            if (id != null) {
+                checkpoint.getFailed().add(id);
+            }
+        }
+        submitted.clear();
+    }
+    
+    /**
+     * Gets the number of rendered invoices. With a write stage,
+     * only the invoices that were written completely are counted.
+     *
+     * @return the number of rendered invoices
+     */
+    public int getRendered() {
+        return stage == null ? rendered : stage.getWritten();
+    }
+    
+    /**
+     * Gets the number of invoices that couldn't be rendered.
+     *
+     * @return the number of failures
+     */
+    public int getFailures() {
+        return failures;
+    }
+    
+    /**
+     * Gets the ids of the invoices that failed, once the run is complete.
+     *
+     * @return the ids, in ascending order
+     */
+    public List<Integer> getFailedIds() {
+        return failedIds;
+    }
+}
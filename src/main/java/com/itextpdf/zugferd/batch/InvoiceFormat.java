@@ -0,0 +1,119 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import com.itextpdf.zugferd.HtmlInvoicesComfort;
+import com.itextpdf.zugferd.PdfInvoicesBasic;
+import com.itextpdf.zugferd.PdfInvoicesComfort;
+import com.itextpdf.zugferd.XmlInvoicesComfort;
+import com.itextpdf.zugferd.pojo.Invoice;
+
+/**
+ * The output formats the invoice generators can produce.
+ * Every format knows its destination pattern and how to render
+ * a single {@link Invoice} to an output stream.
+ */
+public enum InvoiceFormat {
+    
+    /** A ZUGFeRD invoice using the Basic profile, see {@link PdfInvoicesBasic}. */
+    BASIC(PdfInvoicesBasic.DEST) {
+        @Override
+        public void render(Invoice invoice, OutputStream os) throws Exception {
+            new PdfInvoicesBasic().createPdf(invoice, os);
+        }
+    },
+    
+    /** A ZUGFeRD invoice using the Comfort profile, see {@link PdfInvoicesComfort}. */
+    COMFORT(PdfInvoicesComfort.DEST) {
+        @Override
+        public void render(Invoice invoice, OutputStream os) throws Exception {
+            new PdfInvoicesComfort().createPdf(invoice, os);
+        }
+    },
+    
+    /** An HTML invoice, see {@link HtmlInvoicesComfort}. */
+    HTML(HtmlInvoicesComfort.DEST) {
+        @Override
+        public void render(Invoice invoice, OutputStream os) throws Exception {
+            new HtmlInvoicesComfort().createHtml(invoice,
+                new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        }
+    },
+    
+    /** The ZUGFeRD XML of an invoice, see {@link XmlInvoicesComfort}. */
+    XML(XmlInvoicesComfort.DEST) {
+        @Override
+        public void render(Invoice invoice, OutputStream os) throws Exception {
+            new XmlInvoicesComfort().createXml(invoice, os);
+        }
+    };
+    
+    /** The pattern of the destination paths. */
+    private final String dest;
+    
+    /**
+     * Creates an invoice format.
+     *
+     * @param dest the pattern of the destination paths
+     */
+    private InvoiceFormat(String dest) {
+        this.dest = dest;
+    }
+    
+    /**
+     * Gets the destination path for a specific invoice.
+     *
+     * @param id the invoice id
+     * @return the destination path
+     */
+    public String getDest(int id) {
+        return String.format(dest, id);
+    }
+    
+    /**
+     * Renders an invoice to its destination file.
+     *
+     * @param invoice the invoice
+     * @return the destination file
+     * @throws Exception if the invoice can't be rendered or written
+     */
+    public File render(Invoice invoice) throws Exception {
+        File file = new File(getDest(invoice.getId()));
+        OutputStream os = new FileOutputStream(file);
+        try {
+            render(invoice, os);
+        }
+        finally {
+            os.close();
+        }
+        return file;
+    }
+    
+    /**
+     * Renders an invoice to an output stream.
+     * The output stream is closed once the invoice has been written.
+     *
+     * @param invoice the invoice
+     * @param os the output stream
+     * @throws Exception if the invoice can't be rendered or written
+     */
+    public abstract void render(Invoice invoice, OutputStream os) throws Exception;
+    
+    /**
+     * Gets a format by its (case insensitive) name.
+     *
+     * @param name the name, e.g. "basic" or "xml"
+     * @return the format
+     */
+    public static InvoiceFormat fromName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
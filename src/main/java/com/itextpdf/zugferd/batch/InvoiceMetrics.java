@@ -0,0 +1,279 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.Item;
+
+/**
+ * Records what every single invoice costs: the CPU time and the bytes
+ * allocated by the rendering thread, the number of lines, the length of
+ * the longest product name and the size of the output. Every invoice is
+ * written to a CSV file as soon as it is measured; only the most expensive
+ * invoices are kept in memory, to print the outliers at the end of a run.
+ * The metrics can be shared by several rendering threads: every thread
+ * measures its own invoice between {@link #start()} and
+ * {@link #stop(Invoice, long)}.
+ * <p>
+ * The allocated bytes are only available on JVMs that implement
+ * com.sun.management.ThreadMXBean (HotSpot and OpenJ9); elsewhere they are
+ * reported as -1.
+ */
+public class InvoiceMetrics {
+    
+    /** The system property that enables the metrics of the batch tools. */
+    public static final String METRICS_PROPERTY = "zugferd.metrics";
+    
+    /** The system property that overrides the number of outliers that are printed. */
+    public static final String TOP_PROPERTY = "zugferd.metrics.top";
+    
+    /** The default number of outliers that are printed. */
+    public static final int TOP = 10;
+    
+    /** The header of the CSV file. */
+    public static final String HEADER = "invoiceid,lines,longestname,outputbytes,cpumicros,allocatedbytes,wallmicros";
+    
+    /**
+     * The measurements of a single invoice.
+     */
+    public static class Sample {
+        /** The invoice id. */
+        public int id;
+        /** The number of lines. */
+        public int lines;
+        /** The length of the longest product name. */
+        public int longestName;
+        /** The size of the output. */
+        public long outputBytes;
+        /** The CPU time of the rendering thread. */
+        public long cpuNanos;
+        /** The bytes allocated by the rendering thread, or -1 if unknown. */
+        public long allocatedBytes;
+        /** The elapsed time. */
+        public long wallNanos;
+    }
+    
+    /** Orders samples by CPU time. */
+    protected static final Comparator<Sample> BY_CPU = new Comparator<Sample>() {
+        public int compare(Sample s1, Sample s2) {
+            return Long.compare(s1.cpuNanos, s2.cpuNanos);
+        }
+    };
+    
+    /** Orders samples by allocated bytes. */
+    protected static final Comparator<Sample> BY_ALLOCATION = new Comparator<Sample>() {
+        public int compare(Sample s1, Sample s2) {
+            return Long.compare(s1.allocatedBytes, s2.allocatedBytes);
+        }
+    };
+    
+    /** Measures the CPU time of the current thread. */
+    protected ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    
+    /** Measures the allocations of the current thread, or <code>null</code> if the JVM can't. */
+    protected com.sun.management.ThreadMXBean allocations;
+    
+    /** The number of outliers that are printed. */
+    protected int top;
+    
+    /** The CSV file. */
+    protected Writer csv;
+    
+    /** The invoices with the most CPU time, cheapest first. */
+    protected PriorityQueue<Sample> topCpu;
+    
+    /** The invoices with the most allocated bytes, smallest first. */
+    protected PriorityQueue<Sample> topAllocation;
+    
+    /** The number of measured invoices. */
+    protected int count;
+    
+    /** The total CPU time. */
+    protected long totalCpuNanos;
+    
+    /** The total allocated bytes. */
+    protected long totalAllocatedBytes;
+    
+    /** The time, CPU time and allocated bytes at the start of the current invoice of every thread. */
+    protected ThreadLocal<long[]> starts = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[3];
+        }
+    };
+    
+    /**
+     * Creates metrics if the {@link #METRICS_PROPERTY} system property is set to true.
+     *
+     * @param file the CSV file
+     * @return the metrics, or <code>null</code> if they aren't enabled
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static InvoiceMetrics fromSystemProperty(File file) throws IOException {
+        return Boolean.getBoolean(METRICS_PROPERTY) ? new InvoiceMetrics(file) : null;
+    }
+    
+    /**
+     * Creates metrics that are written to a CSV file.
+     *
+     * @param file the CSV file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public InvoiceMetrics(File file) throws IOException {
+        this(file, Integer.getInteger(TOP_PROPERTY, TOP));
+    }
+    
+    /**
+     * Creates metrics that are written to a CSV file.
+     *
+     * @param file the CSV file
+     * @param top the number of outliers that are printed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public InvoiceMetrics(File file, int top) throws IOException {
+        this.top = top;
+        topCpu = new PriorityQueue<Sample>(top + 1, BY_CPU);
+        topAllocation = new PriorityQueue<Sample>(top + 1, BY_ALLOCATION);
+        if (threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled())
+            threads.setThreadCpuTimeEnabled(true);
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threads;
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                allocations = bean;
+            }
+        }
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        csv = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        csv.write(HEADER);
+        csv.write('\n');
+    }
+    
+    /**
+     * Starts measuring an invoice on the current thread.
+     */
+    public void start() {
+        long[] start = starts.get();
+        start[0] = System.nanoTime();
+        start[1] = threads.getCurrentThreadCpuTime();
+        start[2] = getAllocatedBytes();
+    }
+    
+    /**
+     * Stops measuring an invoice on the current thread, and records it.
+     *
+     * @param invoice the invoice
+     * @param outputBytes the size of the output
+     * @throws IOException if the CSV file can't be written
+     */
+    public void stop(Invoice invoice, long outputBytes) throws IOException {
+        long[] start = starts.get();
+        Sample sample = new Sample();
+        sample.cpuNanos = threads.getCurrentThreadCpuTime() - start[1];
+        sample.allocatedBytes = allocations == null ? -1 : getAllocatedBytes() - start[2];
+        sample.wallNanos = System.nanoTime() - start[0];
+        sample.id = invoice.getId();
+        sample.outputBytes = outputBytes;
+        List<Item> items = invoice.getItems();
+        sample.lines = items.size();
+        for (Item item : items) {
+            sample.longestName = Math.max(sample.longestName, item.getProduct().getName().length());
+        }
+        record(sample);
+    }
+    
+    /**
+     * Records the measurements of an invoice.
+     *
+     * @param sample the measurements
+     * @throws IOException if the CSV file can't be written
+     */
+    protected synchronized void record(Sample sample) throws IOException {
+        count++;
+        totalCpuNanos += sample.cpuNanos;
+        totalAllocatedBytes += sample.allocatedBytes;
+        csv.write(String.format("%d,%d,%d,%d,%d,%d,%d\n", sample.id, sample.lines, sample.longestName,
+            sample.outputBytes, sample.cpuNanos / 1000, sample.allocatedBytes, sample.wallNanos / 1000));
+        keep(topCpu, sample);
+        if (allocations != null)
+            keep(topAllocation, sample);
+    }
+    
+    /**
+     * Adds a sample to a ranking, and drops the cheapest sample if the ranking is full.
+     *
+     * @param ranking the ranking
+     * @param sample the sample
+     */
+    protected void keep(PriorityQueue<Sample> ranking, Sample sample) {
+        ranking.add(sample);
+        if (ranking.size() > top)
+            ranking.poll();
+    }
+    
+    /**
+     * Gets the bytes allocated by the current thread so far.
+     *
+     * @return the number of bytes, or -1 if unknown
+     */
+    protected long getAllocatedBytes() {
+        if (allocations == null)
+            return -1;
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    /**
+     * Closes the CSV file and prints the outliers.
+     *
+     * @throws IOException if the CSV file can't be closed
+     */
+    public synchronized void close() throws IOException {
+        csv.close();
+        if (count == 0)
+            return;
+        System.out.println(String.format("Average per invoice: %d us CPU, %d KB allocated",
+            totalCpuNanos / count / 1000, allocations == null ? -1 : totalAllocatedBytes / count / 1024));
+        print("Top %d invoices by CPU time", topCpu, BY_CPU, (double)totalCpuNanos / count);
+        if (allocations != null)
+            print("Top %d invoices by allocated bytes", topAllocation, BY_ALLOCATION, (double)totalAllocatedBytes / count);
+    }
+    
+    /**
+     * Prints a ranking, most expensive invoice first.
+     *
+     * @param title the title, with a placeholder for the number of invoices
+     * @param ranking the ranking
+     * @param order the order of the ranking
+     * @param average the average value of the ranked quantity
+     */
+    protected void print(String title, PriorityQueue<Sample> ranking, Comparator<Sample> order, double average) {
+        List<Sample> samples = new ArrayList<Sample>(ranking);
+        Collections.sort(samples, Collections.reverseOrder(order));
+        System.out.println(String.format(title, samples.size()));
+        System.out.println(String.format("%10s %8s %8s %10s %10s %12s %8s",
+            "invoice", "lines", "name", "bytes", "cpu us", "alloc KB", "x avg"));
+        for (Sample sample : samples) {
+            long value = order == BY_CPU ? sample.cpuNanos : sample.allocatedBytes;
+            System.out.println(String.format("%10d %8d %8d %10d %10d %12d %8.1f",
+                sample.id, sample.lines, sample.longestName, sample.outputBytes,
+                sample.cpuNanos / 1000, sample.allocatedBytes / 1024, average == 0 ? 0 : value / average));
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+
+/**
+ * Keeps running and renders the invoices that are inserted into the
+ * database, in one or more formats, shortly after they were inserted.
+ * <p>
+ * The watcher polls for invoices with an id higher than a high-water mark,
+ * at most a batch of invoices per query. The high-water mark is kept in a
+ * {@link Checkpoint}, so that a restarted watcher neither skips nor renders
+ * twice what an earlier watcher did. A full batch is followed by the next
+ * poll immediately; an empty poll doubles the poll interval, up to the
+ * maximum interval, and a new invoice resets it to the minimum. An idle
+ * database therefore costs one indexed query every few seconds.
+ * <p>
+ * The ids of the invoices that fail in any format are kept in the checkpoint
+ * too, and those invoices are rendered again on a later poll, at most once
+ * per retry interval, until they succeed.
+ * <p>
+ * The invoices must be inserted with ascending ids, and must be committed
+ * in that order: an invoice that is committed after an invoice with a
+ * higher id is not seen. The database must be opened in the default file
+ * mode (see {@link PojoFactory#MODE_PROPERTY}); let the application that
+ * inserts the invoices and the watcher share an HSQLDB server by setting
+ * the {@link PojoFactory#URL_PROPERTY} property.
+ */
+public class InvoiceWatcher {
+    
+    /** The default checkpoint file. */
+    public static final String CHECKPOINT = "results/zugferd/watch.properties";
+    
+    /** The system property that overrides the minimum poll interval in milliseconds. */
+    public static final String MIN_INTERVAL_PROPERTY = "zugferd.watch.min";
+    
+    /** The system property that overrides the maximum poll interval in milliseconds. */
+    public static final String MAX_INTERVAL_PROPERTY = "zugferd.watch.max";
+    
+    /** The default minimum poll interval in milliseconds. */
+    public static final int MIN_INTERVAL = 250;
+    
+    /** The default maximum poll interval in milliseconds. */
+    public static final int MAX_INTERVAL = 4000;
+    
+    /** The system property that overrides the retry interval in milliseconds. */
+    public static final String RETRY_INTERVAL_PROPERTY = "zugferd.watch.retry";
+    
+    /** The default interval in milliseconds between two attempts to render the invoices that failed. */
+    public static final int RETRY_INTERVAL = 60000;
+    
+    /** The default maximum number of invoices read per poll. */
+    public static final int BATCH = 100;
+    
+    /** The factory that reads the invoices. */
+    protected PojoFactory factory;
+    
+    /** The formats that are rendered. */
+    protected InvoiceFormat[] formats;
+    
+    /** The high-water mark. */
+    protected Checkpoint checkpoint;
+    
+    /** The maximum number of invoices read per poll. */
+    protected int batch;
+    
+    /** The minimum poll interval in milliseconds. */
+    protected long minInterval = Integer.getInteger(MIN_INTERVAL_PROPERTY, MIN_INTERVAL);
+    
+    /** The maximum poll interval in milliseconds. */
+    protected long maxInterval = Integer.getInteger(MAX_INTERVAL_PROPERTY, MAX_INTERVAL);
+    
+    /** The interval in milliseconds between two attempts to render the invoices that failed. */
+    protected long retryInterval = Integer.getInteger(RETRY_INTERVAL_PROPERTY, RETRY_INTERVAL);
+    
+    /** The time of the last attempt to render the invoices that failed. */
+    protected long lastRetry;
+    
+    /** The id of the last rendered invoice. */
+    protected int lastId;
+    
+    /** Whether the watcher keeps polling. */
+    protected volatile boolean running = true;
+    
+    /** Used to wake up a sleeping watcher when it is stopped. */
+    protected final Object lock = new Object();
+    
+    /** The number of polls. */
+    protected long polls;
+    
+    /** The number of rendered invoices. */
+    protected int rendered;
+    
+    /** The number of outputs that couldn't be rendered. */
+    protected int failures;
+    
+    /** The per-output metrics, or <code>null</code> if they aren't recorded. */
+    protected InvoiceMetrics metrics;
+    
+    /**
+     * The main method. The watcher stops after finishing its current
+     * batch when the process is interrupted.
+     *
+     * @param args the formats separated by commas (default: all formats),
+     * the checkpoint file, and the maximum number of invoices read per poll
+     * @throws Exception if the watcher can't be started
+     */
+    public static void main(String[] args) throws Exception {
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        InvoiceFormat[] formats = InvoiceFormat.values();
+        if (args.length > 0) {
+            String[] names = args[0].split(",");
+            formats = new InvoiceFormat[names.length];
+            for (int i = 0; i < names.length; i++) {
+                formats[i] = InvoiceFormat.fromName(names[i].trim());
+            }
+        }
+        File file = new File(args.length > 1 ? args[1] : CHECKPOINT);
+        int batch = args.length > 2 ? Integer.parseInt(args[2]) : BATCH;
+        file.getParentFile().mkdirs();
+        final PojoFactory factory = PojoFactory.getInstance();
+        final InvoiceWatcher watcher = new InvoiceWatcher(factory, formats, file, batch);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        InvoiceMetrics metrics = InvoiceMetrics.fromSystemProperty(new File(file.getParentFile(),
+            (dot > 0 ? name.substring(0, dot) : name) + ".metrics.csv"));
+        watcher.setMetrics(metrics);
+        final CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                watcher.stop();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            watcher.run();
+        }
+        finally {
+            if (metrics != null)
+                metrics.close();
+            factory.close();
+            done.countDown();
+        }
+    }
+    
+    /**
+     * Creates a watcher. Without a high-water mark in the checkpoint, the
+     * watcher starts after the highest invoice id in the database: the
+     * existing invoices are the job of an {@link InvoiceBatch}.
+     *
+     * @param factory the factory that reads the invoices
+     * @param formats the formats that will be rendered
+     * @param checkpoint the checkpoint file
+     * @param batch the maximum number of invoices read per poll
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws SQLException the SQL exception
+     */
+    public InvoiceWatcher(PojoFactory factory, InvoiceFormat[] formats, File checkpoint, int batch)
+        throws IOException, SQLException {
+        this.factory = factory;
+        this.formats = formats;
+        this.checkpoint = new Checkpoint(checkpoint);
+        this.batch = batch;
+        Integer id = this.checkpoint.getLastId();
+        if (id != null) {
+            int deleted = this.checkpoint.recover();
+            lastId = id;
+            System.out.println(String.format(
+                "Watching after invoice %s, %s partial outputs removed", lastId, deleted));
+        }
+        else {
+            int[] ids = factory.getInvoiceIdRange();
+            lastId = ids == null ? 0 : ids[1];
+            this.checkpoint.commit(lastId, new ArrayList<String>());
+            System.out.println(String.format("Watching after invoice %s", lastId));
+        }
+        for (InvoiceFormat format : formats) {
+            new File(format.getDest(lastId)).getParentFile().mkdirs();
+        }
+    }
+    
+    /**
+     * Sets the metrics that record the cost of every output.
+     *
+     * @param metrics the metrics, or <code>null</code> to record nothing
+     */
+    public void setMetrics(InvoiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Polls for new invoices and renders them until the watcher is stopped.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws SQLException the SQL exception
+     */
+    public void run() throws IOException, SQLException {
+        long interval = minInterval;
+        while (running) {
+            polls++;
+            if (!checkpoint.getFailed().isEmpty()
+                && System.currentTimeMillis() - lastRetry >= retryInterval)
+                retry();
+            List<Invoice> invoices = factory.getInvoicesAfter(lastId, batch);
+            if (!invoices.isEmpty()) {
+                render(invoices);
+                interval = minInterval;
+                if (invoices.size() == batch)
+                    continue;
+            }
+            else {
+                interval = Math.min(interval * 2, maxInterval);
+            }
+            synchronized (lock) {
+                if (running) {
+                    try {
+                        lock.wait(interval);
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+            }
+        }
+        System.out.println(String.format("%s invoices rendered, %s failures, %s polls",
+            rendered, failures, polls));
+        if (!checkpoint.getFailed().isEmpty()) {
+            System.out.println(String.format("Failed invoices: %s", checkpoint.getFailed()));
+        }
+    }
+    
+    /**
+     * Renders the invoices that failed before again. The ids stay in the
+     * checkpoint until the invoices succeed, so that they are also retried
+     * after a restart.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws SQLException the SQL exception
+     */
+    protected void retry() throws IOException, SQLException {
+        lastRetry = System.currentTimeMillis();
+        List<Invoice> invoices = new ArrayList<Invoice>();
+        for (Integer id : new ArrayList<Integer>(checkpoint.getFailed())) {
+            Invoice invoice = factory.getInvoice(id);
+            if (invoice != null)
+                invoices.add(invoice);
+            else
+                checkpoint.getFailed().remove(id);
+        }
+        if (!invoices.isEmpty()) {
+            System.out.println(String.format("Retrying %s invoices that failed before", invoices.size()));
+            renderOutputs(invoices);
+        }
+        checkpoint.commit(lastId, new ArrayList<String>());
+    }
+    
+    /**
+     * Renders a batch of invoices in all formats after announcing their
+     * outputs in the checkpoint, and moves the high-water mark past the batch.
+     *
+     * @param invoices the invoices, ordered by id
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void render(List<Invoice> invoices) throws IOException {
+        renderOutputs(invoices);
+        lastId = invoices.get(invoices.size() - 1).getId();
+        checkpoint.commit(lastId, new ArrayList<String>());
+    }
+    
+    /**
+     * Renders invoices in all formats after announcing their outputs in the
+     * checkpoint. An invoice that fails in any format is added to the failed
+     * ids of the checkpoint, an invoice that succeeds in all formats is removed
+     * from them; the caller commits the checkpoint.
+     *
+     * @param invoices the invoices
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void renderOutputs(List<Invoice> invoices) throws IOException {
+        if (invoices.isEmpty())
+            return;
+        List<String> partials = new ArrayList<String>();
+        for (Invoice invoice : invoices) {
+            for (InvoiceFormat format : formats) {
+                partials.add(format.getDest(invoice.getId()));
+            }
+        }
+        checkpoint.commit(lastId, partials);
+        for (Invoice invoice : invoices) {
+            boolean failed = false;
+            for (InvoiceFormat format : formats) {
+                try {
+                    if (metrics != null)
+                        metrics.start();
+                    File dest = format.render(invoice);
+                    if (metrics != null)
+                        metrics.stop(invoice, dest.length());
+                } catch (Exception e) {
+                    failures++;
+                    failed = true;
+                    new File(format.getDest(invoice.getId())).delete();
+                    System.err.println(String.format("Invoice %s (%s) failed: %s", invoice.getId(), format, e));
+                }
+            }
+            if (failed)
+                checkpoint.getFailed().add(invoice.getId());
+            else
+                checkpoint.getFailed().remove(invoice.getId());
+            rendered++;
+        }
+    }
+    
+    /**
+     * Stops the watcher after its current batch.
+     */
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Gets the id of the last rendered invoice.
+     *
+     * @return the high-water mark
+     */
+    public int getLastId() {
+        return lastId;
+    }
+    
+    /**
+     * Gets the number of rendered invoices.
+     *
+     * @return the number of rendered invoices
+     */
+    public int getRendered() {
+        return rendered;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+/**
+ * A histogram of latencies with log-linear buckets, in the spirit of
+ * HdrHistogram: values below 64 are counted exactly, and every power of two
+ * above that is split into 32 buckets, so that a percentile is never off
+ * by more than about 3%. Recording is constant time and allocation free.
+ * The histogram isn't thread-safe: give every thread its own histogram
+ * and {@link #add(LatencyHistogram) add} them up at the end.
+ */
+public class LatencyHistogram {
+    
+    /** The number of buckets per power of two. */
+    protected static final int SUB_BUCKETS = 32;
+    
+    /** The number of bits of {@link #SUB_BUCKETS}. */
+    protected static final int SUB_BUCKET_BITS = 5;
+    
+    /** The number of buckets needed for all positive longs. */
+    protected static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+    
+    /** The number of values per bucket. */
+    protected long[] counts = new long[BUCKETS];
+    
+    /** The number of values. */
+    protected long count;
+    
+    /** The largest value. */
+    protected long max;
+    
+    /** The sum of all values. */
+    protected long sum;
+    
+    /**
+     * Records a value.
+     *
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+    
+    /**
+     * Adds the values of another histogram to this histogram.
+     *
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+    
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value the value
+     * @return the index of the bucket
+     */
+    protected static int index(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int)value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int)(value >>> shift);
+    }
+    
+    /**
+     * Gets the largest value that falls in a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the value
+     */
+    protected static long highest(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+    
+    /**
+     * Gets the value below which a percentage of the values fall.
+     *
+     * @param percentile the percentage, e.g. 99.9
+     * @return the value, or 0 if the histogram is empty
+     */
+    public long getPercentile(double percentile) {
+        long target = (long)Math.ceil(percentile / 100 * count);
+        if (target < 1)
+            target = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(highest(i), max);
+        }
+        return max;
+    }
+    
+    /**
+     * Gets the number of values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Gets the largest value.
+     *
+     * @return the largest value
+     */
+    public long getMax() {
+        return max;
+    }
+    
+    /**
+     * Gets the average value.
+     *
+     * @return the average, or 0 if the histogram is empty
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double)sum / count;
+    }
+}
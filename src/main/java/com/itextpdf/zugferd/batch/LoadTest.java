@@ -0,0 +1,189 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+import com.itextpdf.zugferd.pojo.SyntheticInvoices;
+
+/**
+ * Renders invoices in one format on a number of threads, as fast as
+ * possible, for a fixed time or a fixed number of invoices, and reports the
+ * throughput and the latency percentiles. A warm-up phase with the same
+ * threads comes first and isn't measured. The invoices are rendered to a
+ * stream that only counts bytes, so the disk doesn't influence the result;
+ * they are read before the test starts, so the database doesn't either.
+ * <pre>
+ * LoadTest comfort 8 60s 10 synthetic:50
+ * LoadTest basic 4 10000 5 db
+ * </pre>
+ */
+public class LoadTest {
+    
+    /** The default warm-up time in seconds. */
+    public static final int WARMUP = 10;
+    
+    /** The default measured time in seconds. */
+    public static final int DURATION = 30;
+    
+    /** The number of synthetic invoices that are rendered in turn. */
+    public static final int SYNTHETIC_COUNT = 100;
+    
+    /** The default number of lines of a synthetic invoice. */
+    public static final int SYNTHETIC_LINES = 20;
+    
+    /** The format that is rendered. */
+    protected InvoiceFormat format;
+    
+    /** The invoices that are rendered in turn. */
+    protected List<Invoice> invoices;
+    
+    /** The number of rendering threads. */
+    protected int threads;
+    
+    /** The next invoice to render, modulo the number of invoices. */
+    protected AtomicLong next = new AtomicLong();
+    
+    /** The number of failed renderings. */
+    protected AtomicInteger failures = new AtomicInteger();
+    
+    /**
+     * Creates a load test.
+     *
+     * @param format the format that is rendered
+     * @param invoices the invoices that are rendered in turn
+     * @param threads the number of rendering threads
+     */
+    public LoadTest(InvoiceFormat format, List<Invoice> invoices, int threads) {
+        this.format = format;
+        this.invoices = invoices;
+        this.threads = threads;
+    }
+    
+    /**
+     * The main method.
+     *
+     * @param args the format, the number of threads, the duration (e.g. 60s) or
+     * the number of invoices, the warm-up time in seconds, and the source:
+     * synthetic[:lines] or db
+     * @throws Exception if the invoices can't be read
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: LoadTest basic|comfort|html|xml [threads] [seconds s|count] [warmup] [synthetic[:lines]|db]");
+            return;
+        }
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        InvoiceFormat format = InvoiceFormat.fromName(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String run = args.length > 2 ? args[2] : DURATION + "s";
+        int warmup = args.length > 3 ? Integer.parseInt(args[3]) : WARMUP;
+        String source = args.length > 4 ? args[4] : "synthetic";
+        LoadTest test = new LoadTest(format, getInvoices(source), threads);
+        System.out.println(String.format("%s, %d threads, %d invoices from %s", format, threads, test.invoices.size(), source));
+        test.run(warmup * 1000L, 0);
+        System.out.println("Warm-up done");
+        LatencyHistogram histogram;
+        long start = System.nanoTime();
+        if (run.endsWith("s")) {
+            histogram = test.run(Long.parseLong(run.substring(0, run.length() - 1)) * 1000, 0);
+        }
+        else {
+            histogram = test.run(0, Long.parseLong(run));
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%d invoices in %.1f s: %.1f invoices/sec, %d failures",
+            histogram.getCount(), nanos / 1e9, histogram.getCount() * 1e9 / nanos, test.failures.get()));
+        System.out.println(String.format("latency ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+            histogram.getMean() / 1000, histogram.getPercentile(50) / 1000.0, histogram.getPercentile(90) / 1000.0,
+            histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0));
+    }
+    
+    /**
+     * Gets the invoices of the test.
+     *
+     * @param source synthetic, optionally followed by a colon and the number of lines, or db
+     * @return the invoices, with their items loaded
+     * @throws SQLException the SQL exception
+     */
+    public static List<Invoice> getInvoices(String source) throws SQLException {
+        List<Invoice> invoices = new ArrayList<Invoice>();
+        if ("db".equalsIgnoreCase(source)) {
+            PojoFactory factory = PojoFactory.getInstance();
+            invoices = factory.getInvoices();
+            for (Invoice invoice : invoices) {
+                invoice.getItems();
+            }
+            factory.close();
+            return invoices;
+        }
+        int colon = source.indexOf(':');
+        int lines = colon < 0 ? SYNTHETIC_LINES : Integer.parseInt(source.substring(colon + 1));
+        SyntheticInvoices synthetic = new SyntheticInvoices(SYNTHETIC_COUNT, lines);
+        Invoice invoice;
+        while ((invoice = synthetic.next()) != null) {
+            invoices.add(invoice);
+        }
+        return invoices;
+    }
+    
+    /**
+     * Renders invoices on all threads until the time is up or the number of invoices is reached.
+     *
+     * @param millis the duration in milliseconds, or 0 to render a number of invoices
+     * @param count the number of invoices, if the duration is 0
+     * @return the latencies of all threads, in microseconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public LatencyHistogram run(long millis, final long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + millis * 1000000;
+        final boolean timed = millis > 0;
+        final AtomicLong remaining = new AtomicLong(count);
+        final LatencyHistogram[] histograms = new LatencyHistogram[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histograms[t] = histogram;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    while (timed ? System.nanoTime() < deadline : remaining.getAndDecrement() > 0) {
+                        render(histogram);
+                    }
+                }
+            }, "load-" + t);
+            workers[t].start();
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            total.add(histograms[t]);
+        }
+        return total;
+    }
+    
+    /**
+     * Renders the next invoice and records its latency.
+     *
+     * @param histogram the histogram of the current thread
+     */
+    protected void render(LatencyHistogram histogram) {
+        Invoice invoice = invoices.get((int)(next.getAndIncrement() % invoices.size()));
+        long start = System.nanoTime();
+        try {
+            format.render(invoice, new CountingOutputStream());
+            histogram.record((System.nanoTime() - start) / 1000);
+        } catch (Exception e) {
+            if (failures.getAndIncrement() == 0)
+                System.err.println(String.format("Invoice %s failed: %s", invoice.getId(), e));
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+
+/**
+ * Renders the invoices of an invoice date range in one format, split into
+ * partitions that are exported in parallel. A partition is either one day
+ * or a range of invoice ids within the date range. Every partition reads
+ * its invoices on a connection of its own (see {@link PojoFactory#newInstance()})
+ * and renders them with a group of worker threads of its own. In the snapshot
+ * mode of {@link PojoFactory}, all those connections share the in-memory
+ * database that is loaded once per process.
+ * <p>
+ * The index on the invoice dates is created first if it is missing, so that
+ * exporting a single day reads that day instead of the whole table. A
+ * read-only or snapshot database can't get the index; the export then goes
+ * on without it.
+ * For example, to export a month in daily partitions, four days at a time
+ * with two workers each, or to re-export a single day:
+ * <pre>
+ * PartitionedExport basic 2016-01-01 2016-01-31 day 4 2
+ * PartitionedExport basic 2016-01-15 2016-01-15
+ * </pre>
+ */
+public class PartitionedExport {
+    
+    /** Partitions of one day each. */
+    public static final String BY_DAY = "day";
+    
+    /** Partitions of a range of invoice ids each. */
+    public static final String BY_ID = "id";
+    
+    /** The default number of partitions that are exported at the same time. */
+    public static final int PARALLEL = 4;
+    
+    /** The default number of worker threads per partition. */
+    public static final int WORKERS = 2;
+    
+    /** The format that is rendered. */
+    protected InvoiceFormat format;
+    
+    /** The number of partitions that are exported at the same time. */
+    protected int parallel;
+    
+    /** The number of worker threads per partition. */
+    protected int workers;
+    
+    /** The per-invoice metrics, shared by all workers, or <code>null</code> if they aren't recorded. */
+    protected InvoiceMetrics metrics;
+    
+    /**
+     * A part of the export: the invoices of a date range with an id in an id range.
+     */
+    public static class Partition {
+    
+        /** The name of the partition. */
+        protected String name;
+    
+        /** The first invoice date (inclusive). */
+        protected Date from;
+    
+        /** The last invoice date (exclusive). */
+        protected Date to;
+    
+        /** The lowest invoice id (inclusive). */
+        protected int fromId;
+    
+        /** The highest invoice id (exclusive). */
+        protected int toId;
+    
+        /** The number of rendered invoices. */
+        protected AtomicInteger rendered = new AtomicInteger();
+    
+        /** The number of invoices that couldn't be rendered. */
+        protected AtomicInteger failures = new AtomicInteger();
+    
+        /** The time it took to export the partition. */
+        protected long millis;
+    
+        /**
+         * Creates a partition.
+         *
+         * @param name the name of the partition
+         * @param from the first invoice date (inclusive)
+         * @param to the last invoice date (exclusive)
+         * @param fromId the lowest invoice id (inclusive)
+         * @param toId the highest invoice id (exclusive)
+         */
+        public Partition(String name, Date from, Date to, int fromId, int toId) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+    
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        public String toString() {
+            return String.format("%s: %d invoices, %d failures in %d ms",
+                name, rendered.get(), failures.get(), millis);
+        }
+    }
+    
+    /**
+     * The main method.
+     *
+     * @param args the format, the first and the last invoice date (yyyy-MM-dd, both inclusive),
+     * "day" or "id:&lt;partitions&gt;", the number of partitions exported at the same time,
+     * and the number of worker threads per partition
+     * @throws Exception if the export can't be started
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: PartitionedExport basic|comfort|html|xml <from> <to> [day|id:<partitions>] [parallel] [workers]");
+            return;
+        }
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        InvoiceFormat format = InvoiceFormat.fromName(args[0]);
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        Date from = sdf.parse(args[1]);
+        Calendar to = Calendar.getInstance();
+        to.setTime(sdf.parse(args[2]));
+        to.add(Calendar.DAY_OF_MONTH, 1);
+        String mode = args.length > 3 ? args[3] : BY_DAY;
+        int parallel = args.length > 4 ? Integer.parseInt(args[4]) : PARALLEL;
+        int workers = args.length > 5 ? Integer.parseInt(args[5]) : WORKERS;
+    
+        PojoFactory factory = PojoFactory.getInstance();
+        try {
+            if (factory.createDateIndex())
+                System.out.println("Created the index on the invoice dates");
+        } catch (SQLException e) {
+            System.err.println(String.format("Can't create the index on the invoice dates: %s", e));
+        }
+        List<Partition> partitions;
+        if (mode.startsWith(BY_ID)) {
+            int count = mode.indexOf(':') > 0 ? Integer.parseInt(mode.substring(mode.indexOf(':') + 1)) : parallel;
+            partitions = partitionById(factory, from, to.getTime(), count);
+        }
+        else {
+            partitions = partitionByDay(factory, from, to.getTime());
+        }
+        factory.close();
+    
+        new File(format.getDest(0)).getParentFile().mkdirs();
+        PartitionedExport export = new PartitionedExport(format, parallel, workers);
+        InvoiceMetrics metrics = InvoiceMetrics.fromSystemProperty(
+            new File(new File(format.getDest(0)).getParentFile(), "partitioned.metrics.csv"));
+        export.setMetrics(metrics);
+        long start = System.currentTimeMillis();
+        try {
+            export.run(partitions);
+        }
+        finally {
+            if (metrics != null)
+                metrics.close();
+        }
+        long millis = System.currentTimeMillis() - start;
+        int rendered = 0;
+        int failures = 0;
+        for (Partition partition : partitions) {
+            System.out.println(partition);
+            rendered += partition.rendered.get();
+            failures += partition.failures.get();
+        }
+        System.out.println(String.format("%d partitions, %d invoices rendered, %d failures in %d ms",
+            partitions.size(), rendered, failures, millis));
+    }
+    
+    /**
+     * Creates a partitioned export.
+     *
+     * @param format the format that will be rendered
+     * @param parallel the number of partitions that are exported at the same time
+     * @param workers the number of worker threads per partition
+     */
+    public PartitionedExport(InvoiceFormat format, int parallel, int workers) {
+        this.format = format;
+        this.parallel = parallel;
+        this.workers = workers;
+    }
+    
+    /**
+     * Sets the metrics that record the cost of every invoice.
+     *
+     * @param metrics the metrics, or <code>null</code> to record nothing
+     */
+    public void setMetrics(InvoiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Splits a date range into one partition per day with invoices.
+     *
+     * @param factory the factory that reads the invoice dates
+     * @param from the first invoice date (inclusive)
+     * @param to the last invoice date (exclusive)
+     * @return the partitions
+     * @throws SQLException the SQL exception
+     */
+    public static List<Partition> partitionByDay(PojoFactory factory, Date from, Date to) throws SQLException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        List<Partition> partitions = new ArrayList<Partition>();
+        Calendar next = Calendar.getInstance();
+        for (Date day : factory.getInvoiceDays(from, to)) {
+            next.setTime(day);
+            next.add(Calendar.DAY_OF_MONTH, 1);
+            partitions.add(new Partition(sdf.format(day), day, next.getTime(), Integer.MIN_VALUE, Integer.MAX_VALUE));
+        }
+        return partitions;
+    }
+    
+    /**
+     * Splits a date range into a number of partitions with id ranges of the same size.
+     *
+     * @param factory the factory that reads the invoice ids
+     * @param from the first invoice date (inclusive)
+     * @param to the last invoice date (exclusive)
+     * @param count the number of partitions
+     * @return the partitions, fewer than requested if there are fewer invoice ids
+     * @throws SQLException the SQL exception
+     */
+    public static List<Partition> partitionById(PojoFactory factory, Date from, Date to, int count)
+        throws SQLException {
+        List<Partition> partitions = new ArrayList<Partition>();
+        int[] ids = factory.getInvoiceIdRange(from, to);
+        if (ids == null)
+            return partitions;
+        long span = (long)ids[1] + 1 - ids[0];
+        long size = (span + count - 1) / count;
+        for (long first = ids[0]; first <= ids[1]; first += size) {
+            int last = (int)Math.min(first + size, (long)ids[1] + 1);
+            partitions.add(new Partition(String.format("ids %d-%d", first, last - 1),
+                from, to, (int)first, last));
+        }
+        return partitions;
+    }
+    
+    /**
+     * Exports partitions, a number of them at the same time.
+     *
+     * @param partitions the partitions
+     * @throws SQLException if the invoices of a partition can't be read
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void run(List<Partition> partitions) throws SQLException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (final Partition partition : partitions) {
+            futures.add(pool.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    export(partition);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof SQLException)
+                        throw (SQLException)e.getCause();
+                    throw new SQLException(e.getCause());
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Reads the invoices of a partition on a connection of its own,
+     * and renders them with a group of worker threads.
+     *
+     * @param partition the partition
+     * @throws SQLException the SQL exception
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers
+     */
+    protected void export(final Partition partition) throws SQLException, InterruptedException {
+        long start = System.currentTimeMillis();
+        PojoFactory factory = PojoFactory.newInstance();
+        ExecutorService group = Executors.newFixedThreadPool(workers);
+        try {
+            for (final Invoice invoice : factory.getInvoices(partition.from, partition.to, partition.fromId, partition.toId)) {
+                group.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (metrics != null)
+                                metrics.start();
+                            File dest = format.render(invoice);
+                            partition.rendered.incrementAndGet();
+                            if (metrics != null)
+                                metrics.stop(invoice, dest.length());
+                        } catch (Exception e) {
+                            partition.failures.incrementAndGet();
+                            new File(format.getDest(invoice.getId())).delete();
+                            System.err.println(String.format("Invoice %s failed: %s", invoice.getId(), e));
+                        }
+                    }
+                });
+            }
+            group.shutdown();
+            group.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        finally {
+            group.shutdownNow();
+            factory.close();
+        }
+        partition.millis = System.currentTimeMillis() - start;
+    }
+}
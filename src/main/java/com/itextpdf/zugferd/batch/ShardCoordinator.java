@@ -0,0 +1,347 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Hands out disjoint ranges of invoice ids to the processes of a sharded run.
+ * The state of the run is stored in a coordination file; every access takes
+ * an exclusive lock on that file, so processes on the same host, or on hosts
+ * sharing a file system with working locks, never claim the same invoice.
+ * <p>
+ * A claimed range is a lease: it has an owner and the time it was claimed or
+ * last renewed. The owner renews the lease while it renders the range, and
+ * completes it when the range is done. A lease that isn't renewed within the
+ * lease time, e.g. because its shard died, expires and is handed out again
+ * by the next claim.
+ */
+public class ShardCoordinator {
+    
+    /** The system property that overrides the lease time in milliseconds. */
+    public static final String LEASE_PROPERTY = "zugferd.shard.lease";
+    
+    /** The default lease time in milliseconds. */
+    public static final long LEASE = 10 * 60 * 1000;
+    
+    /** The prefix of the keys of the leases in the coordination file. */
+    protected static final String LEASE_PREFIX = "lease.";
+    
+    /** The coordination file. */
+    protected File file;
+    
+    /** The lowest invoice id of the run. */
+    protected int firstId;
+    
+    /** The highest invoice id of the run. */
+    protected int lastId;
+    
+    /** The lease time in milliseconds. */
+    protected long leaseMillis = Long.getLong(LEASE_PROPERTY, LEASE);
+    
+    /**
+     * Creates a coordinator for the invoice ids from firstId to lastId.
+     *
+     * @param file the coordination file, shared by all shards
+     * @param firstId the lowest invoice id (inclusive)
+     * @param lastId the highest invoice id (inclusive)
+     */
+    public ShardCoordinator(File file, int firstId, int lastId) {
+        this.file = file;
+        this.firstId = firstId;
+        this.lastId = lastId;
+    }
+    
+    /**
+     * Creates a coordinator for the id range stored in an existing coordination file.
+     *
+     * @param file the coordination file
+     * @throws IOException if the file can't be read or has no id range
+     */
+    public ShardCoordinator(File file) throws IOException {
+        this.file = file;
+        Properties state = read();
+        if (state.getProperty("first") == null || state.getProperty("last") == null)
+            throw new IOException(String.format("%s has no id range", file));
+        firstId = Integer.parseInt(state.getProperty("first"));
+        lastId = Integer.parseInt(state.getProperty("last"));
+    }
+    
+    /**
+     * Claims a range of invoice ids: an expired lease if there is one,
+     * otherwise the next range of unclaimed ids.
+     *
+     * @param owner the name of the claiming shard
+     * @param size the maximum number of ids in a new range
+     * @return an array with the first id (inclusive) and the last id (exclusive)
+     * of the range, or <code>null</code> if all ids are claimed by live leases or completed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public int[] claim(String owner, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                Properties state = read(channel);
+                long now = System.currentTimeMillis();
+                for (String key : state.stringPropertyNames()) {
+                    if (key.startsWith(LEASE_PREFIX) && getTimestamp(state.getProperty(key)) + leaseMillis < now) {
+                        System.out.println(String.format("Reclaiming range %s of %s",
+                            key.substring(LEASE_PREFIX.length()), getOwner(state.getProperty(key))));
+                        state.setProperty(key, lease(owner, now));
+                        write(channel, state);
+                        return parseRange(key.substring(LEASE_PREFIX.length()));
+                    }
+                }
+                int next = Integer.parseInt(state.getProperty("next"));
+                if (next > lastId) {
+                    return null;
+                }
+                int end = (int)Math.min((long)next + size, (long)lastId + 1);
+                state.setProperty("next", String.valueOf(end));
+                state.setProperty(LEASE_PREFIX + next + "-" + end, lease(owner, now));
+                write(channel, state);
+                return new int[]{next, end};
+            }
+            finally {
+                lock.release();
+            }
+        }
+        finally {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Renews the lease of a range.
+     *
+     * @param owner the name of the shard that claimed the range
+     * @param range the range
+     * @return false if the lease expired and was reclaimed by another shard
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public boolean renew(String owner, int[] range) throws IOException {
+        return update(owner, range, true);
+    }
+    
+    /**
+     * Completes the lease of a range.
+     *
+     * @param owner the name of the shard that claimed the range
+     * @param range the range
+     * @return false if the lease expired and was reclaimed by another shard
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public boolean complete(String owner, int[] range) throws IOException {
+        return update(owner, range, false);
+    }
+    
+    /**
+     * Renews or removes a lease, if it is still owned by a shard.
+     *
+     * @param owner the name of the shard that claimed the range
+     * @param range the range
+     * @param renew true to renew the lease, false to remove it
+     * @return false if the lease is owned by another shard
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected boolean update(String owner, int[] range, boolean renew) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                Properties state = read(channel);
+                String key = LEASE_PREFIX + range[0] + "-" + range[1];
+                String lease = state.getProperty(key);
+                if (lease == null || !owner.equals(getOwner(lease)))
+                    return false;
+                if (renew)
+                    state.setProperty(key, lease(owner, System.currentTimeMillis()));
+                else
+                    state.remove(key);
+                write(channel, state);
+                return true;
+            }
+            finally {
+                lock.release();
+            }
+        }
+        finally {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Checks whether all ids have been claimed and all leases are completed,
+     * e.g. because the coordination file was left behind by an earlier run.
+     *
+     * @return true if nothing is left to claim
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public boolean isDone() throws IOException {
+        Properties state = read();
+        return Integer.parseInt(state.getProperty("next")) > lastId && getLeases(state).isEmpty();
+    }
+    
+    /**
+     * Gets the leases that are claimed but not completed.
+     *
+     * @return descriptions of the leases, e.g. "100-200 (shard1, 2 s ago)"
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public List<String> getLeases() throws IOException {
+        return getLeases(read());
+    }
+    
+    /**
+     * Gets the lowest invoice id of the run.
+     *
+     * @return the lowest id (inclusive)
+     */
+    public int getFirstId() {
+        return firstId;
+    }
+    
+    /**
+     * Gets the highest invoice id of the run.
+     *
+     * @return the highest id (inclusive)
+     */
+    public int getLastId() {
+        return lastId;
+    }
+    
+    /**
+     * Gets the leases of a state.
+     *
+     * @param state the state of the run
+     * @return descriptions of the leases
+     */
+    protected List<String> getLeases(Properties state) {
+        List<String> leases = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        for (String key : state.stringPropertyNames()) {
+            if (key.startsWith(LEASE_PREFIX)) {
+                String lease = state.getProperty(key);
+                leases.add(String.format("%s (%s, %d s ago)", key.substring(LEASE_PREFIX.length()),
+                    getOwner(lease), (now - getTimestamp(lease)) / 1000));
+            }
+        }
+        return leases;
+    }
+    
+    /**
+     * Reads the state of the run under a lock.
+     *
+     * @return the state
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected Properties read() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                return read(channel);
+            }
+            finally {
+                lock.release();
+            }
+        }
+        finally {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Reads the state of the run from the coordination file.
+     * An empty file means that nothing has been claimed yet.
+     *
+     * @param channel the channel of the coordination file
+     * @return the state
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected Properties read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+        channel.read(buffer, 0);
+        Properties state = new Properties();
+        state.load(new ByteArrayInputStream(buffer.array()));
+        if (state.getProperty("next") == null) {
+            state.setProperty("first", String.valueOf(firstId));
+            state.setProperty("last", String.valueOf(lastId));
+            state.setProperty("next", String.valueOf(firstId));
+        }
+        return state;
+    }
+    
+    /**
+     * Writes the state of the run to the coordination file.
+     *
+     * @param channel the channel of the coordination file
+     * @param state the state
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void write(FileChannel channel, Properties state) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        state.store(baos, "Shard coordination");
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(baos.toByteArray()), 0);
+        channel.force(true);
+    }
+    
+    /**
+     * Creates the value of a lease.
+     *
+     * @param owner the owner
+     * @param timestamp the time the lease was claimed or renewed
+     * @return the value
+     */
+    protected static String lease(String owner, long timestamp) {
+        return timestamp + " " + owner;
+    }
+    
+    /**
+     * Gets the time a lease was claimed or renewed.
+     *
+     * @param lease the value of the lease
+     * @return the timestamp
+     */
+    protected static long getTimestamp(String lease) {
+        return Long.parseLong(lease.substring(0, lease.indexOf(' ')));
+    }
+    
+    /**
+     * Gets the owner of a lease.
+     *
+     * @param lease the value of the lease
+     * @return the owner
+     */
+    protected static String getOwner(String lease) {
+        return lease.substring(lease.indexOf(' ') + 1);
+    }
+    
+    /**
+     * Parses a range such as "100-200".
+     *
+     * @param range the range
+     * @return an array with the first id (inclusive) and the last id (exclusive)
+     */
+    protected static int[] parseRange(String range) {
+        int dash = range.indexOf('-', 1);
+        return new int[]{Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1))};
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The progress of one shard of a sharded batch run.
+ * Every shard stores its own report; the reports of all shards
+ * can be merged into one report for the complete run.
+ */
+public class ShardReport {
+    
+    /** The name of the shard. */
+    protected String name;
+    
+    /** The ranges of invoice ids that were processed, e.g. "0-100". */
+    protected List<String> ranges = new ArrayList<String>();
+    
+    /** The number of invoices that were rendered. */
+    protected int invoices;
+    
+    /** The number of invoices that couldn't be rendered. */
+    protected int failures;
+    
+    /** The ids of the invoices that couldn't be rendered. */
+    protected SortedSet<Integer> failed = new TreeSet<Integer>();
+    
+    /** The number of bytes that were written. */
+    protected long bytes;
+    
+    /** The time spent rendering, in milliseconds. */
+    protected long millis;
+    
+    /**
+     * Creates a new, empty report.
+     *
+     * @param name the name of the shard
+     */
+    public ShardReport(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Adds a completed range to the report.
+     *
+     * @param from the first id of the range (inclusive)
+     * @param to the last id of the range (exclusive)
+     * @param invoices the number of rendered invoices
+     * @param failed the ids of the invoices that couldn't be rendered
+     * @param bytes the number of bytes written
+     * @param millis the time spent, in milliseconds
+     */
+    public void addRange(int from, int to, int invoices, Collection<Integer> failed, long bytes, long millis) {
+        ranges.add(from + "-" + to);
+        this.invoices += invoices;
+        this.failures += failed.size();
+        this.failed.addAll(failed);
+        this.bytes += bytes;
+        this.millis += millis;
+    }
+    
+    /**
+     * Finds the ids of a run that aren't in any completed range of this report,
+     * e.g. because they were claimed by a shard that died before completing them.
+     *
+     * @param firstId the lowest invoice id of the run (inclusive)
+     * @param lastId the highest invoice id of the run (inclusive)
+     * @return the missing ranges, e.g. "100-200", in ascending order
+     */
+    public List<String> findGaps(int firstId, int lastId) {
+        List<int[]> completed = new ArrayList<int[]>();
+        for (String range : ranges) {
+            completed.add(ShardCoordinator.parseRange(range));
+        }
+        Collections.sort(completed, new Comparator<int[]>() {
+            public int compare(int[] r1, int[] r2) {
+                return Integer.compare(r1[0], r2[0]);
+            }
+        });
+        List<String> gaps = new ArrayList<String>();
+        long next = firstId;
+        for (int[] range : completed) {
+            if (range[0] > next)
+                gaps.add(next + "-" + range[0]);
+            next = Math.max(next, range[1]);
+        }
+        if (next <= lastId)
+            gaps.add(next + "-" + ((long)lastId + 1));
+        return gaps;
+    }
+    
+    /**
+     * Gets the name of the shard.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Gets the number of rendered invoices.
+     *
+     * @return the number of invoices
+     */
+    public int getInvoices() {
+        return invoices;
+    }
+    
+    /**
+     * Gets the number of failures.
+     *
+     * @return the number of failures
+     */
+    public int getFailures() {
+        return failures;
+    }
+    
+    /**
+     * Gets the ids of the invoices that couldn't be rendered.
+     * They are in a completed range, so they aren't listed as gaps.
+     *
+     * @return the ids, in ascending order
+     */
+    public SortedSet<Integer> getFailed() {
+        return failed;
+    }
+    
+    /**
+     * Stores the report. The file is replaced as a whole,
+     * so that a reader never sees a half-written report.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void store(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("name", name);
+        properties.setProperty("ranges", String.join(",", ranges));
+        properties.setProperty("invoices", String.valueOf(invoices));
+        properties.setProperty("failures", String.valueOf(failures));
+        StringBuilder ids = new StringBuilder();
+        for (Integer id : failed) {
+            if (ids.length() > 0)
+                ids.append(',');
+            ids.append(id);
+        }
+        properties.setProperty("failed", ids.toString());
+        properties.setProperty("bytes", String.valueOf(bytes));
+        properties.setProperty("millis", String.valueOf(millis));
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            properties.store(fos, "Shard report");
+            fos.getFD().sync();
+        }
+        finally {
+            fos.close();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Loads a report.
+     *
+     * @param file the file
+     * @return the report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static ShardReport load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream is = new FileInputStream(file);
+        try {
+            properties.load(is);
+        }
+        finally {
+            is.close();
+        }
+        ShardReport report = new ShardReport(properties.getProperty("name"));
+        String ranges = properties.getProperty("ranges", "");
+        if (!ranges.isEmpty()) {
+            for (String range : ranges.split(",")) {
+                report.ranges.add(range);
+            }
+        }
+        report.invoices = Integer.parseInt(properties.getProperty("invoices", "0"));
+        report.failures = Integer.parseInt(properties.getProperty("failures", "0"));
+        String failed = properties.getProperty("failed", "");
+        if (!failed.isEmpty()) {
+            for (String id : failed.split(",")) {
+                report.failed.add(Integer.valueOf(id));
+            }
+        }
+        report.bytes = Long.parseLong(properties.getProperty("bytes", "0"));
+        report.millis = Long.parseLong(properties.getProperty("millis", "0"));
+        return report;
+    }
+    
+    /**
+     * Merges the reports of several shards.
+     *
+     * @param name the name of the merged report
+     * @param reports the reports of the shards
+     * @return the merged report
+     */
+    public static ShardReport merge(String name, List<ShardReport> reports) {
+        ShardReport merged = new ShardReport(name);
+        for (ShardReport report : reports) {
+            merged.ranges.addAll(report.ranges);
+            merged.invoices += report.invoices;
+            merged.failures += report.failures;
+            merged.failed.addAll(report.failed);
+            merged.bytes += report.bytes;
+            // the shards run side by side: the slowest one determines the duration
+            merged.millis = Math.max(merged.millis, report.millis);
+        }
+        return merged;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append(": ").append(invoices).append(" invoices, ")
+            .append(failures).append(" failures, ").append(bytes).append(" bytes in ")
+            .append(ranges.size()).append(" ranges, ").append(millis).append(" ms");
+        if (millis > 0) {
+            sb.append(String.format(" (%.1f invoices/s)", invoices * 1000.0 / millis));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.batch;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+
+/**
+ * Renders the invoices of the database in several processes at once.
+ * Every process is a shard that claims ranges of invoice ids through a
+ * {@link ShardCoordinator} until all ids are claimed, and that keeps track
+ * of its progress in its own {@link ShardReport}.
+ * <p>
+ * Start as many shards as needed with the same working directory:
+ * <pre>
+ * ShardedBatch basic shard1 100
+ * ShardedBatch basic shard2 100
+ * </pre>
+ * and merge the shard reports once all shards are done:
+ * <pre>
+ * ShardedBatch merge
+ * </pre>
+ * A range that a shard claimed but didn't complete within the lease time of
+ * the {@link ShardCoordinator} is claimed again by another shard; the merge
+ * lists the ranges that are still claimed, the ids that weren't rendered, and
+ * the ids that failed within a completed range.
+ * Remove the shard directory before starting a new run. The default database
+ * file can only be opened by one process at a time: let the shards connect to
+ * an HSQLDB server by setting the {@link PojoFactory#URL_PROPERTY} property.
+ */
+public class ShardedBatch {
+    
+    /** The directory with the coordination file and the shard reports. */
+    public static final String DIR = "results/zugferd/shards";
+    
+    /** The name of the coordination file. */
+    public static final String COORDINATION = "coordination";
+    
+    /** The name of the merged report. */
+    public static final String REPORT = "report.properties";
+    
+    /** The default number of invoice ids that are claimed at once. */
+    public static final int RANGE_SIZE = 100;
+    
+    /** The format that is rendered. */
+    protected InvoiceFormat format;
+    
+    /** The name of this shard. */
+    protected String name;
+    
+    /** The directory with the coordination file and the shard reports. */
+    protected File dir;
+    
+    /** The per-invoice metrics, or <code>null</code> if they aren't recorded. */
+    protected InvoiceMetrics metrics;
+    
+    /**
+     * The main method.
+     *
+     * @param args the format (or "merge"), the name of the shard, and the range size
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws SQLException the SQL exception
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length == 0) {
+            System.out.println("Usage: ShardedBatch basic|comfort|html|xml [shard] [rangesize]");
+            System.out.println("       ShardedBatch merge");
+            return;
+        }
+        File dir = new File(DIR);
+        if ("merge".equalsIgnoreCase(args[0])) {
+            System.out.println(merge(dir));
+            return;
+        }
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        InvoiceFormat format = InvoiceFormat.fromName(args[0]);
+        String name = args.length > 1 ? args[1] : ManagementFactory.getRuntimeMXBean().getName();
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : RANGE_SIZE;
+        dir.mkdirs();
+        ShardedBatch shard = new ShardedBatch(format, name, dir);
+        InvoiceMetrics metrics = InvoiceMetrics.fromSystemProperty(new File(dir, "shard-" + name + ".metrics.csv"));
+        shard.setMetrics(metrics);
+        try {
+            System.out.println(shard.run(size));
+        }
+        finally {
+            if (metrics != null)
+                metrics.close();
+        }
+    }
+    
+    /**
+     * Creates a new shard.
+     *
+     * @param format the format that will be rendered
+     * @param name the name of the shard
+     * @param dir the directory with the coordination file and the shard reports
+     */
+    public ShardedBatch(InvoiceFormat format, String name, File dir) {
+        this.format = format;
+        this.name = name;
+        this.dir = dir;
+    }
+    
+    /**
+     * Sets the metrics that record the cost of every invoice.
+     *
+     * @param metrics the metrics, or <code>null</code> to record nothing
+     */
+    public void setMetrics(InvoiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Claims ranges of invoice ids and renders them until all ids are claimed.
+     *
+     * @param size the number of invoice ids that are claimed at once
+     * @return the report of this shard
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws SQLException the SQL exception
+     */
+    public ShardReport run(int size) throws IOException, SQLException {
+        File reportFile = new File(dir, "shard-" + name + ".properties");
+        ShardReport report = reportFile.exists() ? ShardReport.load(reportFile) : new ShardReport(name);
+        PojoFactory factory = PojoFactory.getInstance();
+        int[] ids = factory.getInvoiceIdRange();
+        if (ids == null) {
+            factory.close();
+            return report;
+        }
+        new File(format.getDest(ids[0])).getParentFile().mkdirs();
+        File file = new File(dir, COORDINATION);
+        ShardCoordinator coordinator = new ShardCoordinator(file, ids[0], ids[1]);
+        if (coordinator.isDone()) {
+            System.err.println(String.format(
+                "All invoice ids of %s are claimed and completed: remove %s to start a new run", file, dir));
+            factory.close();
+            return report;
+        }
+        long renewMillis = coordinator.leaseMillis / 3;
+        int[] range;
+        int claimed = 0;
+        while ((range = coordinator.claim(name, size)) != null) {
+            claimed++;
+            long start = System.currentTimeMillis();
+            long renewed = start;
+            boolean owned = true;
+            int invoices = 0;
+            List<Integer> failed = new ArrayList<Integer>();
+            long bytes = 0;
+            factory.preload(range[0], range[1]);
+            for (Invoice invoice : factory.getInvoices(range[0], range[1])) {
+                if (System.currentTimeMillis() - renewed > renewMillis) {
+                    owned = coordinator.renew(name, range);
+                    if (!owned)
+                        break;
+                    renewed = System.currentTimeMillis();
+                }
+                try {
+                    if (metrics != null)
+                        metrics.start();
+                    File dest = format.render(invoice);
+                    invoices++;
+                    bytes += dest.length();
+                    if (metrics != null)
+                        metrics.stop(invoice, dest.length());
+                } catch (Exception e) {
+                    failed.add(invoice.getId());
+                    System.err.println(String.format("Invoice %s failed: %s", invoice.getId(), e));
+                }
+            }
+            if (owned && coordinator.complete(name, range)) {
+                report.addRange(range[0], range[1], invoices, failed, bytes, System.currentTimeMillis() - start);
+                report.store(reportFile);
+            }
+            else {
+                System.err.println(String.format(
+                    "The lease of range %d-%d expired and was reclaimed by another shard", range[0], range[1]));
+            }
+        }
+        if (claimed == 0) {
+            System.err.println(String.format(
+                "Nothing left to claim, ranges still claimed by other shards: %s", coordinator.getLeases()));
+        }
+        factory.close();
+        return report;
+    }
+    
+    /**
+     * Merges the reports of all the shards in a directory,
+     * and stores the result in that directory.
+     *
+     * @param dir the directory with the shard reports
+     * @return the merged report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static ShardReport merge(File dir) throws IOException {
+        File[] files = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().startsWith("shard-") && file.getName().endsWith(".properties");
+            }
+        });
+        List<ShardReport> reports = new ArrayList<ShardReport>();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                ShardReport report = ShardReport.load(file);
+                System.out.println(report);
+                reports.add(report);
+            }
+        }
+        ShardReport merged = ShardReport.merge("total", reports);
+        merged.store(new File(dir, REPORT));
+        File file = new File(dir, COORDINATION);
+        if (file.exists()) {
+            ShardCoordinator coordinator = new ShardCoordinator(file);
+            for (String lease : coordinator.getLeases()) {
+                System.out.println(String.format("Claimed but not completed: %s", lease));
+            }
+            for (String gap : merged.findGaps(coordinator.getFirstId(), coordinator.getLastId())) {
+                System.out.println(String.format("Not rendered: ids %s", gap));
+            }
+        }
+        if (!merged.getFailed().isEmpty()) {
+            System.out.println(String.format("Failed: ids %s", merged.getFailed()));
+        }
+        return merged;
+    }
+}
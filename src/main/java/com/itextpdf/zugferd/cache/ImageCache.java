@@ -0,0 +1,138 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.cache;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+
+/**
+ * Process-wide cache of decoded images, so that a logo or a stamp is
+ * decoded once instead of once per document. The cache is bounded by
+ * the number of bytes held by the decoded images; when it's full, the
+ * least recently used images are evicted first.
+ */
+public class ImageCache {
+    
+    /** The system property with the maximum number of bytes in the shared cache. */
+    public static final String MAX_BYTES_PROPERTY = "zugferd.imagecache.bytes";
+    
+    /** The default maximum number of bytes in the shared cache. */
+    public static final long MAX_BYTES = 16 * 1024 * 1024;
+    
+    /** The cache shared by all the document builders. */
+    private static final ImageCache INSTANCE = new ImageCache(Long.getLong(MAX_BYTES_PROPERTY, MAX_BYTES));
+    
+    /** The cached images, in least recently used order. */
+    protected final LinkedHashMap<String, ImageData> images = new LinkedHashMap<String, ImageData>(16, 0.75f, true);
+    
+    /** The sizes of the cached images. */
+    protected final Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+    
+    /** The maximum number of bytes. */
+    protected final long maxBytes;
+    
+    /** The number of bytes currently held. */
+    protected long bytes;
+    
+    /** The number of requests served from the cache. */
+    protected long hits;
+    
+    /** The number of images that had to be decoded. */
+    protected long misses;
+    
+    /**
+     * Gets the cache shared by all the document builders.
+     *
+     * @return the shared cache
+     */
+    public static ImageCache getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Creates an image cache.
+     *
+     * @param maxBytes the maximum number of bytes held by the cached images
+     */
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * Gets a decoded image, decoding it the first time only.
+     *
+     * @param path the path to the image
+     * @return the decoded image
+     * @throws MalformedURLException if the path can't be turned into a URL
+     */
+    public ImageData getImage(String path) throws MalformedURLException {
+        String key = new File(path).getAbsolutePath();
+        synchronized (this) {
+            ImageData image = images.get(key);
+            if (image != null) {
+                hits++;
+                return image;
+            }
+            misses++;
+        }
+        // decode outside of the lock; two threads may decode the same image once
+        ImageData image = ImageDataFactory.create(path);
+        long size = getSize(image, path);
+        if (size > maxBytes) {
+            return image;
+        }
+        synchronized (this) {
+            ImageData cached = images.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            images.put(key, image);
+            sizes.put(key, size);
+            bytes += size;
+            Iterator<String> eldest = images.keySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                String evicted = eldest.next();
+                eldest.remove();
+                bytes -= sizes.remove(evicted);
+            }
+        }
+        return image;
+    }
+    
+    /**
+     * Estimates the number of bytes held by a decoded image.
+     *
+     * @param image the decoded image
+     * @param path the path to the image
+     * @return the estimated size
+     */
+    protected long getSize(ImageData image, String path) {
+        byte[] data = image.getData();
+        return data != null ? data.length : new File(path).length();
+    }
+    
+    /**
+     * Gets the number of bytes held by the cached images.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%s images, %s bytes, %s hits, %s misses", images.size(), bytes, hits, misses);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Process-wide cache for the resources that every invoice needs:
+ * the bytes of small files such as the color profile, and compiled
+ * XSL stylesheets. The cached objects are immutable or thread-safe,
+ * so they can be shared by all threads.
+ */
+public class ResourceCache {
+    
+    /** The cached file contents, by path. */
+    private static final ConcurrentMap<String, byte[]> BYTES = new ConcurrentHashMap<String, byte[]>();
+    
+    /** The compiled stylesheets, by path. */
+    private static final ConcurrentMap<String, Templates> TEMPLATES = new ConcurrentHashMap<String, Templates>();
+    
+    /**
+     * Gets the contents of a file, reading it the first time only.
+     * The returned array is shared: don't change it.
+     *
+     * @param path the path to the file
+     * @return the contents of the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static byte[] getBytes(String path) throws IOException {
+        byte[] bytes = BYTES.get(path);
+        if (bytes == null) {
+            bytes = Files.readAllBytes(new File(path).toPath());
+            BYTES.putIfAbsent(path, bytes);
+        }
+        return bytes;
+    }
+    
+    /**
+     * Gets a compiled XSL stylesheet, compiling it the first time only.
+     * Create a new {@link javax.xml.transform.Transformer} from the templates
+     * for every transformation: transformers aren't thread-safe, templates are.
+     *
+     * @param path the path to the XSL file
+     * @return the compiled stylesheet
+     * @throws TransformerConfigurationException the transformer configuration exception
+     */
+    public static Templates getTemplates(String path) throws TransformerConfigurationException {
+        Templates templates = TEMPLATES.get(path);
+        if (templates == null) {
+            templates = TransformerFactory.newInstance().newTemplates(new StreamSource(new File(path)));
+            TEMPLATES.putIfAbsent(path, templates);
+        }
+        return templates;
+    }
+}
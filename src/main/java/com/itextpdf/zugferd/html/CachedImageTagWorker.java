@@ -0,0 +1,74 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.html;
+
+import java.net.MalformedURLException;
+
+import com.itextpdf.html2pdf.attach.ITagWorker;
+import com.itextpdf.html2pdf.attach.ProcessorContext;
+import com.itextpdf.html2pdf.exception.Html2PdfException;
+import com.itextpdf.layout.IPropertyContainer;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.styledxmlparser.node.IElementNode;
+import com.itextpdf.zugferd.cache.ImageCache;
+
+/**
+ * Tag worker for an img tag that refers to a local image file.
+ * The decoded image comes from the shared {@link ImageCache}.
+ */
+public class CachedImageTagWorker implements ITagWorker {
+    
+    /** The image. */
+    protected final Image image;
+    
+    /**
+     * Creates the tag worker.
+     *
+     * @param element the img element
+     * @param path the path to the image file
+     */
+    public CachedImageTagWorker(IElementNode element, String path) {
+        try {
+            image = new Image(ImageCache.getInstance().getImage(path));
+        } catch (MalformedURLException e) {
+            throw new Html2PdfException(e.getMessage());
+        }
+        String alt = element.getAttribute("alt");
+        if (alt != null) {
+            image.getAccessibilityProperties().setAlternateDescription(alt);
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.html2pdf.attach.ITagWorker#processEnd(com.itextpdf.styledxmlparser.node.IElementNode, com.itextpdf.html2pdf.attach.ProcessorContext)
+     */
+    @Override
+    public void processEnd(IElementNode element, ProcessorContext context) {
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.html2pdf.attach.ITagWorker#processContent(java.lang.String, com.itextpdf.html2pdf.attach.ProcessorContext)
+     */
+    @Override
+    public boolean processContent(String content, ProcessorContext context) {
+        return false;
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.html2pdf.attach.ITagWorker#processTagChild(com.itextpdf.html2pdf.attach.ITagWorker, com.itextpdf.html2pdf.attach.ProcessorContext)
+     */
+    @Override
+    public boolean processTagChild(ITagWorker childTagWorker, ProcessorContext context) {
+        return false;
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.html2pdf.attach.ITagWorker#getElementResult()
+     */
+    @Override
+    public IPropertyContainer getElementResult() {
+        return image;
+    }
+}
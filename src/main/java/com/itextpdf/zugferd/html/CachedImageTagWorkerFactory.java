@@ -0,0 +1,53 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.html;
+
+import java.io.File;
+
+import com.itextpdf.html2pdf.attach.ITagWorker;
+import com.itextpdf.html2pdf.attach.ProcessorContext;
+import com.itextpdf.html2pdf.attach.impl.DefaultTagWorkerFactory;
+import com.itextpdf.styledxmlparser.node.IElementNode;
+
+/**
+ * Tag worker factory that lets pdfHTML take local images from the
+ * shared {@link com.itextpdf.zugferd.cache.ImageCache} instead of
+ * decoding them again for every conversion. Images that aren't local
+ * files are left to the default img tag worker.
+ */
+public class CachedImageTagWorkerFactory extends DefaultTagWorkerFactory {
+    
+    /** The directory against which relative image paths are resolved. */
+    protected final String baseDir;
+    
+    /**
+     * Creates the tag worker factory.
+     *
+     * @param baseDir the directory against which relative image paths are
+     * resolved; use the base URI of the converter properties
+     */
+    public CachedImageTagWorkerFactory(String baseDir) {
+        this.baseDir = baseDir;
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.html2pdf.attach.impl.DefaultTagWorkerFactory#getCustomTagWorker(com.itextpdf.styledxmlparser.node.IElementNode, com.itextpdf.html2pdf.attach.ProcessorContext)
+     */
+    @Override
+    public ITagWorker getCustomTagWorker(IElementNode tag, ProcessorContext context) {
+        if (!"img".equalsIgnoreCase(tag.name())) {
+            return null;
+        }
+        String src = tag.getAttribute("src");
+        if (src == null || src.contains(":")) {
+            return null;
+        }
+        File file = new File(baseDir, src);
+        if (!file.isFile()) {
+            return null;
+        }
+        return new CachedImageTagWorker(tag, file.getPath());
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.html;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import com.itextpdf.zugferd.profiles.IComfortProfile;
+
+/**
+ * Writes the HTML version of a Comfort invoice directly from an
+ * {@link IComfortProfile}, without creating the ZUGFeRD XML and
+ * transforming it with resources/zugferd/invoice.xsl. The markup is
+ * the markup produced by that stylesheet: the same elements, attributes
+ * and text, including the rounding of the computed amounts; only the
+ * whitespace between the elements may differ.
+ * <p>
+ * A writer is meant to be used for a single document.
+ */
+public class ComfortHtmlWriter {
+    
+    /**
+     * The system property that selects the HTML engine of the Comfort
+     * invoices: "xsl" (the default) or "direct" for this writer.
+     */
+    public static final String ENGINE_PROPERTY = "zugferd.html.engine";
+    
+    /** The value of {@link #ENGINE_PROPERTY} that selects this writer. */
+    public static final String DIRECT = "direct";
+    
+    /** The indentation of one level. */
+    public static final String INDENT = "    ";
+    
+    /** The writer to which the HTML is written. */
+    protected Writer writer;
+    
+    /** The current nesting level. */
+    protected int depth;
+    
+    /**
+     * Creates an HTML writer.
+     *
+     * @param writer the writer to which the HTML will be written
+     */
+    public ComfortHtmlWriter(Writer writer) {
+        this.writer = writer;
+    }
+    
+    /**
+     * Checks if the direct engine was selected with {@link #ENGINE_PROPERTY}.
+     *
+     * @return true if the HTML should be written with this class
+     */
+    public static boolean isSelected() {
+        return DIRECT.equalsIgnoreCase(System.getProperty(ENGINE_PROPERTY));
+    }
+    
+    /**
+     * Writes the HTML of an invoice. The writer is flushed, but not closed.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void write(IComfortProfile comfort) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        start("html");
+        start("head");
+        empty("link", "rel", "stylesheet", "type", "text/css", "href", "invoice.css");
+        end("head");
+        start("body");
+        empty("img", "src", "logo.png", "alt", "Das Company - logo");
+        empty("br");
+        writeHeader(comfort);
+        writeAddresses(comfort);
+        writeLineItems(comfort);
+        writeTotals(comfort);
+        writeWireInfo(comfort);
+        end("body");
+        end("html");
+        writer.write('\n');
+        writer.flush();
+    }
+    
+    /**
+     * Writes the title and the date of the invoice.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeHeader(IComfortProfile comfort) throws IOException {
+        element("h1", comfort.getName() + " " + comfort.getId(), "id", "header");
+        element("h2", formatDate(comfort), "id", "date");
+    }
+    
+    /**
+     * Writes the table with the seller and the buyer.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeAddresses(IComfortProfile comfort) throws IOException {
+        start("table", "width", "100%", "border", "0", "id", "addresses");
+        start("tr");
+        start("td", "valign", "Top", "width", "10%");
+        element("b", "From:");
+        end("td");
+        start("td", "valign", "Top", "width", "40%");
+        writeAddress(comfort.getSellerName(), comfort.getSellerLineOne(), comfort.getSellerLineTwo(),
+            comfort.getSellerCountryID(), comfort.getSellerPostcode(), comfort.getSellerCityName(),
+            comfort.getSellerTaxRegistrationSchemeID(), comfort.getSellerTaxRegistrationID());
+        end("td");
+        start("td", "valign", "Top", "width", "10%");
+        element("b", "To:");
+        end("td");
+        start("td", "valign", "Top", "width", "40%");
+        writeAddress(comfort.getBuyerName(), comfort.getBuyerLineOne(), comfort.getBuyerLineTwo(),
+            comfort.getBuyerCountryID(), comfort.getBuyerPostcode(), comfort.getBuyerCityName(),
+            comfort.getBuyerTaxRegistrationSchemeID(), comfort.getBuyerTaxRegistrationID());
+        end("td");
+        end("tr");
+        end("table");
+    }
+    
+    /**
+     * Writes an address, followed by the tax registrations.
+     *
+     * @param name the name
+     * @param line1 line 1 of the address
+     * @param line2 line 2 of the address
+     * @param countryID the country ID
+     * @param postcode the post code
+     * @param city the city
+     * @param schemeIDs the schemes of the tax registrations
+     * @param taxIDs the ids of the tax registrations
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeAddress(String name, String line1, String line2, String countryID,
+        String postcode, String city, String[] schemeIDs, String[] taxIDs) throws IOException {
+        element("span", name, "class", "name");
+        empty("br");
+        text(line1);
+        empty("br");
+        text(line2);
+        empty("br");
+        text(value(countryID) + "-" + value(postcode) + " " + value(city));
+        empty("br");
+        if (taxIDs != null) {
+            for (int i = 0; i < taxIDs.length; i++) {
+                if (isEmpty(taxIDs[i]))
+                    continue;
+                text(value(schemeIDs, i) + ": " + taxIDs[i]);
+                empty("br");
+            }
+        }
+    }
+    
+    /**
+     * Writes the table with the line items.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeLineItems(IComfortProfile comfort) throws IOException {
+        start("table", "width", "100%", "id", "products");
+        start("thead");
+        start("tr", "class", "headerrow");
+        for (String header : new String[]{"#", "Product", "Unit", "Qty.", "Sub.", "Tax%", "Tax", "Total", "Curr."}) {
+            element("th", header);
+        }
+        end("tr");
+        end("thead");
+        start("tbody");
+        String[] ids = comfort.getLineItemLineID();
+        String[] names = comfort.getLineItemSpecifiedTradeProductName();
+        String[] prices = comfort.getLineItemGrossPriceChargeAmount();
+        String[] quantities = comfort.getLineItemBilledQuantity();
+        String[] totals = comfort.getLineItemLineTotalAmount();
+        String[] currencies = comfort.getLineItemLineTotalAmountCurrencyID();
+        String[][] percents = comfort.getLineItemSettlementTaxApplicablePercent();
+        int n = ids == null ? 0 : ids.length;
+        for (int i = 0; i < n; i++) {
+            String total = value(totals, i);
+            String percent = percents == null || i >= percents.length ? "" : value(percents[i], 0);
+            start("tr");
+            element("td", value(ids, i) + ".", "align", "Right");
+            element("td", value(names, i), "class", "bold");
+            element("td", twoDecimals(number(value(prices, i))), "align", "Right");
+            element("td", twoDecimals(number(value(quantities, i))), "align", "Right");
+            element("td", total, "align", "Right");
+            element("td", percent + "%", "align", "Right");
+            element("td", twoDecimals(tax(total, percent)), "align", "Right");
+            element("td", twoDecimals(withTax(total, percent)), "align", "Right", "class", "bold");
+            element("td", value(currencies, i));
+            end("tr");
+        }
+        end("tbody");
+        end("table");
+    }
+    
+    /**
+     * Writes the table with the totals per tax rate and the grand total.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeTotals(IComfortProfile comfort) throws IOException {
+        start("table", "width", "100%", "id", "totals");
+        start("thead");
+        start("tr", "class", "headerrow");
+        for (String header : new String[]{"Tax", "%", "Base amount:", "Tax amount:", "Total", "Curr."}) {
+            element("th", header);
+        }
+        end("tr");
+        end("thead");
+        start("tbody");
+        String[] types = comfort.getTaxTypeCode();
+        String[] percents = comfort.getTaxApplicablePercent();
+        String[] bases = comfort.getTaxBasisAmount();
+        String[] amounts = comfort.getTaxCalculatedAmount();
+        String[] currencies = comfort.getTaxCalculatedAmountCurrencyID();
+        int n = amounts == null ? 0 : amounts.length;
+        for (int i = 0; i < n; i++) {
+            start("tr");
+            element("td", value(types, i), "align", "Right");
+            element("td", value(percents, i), "align", "Right");
+            element("td", value(bases, i), "align", "Right");
+            element("td", value(amounts, i), "align", "Right");
+            element("td", twoDecimals(withTax(value(bases, i), value(percents, i))), "align", "Right");
+            element("td", value(currencies, i));
+            end("tr");
+        }
+        start("tr");
+        element("td", "Grand total:", "class", "total", "align", "Right", "colspan", "2");
+        element("td", comfort.getTaxBasisTotalAmount(), "class", "total", "align", "Right");
+        element("td", comfort.getTaxTotalAmount(), "class", "total", "align", "Right");
+        element("td", comfort.getGrandTotalAmount(), "class", "total", "align", "Right");
+        element("td", comfort.getGrandTotalAmountCurrencyID(), "class", "total");
+        end("tr");
+        end("tbody");
+        end("table");
+    }
+    
+    /**
+     * Writes the payment reference and the bank accounts.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeWireInfo(IComfortProfile comfort) throws IOException {
+        start("table", "id", "wireinfo");
+        start("tr");
+        element("td", "Please wire the amount due to our bank account using the following reference: "
+            + value(comfort.getPaymentReference()), "colspan", "4");
+        end("tr");
+        start("tr");
+        empty("th");
+        element("th", "Bank", "class", "wireheader");
+        element("th", "BIC ID", "class", "wireheader");
+        element("th", "IBAN Number", "class", "wireheader");
+        end("tr");
+        String[] banks = comfort.getPaymentMeansPayeeFinancialInstitutionName();
+        String[] bics = comfort.getPaymentMeansPayeeFinancialInstitutionBIC();
+        String[] ibans = comfort.getPaymentMeansPayeeAccountIBAN();
+        int n = ibans == null ? 0 : ibans.length;
+        for (int i = 0; i < n; i++) {
+            start("tr");
+            empty("td");
+            element("td", value(banks, i));
+            element("td", value(bics, i));
+            element("td", value(ibans, i));
+            end("tr");
+        }
+        end("table");
+    }
+    
+    /**
+     * Formats the invoice date the way the stylesheet does,
+     * depending on the date format code.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @return the formatted date
+     */
+    protected String formatDate(IComfortProfile comfort) {
+        String pattern;
+        if ("610".equals(comfort.getDateTimeFormat()))
+            pattern = "yyyy-MM";
+        else if ("616".equals(comfort.getDateTimeFormat()))
+            pattern = "yyyy'; week 'ww";
+        else
+            pattern = "yyyy-MM-dd";
+        return new SimpleDateFormat(pattern).format(comfort.getDateTime());
+    }
+    
+    /**
+     * Computes the tax on an amount, like the calcTax template.
+     *
+     * @param basis the amount
+     * @param percent the tax rate
+     * @return the tax
+     */
+    protected static double tax(String basis, String percent) {
+        return number(basis) * number(percent) / 100;
+    }
+    
+    /**
+     * Computes an amount including tax, like the calcWithTax template.
+     *
+     * @param basis the amount
+     * @param percent the tax rate
+     * @return the amount including tax
+     */
+    protected static double withTax(String basis, String percent) {
+        double b = number(basis);
+        return b + b * number(percent) / 100;
+    }
+    
+    /**
+     * Converts a string to a number, like the XPath number() function.
+     *
+     * @param s the string
+     * @return the number, or NaN if the string isn't a number
+     */
+    protected static double number(String s) {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+    
+    /**
+     * Formats a number with two decimals, like the twodecimals template:
+     * the number is rounded half up to two decimals first.
+     *
+     * @param d the number
+     * @return the formatted number
+     */
+    protected static String twoDecimals(double d) {
+        if (Double.isNaN(d))
+            return "NaN";
+        return String.format(Locale.ROOT, "%.2f", Math.floor(d * 100 + 0.5) / 100);
+    }
+    
+    /**
+     * Gets a value, or an empty string for a missing value.
+     *
+     * @param s the value
+     * @return the value, never <code>null</code>
+     */
+    protected static String value(String s) {
+        return s == null ? "" : s;
+    }
+    
+    /**
+     * Gets a value of an array, or an empty string for a missing value.
+     *
+     * @param array the array
+     * @param i the index
+     * @return the value, never <code>null</code>
+     */
+    protected static String value(String[] array, int i) {
+        return array == null || i >= array.length ? "" : value(array[i]);
+    }
+    
+    /**
+     * Checks if a value is missing.
+     *
+     * @param s the value
+     * @return true for <code>null</code> or an empty string
+     */
+    protected static boolean isEmpty(String s) {
+        return s == null || s.length() == 0;
+    }
+    
+    /**
+     * Starts a new line at the current nesting level.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void newLine() throws IOException {
+        writer.write('\n');
+        for (int i = 0; i < depth; i++) {
+            writer.write(INDENT);
+        }
+    }
+    
+    /**
+     * Writes a start tag with its attributes.
+     *
+     * @param name the element name
+     * @param attributes the attribute names and values, alternately
+     * @param close whether the tag is an empty-element tag
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void tag(String name, String[] attributes, boolean close) throws IOException {
+        newLine();
+        writer.write('<');
+        writer.write(name);
+        for (int i = 0; i < attributes.length; i += 2) {
+            writer.write(' ');
+            writer.write(attributes[i]);
+            writer.write("=\"");
+            escape(attributes[i + 1], true);
+            writer.write('"');
+        }
+        writer.write(close ? "/>" : ">");
+    }
+    
+    /**
+     * Writes a start tag and increases the nesting level.
+     *
+     * @param name the element name
+     * @param attributes the attribute names and values, alternately
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void start(String name, String... attributes) throws IOException {
+        tag(name, attributes, false);
+        depth++;
+    }
+    
+    /**
+     * Decreases the nesting level and writes an end tag.
+     *
+     * @param name the element name
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void end(String name) throws IOException {
+        depth--;
+        newLine();
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+    }
+    
+    /**
+     * Writes an empty element.
+     *
+     * @param name the element name
+     * @param attributes the attribute names and values, alternately
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void empty(String name, String... attributes) throws IOException {
+        tag(name, attributes, true);
+    }
+    
+    /**
+     * Writes an element with text content on a single line.
+     * An element without text is written as an empty element.
+     *
+     * @param name the element name
+     * @param text the text
+     * @param attributes the attribute names and values, alternately
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void element(String name, String text, String... attributes) throws IOException {
+        if (isEmpty(text)) {
+            tag(name, attributes, true);
+            return;
+        }
+        tag(name, attributes, false);
+        escape(text, false);
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+    }
+    
+    /**
+     * Writes text on a line of its own. Empty text isn't written.
+     *
+     * @param text the text
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void text(String text) throws IOException {
+        if (isEmpty(text))
+            return;
+        newLine();
+        escape(text, false);
+    }
+    
+    /**
+     * Writes text, escaping the characters that have a special meaning in markup.
+     *
+     * @param text the text
+     * @param attribute whether the text is an attribute value
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void escape(String text, boolean attribute) throws IOException {
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            String replacement;
+            switch (text.charAt(i)) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '"':
+                replacement = attribute ? "&quot;" : null;
+                break;
+            default:
+                replacement = null;
+            }
+            if (replacement != null) {
+                writer.write(text, start, i - start);
+                writer.write(replacement);
+                start = i + 1;
+            }
+        }
+        writer.write(text, start, length - start);
+    }
+}
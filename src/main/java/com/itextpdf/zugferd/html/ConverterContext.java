@@ -0,0 +1,101 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.html;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.itextpdf.html2pdf.ConverterProperties;
+import com.itextpdf.html2pdf.attach.ITagWorkerFactory;
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+
+/**
+ * Everything pdfHTML needs to convert our invoices, prepared once and
+ * shared by all conversions and all threads. The set of fonts is restricted
+ * to the free fonts shipped with pdfHTML, which include the FreeSans font
+ * of invoice.css: the system fonts aren't scanned, and the standard Type 1
+ * fonts, which can't be embedded in PDF/A, aren't registered. Local images
+ * are taken from the {@link com.itextpdf.zugferd.cache.ImageCache}.
+ * <p>
+ * A {@link FontProvider} keeps the fonts it created for one document,
+ * so every conversion gets a provider of its own, backed by the shared
+ * {@link FontSet}. Creating such a provider is cheap: the fonts are only
+ * parsed when the set is built.
+ */
+public class ConverterContext {
+    
+    /** The contexts that were created, per base URI. */
+    protected static final ConcurrentMap<String, ConverterContext> contexts =
+        new ConcurrentHashMap<String, ConverterContext>();
+    
+    /** The base URI against which the CSS and the images are resolved. */
+    protected final String baseUri;
+    
+    /** The fonts that can be used. */
+    protected final FontSet fontSet;
+    
+    /** The tag worker factory that takes images from the cache. */
+    protected final ITagWorkerFactory tagWorkerFactory;
+    
+    /**
+     * Creates a converter context.
+     *
+     * @param baseUri the base URI against which the CSS and the images are resolved
+     */
+    public ConverterContext(String baseUri) {
+        this.baseUri = baseUri;
+        this.fontSet = new DefaultFontProvider(false, true, false).getFontSet();
+        this.tagWorkerFactory = new CachedImageTagWorkerFactory(baseUri);
+    }
+    
+    /**
+     * Gets the shared context for a base URI, creating it the first time.
+     *
+     * @param baseUri the base URI against which the CSS and the images are resolved
+     * @return the context
+     */
+    public static ConverterContext getInstance(String baseUri) {
+        ConverterContext context = contexts.get(baseUri);
+        if (context == null) {
+            ConverterContext created = new ConverterContext(baseUri);
+            context = contexts.putIfAbsent(baseUri, created);
+            if (context == null)
+                context = created;
+        }
+        return context;
+    }
+    
+    /**
+     * Creates a font provider for a single document.
+     *
+     * @return a font provider backed by the shared font set
+     */
+    public FontProvider createFontProvider() {
+        return new FontProvider(fontSet);
+    }
+    
+    /**
+     * Creates the converter properties for a single conversion.
+     *
+     * @return the converter properties
+     */
+    public ConverterProperties getProperties() {
+        return new ConverterProperties()
+            .setBaseUri(baseUri)
+            .setTagWorkerFactory(tagWorkerFactory)
+            .setFontProvider(createFontProvider());
+    }
+    
+    /**
+     * Gets the number of fonts that can be used.
+     *
+     * @return the number of fonts
+     */
+    public int getFontCount() {
+        return fontSet.size();
+    }
+}
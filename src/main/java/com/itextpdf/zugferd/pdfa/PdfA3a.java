@@ -8,7 +8,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
-import com.itextpdf.io.image.ImageDataFactory;
 import com.itextpdf.kernel.font.PdfFont;
 import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.kernel.geom.PageSize;
@@ -16,12 +15,13 @@ import com.itextpdf.kernel.pdf.PdfAConformanceLevel;
 import com.itextpdf.kernel.pdf.PdfOutputIntent;
 import com.itextpdf.kernel.pdf.PdfString;
 import com.itextpdf.kernel.pdf.PdfViewerPreferences;
-import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Image;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Text;
 import com.itextpdf.pdfa.PdfADocument;
+import com.itextpdf.zugferd.OutputProfile;
+import com.itextpdf.zugferd.cache.ImageCache;
 
 /**
  * Creates a PDF/A-3a version of the Quick Brown Fox example.
@@ -59,7 +59,7 @@ public class PdfA3a {
     public void createPdf(String dest) throws IOException {
     	// step 1
     	PdfADocument pdfDocument = new PdfADocument(
-    			new PdfWriter(dest), PdfAConformanceLevel.PDF_A_3A,
+    			OutputProfile.getDefault().createWriter(dest), PdfAConformanceLevel.PDF_A_3A,
     			new PdfOutputIntent("Custom", "", "http://www.color.org",
         	            "sRGB IEC61966-2.1", new FileInputStream(ICC)));
     	pdfDocument.setDefaultPageSize(PageSize.A4.rotate());
@@ -72,9 +72,9 @@ public class PdfA3a {
     	Document document = new Document(pdfDocument);
     	// step 3
     	PdfFont font = PdfFontFactory.createFont(FONT, true);
-		Image fox = new Image(ImageDataFactory.create(FOX));
+		Image fox = new Image(ImageCache.getInstance().getImage(FOX));
 		fox.getAccessibilityProperties().setAlternateDescription("fox");
-		Image dog = new Image(ImageDataFactory.create(DOG));
+		Image dog = new Image(ImageCache.getInstance().getImage(DOG));
 		dog.getAccessibilityProperties().setAlternateDescription("dog");
     	document.add(
     		new Paragraph()
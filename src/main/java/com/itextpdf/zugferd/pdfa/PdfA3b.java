@@ -8,18 +8,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
-import com.itextpdf.io.image.ImageDataFactory;
 import com.itextpdf.kernel.font.PdfFont;
 import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.kernel.geom.PageSize;
 import com.itextpdf.kernel.pdf.PdfAConformanceLevel;
 import com.itextpdf.kernel.pdf.PdfOutputIntent;
-import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Image;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Text;
 import com.itextpdf.pdfa.PdfADocument;
+import com.itextpdf.zugferd.OutputProfile;
+import com.itextpdf.zugferd.cache.ImageCache;
 
 /**
  * Creates a PDF/A-3b version of the Quick Brown Fox example.
@@ -58,7 +58,7 @@ public class PdfA3b {
     public void createPdf(String dest) throws IOException {
     	// step 1
     	PdfADocument pdfDocument = new PdfADocument(
-    			new PdfWriter(dest), PdfAConformanceLevel.PDF_A_3B,
+    			OutputProfile.getDefault().createWriter(dest), PdfAConformanceLevel.PDF_A_3B,
     			new PdfOutputIntent("Custom", "", "http://www.color.org",
         	            "sRGB IEC61966-2.1", new FileInputStream(ICC)));
     	pdfDocument.setDefaultPageSize(PageSize.A4.rotate());
@@ -68,9 +68,9 @@ public class PdfA3b {
     	PdfFont font = PdfFontFactory.createFont(FONT, true);
         document.add(new Paragraph().setFont(font).setFontSize(20)
         		.add(new Text("The quick brown "))
-        		.add(new Image(ImageDataFactory.create(FOX)))
+        		.add(new Image(ImageCache.getInstance().getImage(FOX)))
         		.add(new Text(" jumps over the lazy "))
-				.add(new Image(ImageDataFactory.create(DOG))));
+				.add(new Image(ImageCache.getInstance().getImage(DOG))));
         // step 4
         document.close();
     }
@@ -7,7 +7,6 @@ package com.itextpdf.zugferd.pdfa;
 import java.io.File;
 import java.io.IOException;
 
-import com.itextpdf.io.image.ImageDataFactory;
 import com.itextpdf.kernel.geom.PageSize;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
@@ -15,6 +14,7 @@ import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Image;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Text;
+import com.itextpdf.zugferd.cache.ImageCache;
 
 /**
  * Creates a tagged version of the Quick Brown Fox example.
@@ -58,9 +58,9 @@ public class TaggedPdf {
             	new Paragraph()
             		.setFontSize(20)
             		.add(new Text("The quick brown "))
-            		.add(new Image(ImageDataFactory.create(FOX)))
+            		.add(new Image(ImageCache.getInstance().getImage(FOX)))
             		.add(new Text(" jumps over the lazy "))
-    				.add(new Image(ImageDataFactory.create(DOG))));
+    				.add(new Image(ImageCache.getInstance().getImage(DOG))));
         // step 4
         document.close();
     }
@@ -0,0 +1,492 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.pojo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link InvoiceSource} that streams invoices from a UTF-8 CSV export.
+ * Every line describes one item, with all the data of its invoice, customer
+ * and product, in this order:
+ * <pre>
+ * invoiceid,invoicedate,customerid,firstname,lastname,street,postalcode,city,countryid,item,productid,productname,price,vat,quantity
+ * </pre>
+ * The lines of an invoice must be consecutive, the date is written as
+ * yyyy-MM-dd, and a field that contains a comma, a double quote or a line
+ * break is put between double quotes, with the double quotes inside doubled.
+ * A quoted field can span several lines; every line break inside it is read
+ * as a line feed, as an XML parser would. An optional header line is skipped. Only the lines of the current invoice are kept
+ * in memory. Customers and products are shared between invoices through
+ * two small caches of the most recently used objects, so that the memory
+ * needed doesn't grow with the size of the export.
+ */
+public class CsvInvoiceSource implements InvoiceSource {
+    
+    /** The header line. */
+    public static final String HEADER =
+        "invoiceid,invoicedate,customerid,firstname,lastname,street,postalcode,city,countryid,"
+        + "item,productid,productname,price,vat,quantity";
+    
+    /** The column with the invoice id. */
+    public static final int INVOICE_ID = 0;
+    /** The column with the invoice date. */
+    public static final int INVOICE_DATE = 1;
+    /** The column with the customer id. */
+    public static final int CUSTOMER_ID = 2;
+    /** The column with the first name of the customer. */
+    public static final int FIRST_NAME = 3;
+    /** The column with the last name of the customer. */
+    public static final int LAST_NAME = 4;
+    /** The column with the street of the customer. */
+    public static final int STREET = 5;
+    /** The column with the postal code of the customer. */
+    public static final int POSTAL_CODE = 6;
+    /** The column with the city of the customer. */
+    public static final int CITY = 7;
+    /** The column with the country id of the customer. */
+    public static final int COUNTRY_ID = 8;
+    /** The column with the item number. */
+    public static final int ITEM = 9;
+    /** The column with the product id. */
+    public static final int PRODUCT_ID = 10;
+    /** The column with the product name. */
+    public static final int PRODUCT_NAME = 11;
+    /** The column with the product price. */
+    public static final int PRICE = 12;
+    /** The column with the VAT percentage of the product. */
+    public static final int VAT = 13;
+    /** The column with the quantity. */
+    public static final int QUANTITY = 14;
+    /** The number of columns. */
+    public static final int COLUMNS = 15;
+    
+    /** The maximum number of customers and of products that are cached. */
+    public static final int CACHE_SIZE = 1024;
+    
+    /** The reader of the export file. */
+    protected BufferedReader reader;
+    
+    /** The current line, i.e. the first line of the invoice that will be returned next. */
+    protected String line;
+    
+    /** The number of the current line. */
+    protected int lineNumber;
+    
+    /** The start offsets of the fields of the current line. */
+    protected int[] starts = new int[COLUMNS];
+    
+    /** The end offsets of the fields of the current line. */
+    protected int[] ends = new int[COLUMNS];
+    
+    /** Whether a field of the current line contains doubled double quotes. */
+    protected boolean[] escaped = new boolean[COLUMNS];
+    
+    /** The most recently used customers, by id. */
+    protected Map<Integer, Customer> customers = createCache();
+    
+    /** The most recently used products, by id. */
+    protected Map<Integer, Product> products = createCache();
+    
+    /** Calendar used to create the invoice dates. */
+    protected Calendar calendar = Calendar.getInstance();
+    
+    /**
+     * Creates a source for a CSV file.
+     *
+     * @param file the CSV file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public CsvInvoiceSource(File file) throws IOException {
+        reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+        line = readLine();
+        if (line != null && line.startsWith("invoiceid,"))
+            line = readLine();
+    }
+    
+    /**
+     * Creates a map that keeps the {@link #CACHE_SIZE} most recently used entries.
+     *
+     * @param <T> the type of the values
+     * @return the map
+     */
+    protected static <T> Map<Integer, T> createCache() {
+        return new LinkedHashMap<Integer, T>(CACHE_SIZE * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+    
+    /**
+     * Exports the invoices of the database to a CSV file that can be read by this class.
+     *
+     * @param args the path of the CSV file, and optionally the maximum number of invoices
+     * @throws SQLException the SQL exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void main(String[] args) throws SQLException, IOException {
+        int max = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+        PojoFactory factory = PojoFactory.getInstance();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(args[0]), StandardCharsets.UTF_8));
+        int count = write(new JdbcInvoiceSource(factory), writer, max);
+        writer.close();
+        factory.close();
+        System.out.println(String.format("%d invoices exported to %s", count, args[0]));
+    }
+    
+    /**
+     * Writes the invoices of a source as CSV.
+     *
+     * @param source the invoice source
+     * @param writer the writer
+     * @return the number of invoices
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static int write(InvoiceSource source, Writer writer) throws IOException {
+        return write(source, writer, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Writes the first invoices of a source as CSV.
+     *
+     * @param source the invoice source
+     * @param writer the writer
+     * @param max the maximum number of invoices
+     * @return the number of invoices
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static int write(InvoiceSource source, Writer writer, int max) throws IOException {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        writer.write(HEADER);
+        writer.write('\n');
+        int count = 0;
+        Invoice invoice;
+        while (count < max && (invoice = source.next()) != null) {
+            Customer customer = invoice.getCustomer();
+            String prefix = String.format("%s,%s,%s,%s,%s,%s,%s,%s,%s,",
+                invoice.getId(), sdf.format(invoice.getInvoiceDate()), customer.getId(),
+                quote(customer.getFirstName()), quote(customer.getLastName()), quote(customer.getStreet()),
+                quote(customer.getPostalcode()), quote(customer.getCity()), quote(customer.getCountryId()));
+            for (Item item : invoice.getItems()) {
+                Product product = item.getProduct();
+                writer.write(prefix);
+                writer.write(String.format("%s,%s,%s,%s,%s,%s\n",
+                    item.getItem(), product.getId(), quote(product.getName()),
+                    product.getPrice(), product.getVat(), item.getQuantity()));
+            }
+            count++;
+        }
+        source.close();
+        return count;
+    }
+    
+    /**
+     * Puts a value between double quotes if necessary.
+     *
+     * @param value the value
+     * @return the value as a CSV field
+     */
+    protected static String quote(String value) {
+        if (value == null)
+            return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+            && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+            return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.pojo.InvoiceSource#next()
+     */
+    public Invoice next() throws IOException {
+        if (line == null)
+            return null;
+        split();
+        int id = getInt(INVOICE_ID);
+        Invoice invoice = new Invoice();
+        invoice.setId(id);
+        invoice.setInvoiceDate(getDate(INVOICE_DATE));
+        invoice.setCustomer(getCustomer());
+        List<Item> items = new ArrayList<Item>();
+        double total = 0;
+        while (true) {
+            Item item = new Item();
+            item.setItem(getInt(ITEM));
+            item.setProduct(getProduct());
+            item.setQuantity(getInt(QUANTITY));
+            item.setCost(item.getQuantity() * item.getProduct().getPrice());
+            total += item.getCost();
+            items.add(item);
+            line = readLine();
+            if (line == null)
+                break;
+            split();
+            if (getInt(INVOICE_ID) != id)
+                break;
+        }
+        invoice.setItems(items);
+        invoice.setTotal(total);
+        return invoice;
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.pojo.InvoiceSource#close()
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    /**
+     * Reads the next line that isn't empty. If the line ends inside a quoted
+     * field, the next lines are appended, separated by line feeds, until the
+     * quoted field is closed.
+     *
+     * @return the line, or <code>null</code> at the end of the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected String readLine() throws IOException {
+        String s;
+        do {
+            s = reader.readLine();
+            lineNumber++;
+        } while (s != null && s.length() == 0);
+        if (s == null || countQuotes(s) % 2 == 0)
+            return s;
+        StringBuilder record = new StringBuilder(s);
+        int quotes = countQuotes(s);
+        while (quotes % 2 != 0) {
+            s = reader.readLine();
+            if (s == null)
+                throw error("unterminated quoted field");
+            lineNumber++;
+            record.append('\n').append(s);
+            quotes += countQuotes(s);
+        }
+        return record.toString();
+    }
+    
+    /**
+     * Counts the double quotes of a line. An odd number means that
+     * the line ends inside a quoted field.
+     *
+     * @param s the line
+     * @return the number of double quotes
+     */
+    protected static int countQuotes(String s) {
+        int count = 0;
+        for (int pos = s.indexOf('"'); pos >= 0; pos = s.indexOf('"', pos + 1)) {
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Finds the fields of the current line, without copying them.
+     *
+     * @throws IOException if the line doesn't have the expected number of fields
+     */
+    protected void split() throws IOException {
+        int length = line.length();
+        int pos = 0;
+        int field = 0;
+        while (true) {
+            if (field == COLUMNS)
+                throw error("too many fields");
+            escaped[field] = false;
+            if (pos < length && line.charAt(pos) == '"') {
+                int start = ++pos;
+                while (true) {
+                    pos = line.indexOf('"', pos);
+                    if (pos < 0)
+                        throw error("unterminated quoted field");
+                    if (pos + 1 < length && line.charAt(pos + 1) == '"') {
+                        escaped[field] = true;
+                        pos += 2;
+                    }
+                    else {
+                        break;
+                    }
+                }
+                starts[field] = start;
+                ends[field] = pos++;
+            }
+            else {
+                int end = line.indexOf(',', pos);
+                starts[field] = pos;
+                ends[field] = pos = end < 0 ? length : end;
+            }
+            field++;
+            if (pos >= length)
+                break;
+            if (line.charAt(pos) != ',')
+                throw error("unexpected character after quoted field");
+            pos++;
+        }
+        if (field != COLUMNS)
+            throw error("too few fields");
+    }
+    
+    /**
+     * Creates an exception that refers to the current line.
+     *
+     * @param message the problem
+     * @return the exception
+     */
+    protected IOException error(String message) {
+        return new IOException(String.format("Line %d: %s", lineNumber, message));
+    }
+    
+    /**
+     * Gets a field as text.
+     *
+     * @param field the column
+     * @return the text
+     */
+    protected String getString(int field) {
+        String s = line.substring(starts[field], ends[field]);
+        return escaped[field] ? s.replace("\"\"", "\"") : s;
+    }
+    
+    /**
+     * Parses a field as an integer, without creating a string.
+     *
+     * @param field the column
+     * @return the value
+     * @throws IOException if the field isn't an integer
+     */
+    protected int getInt(int field) throws IOException {
+        int pos = starts[field];
+        int end = ends[field];
+        boolean negative = pos < end && line.charAt(pos) == '-';
+        if (negative)
+            pos++;
+        if (pos == end)
+            throw error(String.format("field %d is not a number", field + 1));
+        int value = 0;
+        for (; pos < end; pos++) {
+            int digit = line.charAt(pos) - '0';
+            if (digit < 0 || digit > 9)
+                throw error(String.format("field %d is not a number", field + 1));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+    
+    /**
+     * Parses a field as a decimal number.
+     *
+     * @param field the column
+     * @return the value
+     * @throws IOException if the field isn't a number
+     */
+    protected double getDouble(int field) throws IOException {
+        try {
+            return Double.parseDouble(getString(field));
+        } catch (NumberFormatException e) {
+            throw error(String.format("field %d is not a number", field + 1));
+        }
+    }
+    
+    /**
+     * Parses a field with a date in the form yyyy-MM-dd.
+     *
+     * @param field the column
+     * @return the date
+     * @throws IOException if the field isn't a date
+     */
+    protected Date getDate(int field) throws IOException {
+        int start = starts[field];
+        if (ends[field] - start != 10 || line.charAt(start + 4) != '-' || line.charAt(start + 7) != '-')
+            throw error(String.format("field %d is not a date", field + 1));
+        calendar.clear();
+        calendar.set(parse(start, start + 4), parse(start + 5, start + 7) - 1, parse(start + 8, start + 10));
+        return new java.sql.Date(calendar.getTimeInMillis());
+    }
+    
+    /**
+     * Parses digits of the current line.
+     *
+     * @param start the start offset
+     * @param end the end offset
+     * @return the value
+     * @throws IOException if a character isn't a digit
+     */
+    protected int parse(int start, int end) throws IOException {
+        int value = 0;
+        for (int pos = start; pos < end; pos++) {
+            int digit = line.charAt(pos) - '0';
+            if (digit < 0 || digit > 9)
+                throw error("invalid date");
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    
+    /**
+     * Gets the customer of the current line. The fields of a customer
+     * are only copied the first time the customer is encountered.
+     *
+     * @return the customer
+     * @throws IOException if the customer id isn't a number
+     */
+    protected Customer getCustomer() throws IOException {
+        int id = getInt(CUSTOMER_ID);
+        Customer customer = customers.get(id);
+        if (customer == null) {
+            customer = new Customer();
+            customer.setId(id);
+            customer.setFirstName(getString(FIRST_NAME));
+            customer.setLastName(getString(LAST_NAME));
+            customer.setStreet(getString(STREET));
+            customer.setPostalcode(getString(POSTAL_CODE));
+            customer.setCity(getString(CITY));
+            customer.setCountryId(getString(COUNTRY_ID));
+            customers.put(id, customer);
+        }
+        return customer;
+    }
+    
+    /**
+     * Gets the product of the current line. The fields of a product
+     * are only copied the first time the product is encountered.
+     *
+     * @return the product
+     * @throws IOException if a numeric field isn't a number
+     */
+    protected Product getProduct() throws IOException {
+        int id = getInt(PRODUCT_ID);
+        Product product = products.get(id);
+        if (product == null) {
+            product = new Product();
+            product.setId(id);
+            product.setName(getString(PRODUCT_NAME));
+            product.setPrice(getDouble(PRICE));
+            product.setVat(getDouble(VAT));
+            products.put(id, product);
+        }
+        return product;
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.pojo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact binary copy of the invoice database. The snapshot contains the
+ * definition of every table, with its primary key, followed by its rows in
+ * binary form. Loading it into an in-memory database is much faster than
+ * replaying the SQL script of the file database, and it doesn't create
+ * lock files, so several processes can share the same snapshot.
+ */
+public class DatabaseSnapshot {
+    
+    /** The default path of the snapshot. */
+    public static final String SNAPSHOT = "resources/db/invoices.snapshot";
+    
+    /** The URL of the in-memory database in which a snapshot is loaded. */
+    public static final String MEMORY_URL = "jdbc:hsqldb:mem:invoices";
+    
+    /**
+     * Marks the start of a snapshot file. The last byte is the version of the
+     * format; version 2 writes dates as ISO strings instead of milliseconds,
+     * so that they don't depend on the time zone of the JVM.
+     */
+    public static final int MAGIC = 0x5A554702;
+    
+    /** The number of rows that are inserted with one batch. */
+    public static final int BATCH = 1000;
+    
+    /** The snapshot that was loaded into the in-memory database, or <code>null</code>. */
+    protected static File loaded;
+    
+    /**
+     * Writes a snapshot of the file database.
+     *
+     * @param args optionally the path of the snapshot
+     * @throws SQLException the SQL exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws ClassNotFoundException if the HSQLDB driver isn't available
+     */
+    public static void main(String[] args) throws SQLException, IOException, ClassNotFoundException {
+        File file = new File(args.length > 0 ? args[0] : SNAPSHOT);
+        Class.forName("org.hsqldb.jdbcDriver");
+        Connection connection = DriverManager.getConnection(
+            System.getProperty(PojoFactory.URL_PROPERTY, PojoFactory.URL) + PojoFactory.READONLY, "SA", "");
+        long start = System.currentTimeMillis();
+        int rows = write(connection, file);
+        connection.close();
+        System.out.println(String.format("%d rows written to %s (%d bytes) in %d ms",
+            rows, file, file.length(), System.currentTimeMillis() - start));
+    }
+    
+    /**
+     * Writes a snapshot of all the tables of the PUBLIC schema.
+     *
+     * @param connection the connection to the database
+     * @param file the snapshot file
+     * @return the number of rows written
+     * @throws SQLException the SQL exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static int write(Connection connection, File file) throws SQLException, IOException {
+        DatabaseMetaData meta = connection.getMetaData();
+        List<String> tables = new ArrayList<String>();
+        ResultSet rs = meta.getTables(null, "PUBLIC", "%", new String[]{"TABLE"});
+        while (rs.next()) {
+            tables.add(rs.getString("TABLE_NAME"));
+        }
+        rs.close();
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        GZIPOutputStream gzip = new GZIPOutputStream(fos, 65536);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+        int total = 0;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(tables.size());
+            for (String table : tables) {
+                total += writeTable(connection, table, out);
+            }
+            out.flush();
+            gzip.finish();
+            fos.getFD().sync();
+        }
+        finally {
+            out.close();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return total;
+    }
+    
+    /**
+     * Writes the definition and the rows of a table.
+     *
+     * @param connection the connection to the database
+     * @param table the table name
+     * @param out the snapshot stream
+     * @return the number of rows written
+     * @throws SQLException the SQL exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected static int writeTable(Connection connection, String table, DataOutputStream out)
+        throws SQLException, IOException {
+        StringBuilder keys = new StringBuilder();
+        ResultSet rs = connection.getMetaData().getPrimaryKeys(null, "PUBLIC", table);
+        while (rs.next()) {
+            if (keys.length() > 0)
+                keys.append(',');
+            keys.append(rs.getString("COLUMN_NAME"));
+        }
+        rs.close();
+        Statement stm = connection.createStatement();
+        int count = 0;
+        try {
+            rs = stm.executeQuery("SELECT * FROM " + table);
+            ResultSetMetaData columns = rs.getMetaData();
+            int n = columns.getColumnCount();
+            int[] types = new int[n];
+            out.writeUTF(table);
+            out.writeUTF(keys.toString());
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                types[i] = columns.getColumnType(i + 1);
+                out.writeUTF(columns.getColumnName(i + 1));
+                out.writeUTF(getDefinition(columns, i + 1));
+                out.writeInt(types[i]);
+            }
+            while (rs.next()) {
+                out.writeBoolean(true);
+                for (int i = 0; i < n; i++) {
+                    writeValue(rs, i + 1, types[i], out);
+                }
+                count++;
+            }
+            out.writeBoolean(false);
+        }
+        finally {
+            stm.close();
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the SQL type of a column, including its length or precision.
+     *
+     * @param columns the metadata of the columns
+     * @param column the column number
+     * @return the SQL type
+     * @throws SQLException the SQL exception
+     */
+    protected static String getDefinition(ResultSetMetaData columns, int column) throws SQLException {
+        switch (columns.getColumnType(column)) {
+        case Types.VARCHAR:
+        case Types.CHAR:
+            return String.format("%s(%d)", columns.getColumnTypeName(column), columns.getPrecision(column));
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return String.format("%s(%d,%d)", columns.getColumnTypeName(column),
+                columns.getPrecision(column), columns.getScale(column));
+        default:
+            return columns.getColumnTypeName(column);
+        }
+    }
+    
+    /**
+     * Writes a single value. Every value is preceded by a flag that tells if it is null.
+     *
+     * @param rs the result set
+     * @param column the column number
+     * @param type the SQL type of the column
+     * @param out the snapshot stream
+     * @throws SQLException the SQL exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected static void writeValue(ResultSet rs, int column, int type, DataOutputStream out)
+        throws SQLException, IOException {
+        if (rs.getObject(column) == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        switch (type) {
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+            out.writeInt(rs.getInt(column));
+            break;
+        case Types.BIGINT:
+            out.writeLong(rs.getLong(column));
+            break;
+        case Types.DOUBLE:
+        case Types.FLOAT:
+        case Types.REAL:
+            out.writeDouble(rs.getDouble(column));
+            break;
+        case Types.DATE:
+            out.writeUTF(rs.getDate(column).toString());
+            break;
+        case Types.TIMESTAMP:
+            out.writeLong(rs.getTimestamp(column).getTime());
+            break;
+        case Types.BOOLEAN:
+            out.writeBoolean(rs.getBoolean(column));
+            break;
+        default:
+            out.writeUTF(rs.getString(column));
+        }
+    }
+    
+    /**
+     * Loads a snapshot into the in-memory database and returns a connection to it.
+     * The in-memory database is shared by the whole process: the snapshot is
+     * only loaded by the first call, later calls get a new connection to the
+     * database that is already loaded, so that connections that are still open
+     * keep their tables.
+     *
+     * @param file the snapshot file
+     * @return a read-only connection to the in-memory database
+     * @throws SQLException the SQL exception
+     * @throws IOException if the snapshot can't be read, or if another snapshot was loaded already
+     */
+    public static synchronized Connection load(File file) throws SQLException, IOException {
+        if (loaded != null) {
+            if (!loaded.getCanonicalFile().equals(file.getCanonicalFile()))
+                throw new IOException(String.format("Can't load %s, %s is loaded already", file, loaded));
+            Connection connection = DriverManager.getConnection(MEMORY_URL, "SA", "");
+            connection.setReadOnly(true);
+            return connection;
+        }
+        Connection connection = DriverManager.getConnection(MEMORY_URL, "SA", "");
+        // remove what a failed earlier attempt may have left behind
+        Statement stm = connection.createStatement();
+        stm.execute("DROP SCHEMA PUBLIC CASCADE");
+        stm.close();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(new FileInputStream(file), 65536)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(String.format("%s isn't a database snapshot", file));
+            }
+            int tables = in.readInt();
+            for (int t = 0; t < tables; t++) {
+                loadTable(connection, in);
+            }
+        }
+        finally {
+            in.close();
+        }
+        loaded = file;
+        connection.setReadOnly(true);
+        return connection;
+    }
+    
+    /**
+     * Creates a table and inserts its rows.
+     *
+     * @param connection the connection to the in-memory database
+     * @param in the snapshot stream
+     * @throws SQLException the SQL exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected static void loadTable(Connection connection, DataInputStream in)
+        throws SQLException, IOException {
+        String table = in.readUTF();
+        String keys = in.readUTF();
+        int n = in.readInt();
+        int[] types = new int[n];
+        StringBuilder create = new StringBuilder("CREATE MEMORY TABLE ").append(table).append('(');
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" VALUES (");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                create.append(',');
+                insert.append(',');
+            }
+            create.append(in.readUTF()).append(' ').append(in.readUTF());
+            types[i] = in.readInt();
+            insert.append('?');
+        }
+        if (keys.length() > 0)
+            create.append(",PRIMARY KEY(").append(keys).append(')');
+        create.append(')');
+        insert.append(')');
+        Statement stm = connection.createStatement();
+        stm.execute(create.toString());
+        stm.close();
+        PreparedStatement ps = connection.prepareStatement(insert.toString());
+        try {
+            int count = 0;
+            while (in.readBoolean()) {
+                for (int i = 0; i < n; i++) {
+                    readValue(ps, i + 1, types[i], in);
+                }
+                ps.addBatch();
+                if (++count % BATCH == 0)
+                    ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        finally {
+            ps.close();
+        }
+    }
+    
+    /**
+     * Reads a single value and sets it as a parameter.
+     *
+     * @param ps the insert statement
+     * @param column the column number
+     * @param type the SQL type of the column
+     * @param in the snapshot stream
+     * @throws SQLException the SQL exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected static void readValue(PreparedStatement ps, int column, int type, DataInputStream in)
+        throws SQLException, IOException {
+        if (!in.readBoolean()) {
+            ps.setNull(column, type);
+            return;
+        }
+        switch (type) {
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+            ps.setInt(column, in.readInt());
+            break;
+        case Types.BIGINT:
+            ps.setLong(column, in.readLong());
+            break;
+        case Types.DOUBLE:
+        case Types.FLOAT:
+        case Types.REAL:
+            ps.setDouble(column, in.readDouble());
+            break;
+        case Types.DATE:
+            ps.setDate(column, java.sql.Date.valueOf(in.readUTF()));
+            break;
+        case Types.TIMESTAMP:
+            ps.setTimestamp(column, new java.sql.Timestamp(in.readLong()));
+            break;
+        case Types.BOOLEAN:
+            ps.setBoolean(column, in.readBoolean());
+            break;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            ps.setBigDecimal(column, new BigDecimal(in.readUTF()));
+            break;
+        default:
+            ps.setString(column, in.readUTF());
+        }
+    }
+}
@@ -5,6 +5,7 @@
  */
 package com.itextpdf.zugferd.pojo;
 
+import java.sql.SQLException;
 import java.util.Date;
 import java.util.List;
 
@@ -20,14 +21,17 @@ public class Invoice {
     /** The customer. */
     protected Customer customer;
     
-    /** The total. */
-    protected double total;
+    /** The total, or <code>null</code> if it wasn't set or computed yet; volatile, because it can be computed by another thread. */
+    protected volatile Double total;
     
-    /** The items. */
-    protected List<Item> items;
+    /** The items; volatile, because they can be loaded by another thread. */
+    protected volatile List<Item> items;
     
     /** The invoice date. */
     protected Date invoiceDate;
+    
+    /** Loads the items when they are needed for the first time. */
+    protected ItemLoader itemLoader;
 
     /**
      * Gets the id.
@@ -66,14 +70,48 @@ public class Invoice {
     }
 
     /**
-     * Gets the total.
+     * Gets the total. If the total wasn't set, it is computed as the sum
+     * of the costs of the items if they are available, or else by the item
+     * loader, which computes it in the database without loading the items.
      *
      * @return the total
+     * @throws IllegalStateException if the total can't be computed
      */
     public double getTotal() {
+        Double total = this.total;
+        if (total == null) {
+            List<Item> items = this.items;
+            if (items == null && itemLoader != null) {
+                try {
+                    total = itemLoader.loadTotal(this);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(
+                        String.format("Can't compute the total of invoice %s", id), e);
+                }
+            }
+            else {
+                double sum = 0;
+                if (items != null) {
+                    for (Item item : items) {
+                        sum += item.getCost();
+                    }
+                }
+                total = sum;
+            }
+            this.total = total;
+        }
         return total;
     }
 
+    /**
+     * Checks if the total is available without computing it.
+     *
+     * @return true if the total was set or computed
+     */
+    public boolean hasTotal() {
+        return total != null;
+    }
+
     /**
      * Sets the total.
      *
@@ -84,13 +122,32 @@ public class Invoice {
     }
 
     /**
-     * Gets the items.
+     * Gets the items. If the items weren't set yet, they are loaded
+     * with the item loader.
      *
      * @return the items
+     * @throws IllegalStateException if the items can't be loaded
      */
     public List<Item> getItems() {
+        if (items == null && itemLoader != null) {
+            try {
+                items = itemLoader.loadItems(this);
+            } catch (SQLException e) {
+                throw new IllegalStateException(
+                    String.format("Can't load the items of invoice %s", id), e);
+            }
+        }
         return items;
     }
+    
+    /**
+     * Checks if the items are available without loading them.
+     *
+     * @return true if the items were set or loaded
+     */
+    public boolean hasItems() {
+        return items != null;
+    }
 
     /**
      * Sets the items.
@@ -101,6 +158,15 @@ public class Invoice {
         this.items = items;
     }
 
+    /**
+     * Sets the loader that is used when the items are needed but weren't set.
+     *
+     * @param itemLoader the item loader
+     */
+    public void setItemLoader(ItemLoader itemLoader) {
+        this.itemLoader = itemLoader;
+    }
+
     /**
      * Gets the invoice date.
      *
@@ -125,9 +191,9 @@ public class Invoice {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Invoice id: ").append(id).append(" Date: ").append(invoiceDate).append(" Total cost: ").append(total).append("\u20ac\n");
+        sb.append("Invoice id: ").append(id).append(" Date: ").append(invoiceDate).append(" Total cost: ").append(getTotal()).append("\u20ac\n");
         sb.append("Customer: ").append(customer.toString()).append("\n");
-        for (Item item : items) {
+        for (Item item : getItems()) {
             sb.append(item.toString()).append("\n");
         }
         return sb.toString();
@@ -0,0 +1,29 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.pojo;
+
+import java.io.IOException;
+
+/**
+ * A source that delivers {@link Invoice} objects one by one, in the order
+ * of their ids, e.g. from the database or from an export file.
+ */
+public interface InvoiceSource {
+    
+    /**
+     * Gets the next invoice.
+     *
+     * @return the next invoice, or <code>null</code> if there are no more invoices
+     * @throws IOException if the invoice can't be read
+     */
+    Invoice next() throws IOException;
+    
+    /**
+     * Releases the resources of this source.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void close() throws IOException;
+}
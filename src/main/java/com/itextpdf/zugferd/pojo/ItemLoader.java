@@ -0,0 +1,36 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.pojo;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Loads the line items of an {@link Invoice} the first time they are needed,
+ * or only the total of the invoice if the items aren't needed.
+ */
+public interface ItemLoader {
+    
+    /**
+     * Loads the items of an invoice. An implementation may load the items
+     * of other invoices at the same time, and set them on those invoices.
+     *
+     * @param invoice the invoice
+     * @return the items of the invoice
+     * @throws SQLException the SQL exception
+     */
+    List<Item> loadItems(Invoice invoice) throws SQLException;
+    
+    /**
+     * Computes the total of an invoice without loading its items.
+     * An implementation may compute the totals of other invoices
+     * at the same time, and set them on those invoices.
+     *
+     * @param invoice the invoice
+     * @return the total of the invoice
+     * @throws SQLException the SQL exception
+     */
+    double loadTotal(Invoice invoice) throws SQLException;
+}
@@ -0,0 +1,86 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.pojo;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An {@link InvoiceSource} that reads the invoices from the database,
+ * one page at a time, so that only a page of invoices is kept in memory.
+ */
+public class JdbcInvoiceSource implements InvoiceSource {
+    
+    /** The default number of invoices that are read with one query. */
+    public static final int PAGE = 100;
+    
+    /** The factory that reads the invoices. */
+    protected PojoFactory factory;
+    
+    /** The number of invoices that are read with one query. */
+    protected int page;
+    
+    /** The id of the last invoice that was read. */
+    protected int lastId;
+    
+    /** The invoices of the current page that weren't delivered yet. */
+    protected Iterator<Invoice> current;
+    
+    /** Whether the last page was read. */
+    protected boolean done;
+    
+    /**
+     * Creates a source for all invoices.
+     *
+     * @param factory the factory that reads the invoices
+     */
+    public JdbcInvoiceSource(PojoFactory factory) {
+        this(factory, Integer.MIN_VALUE, PAGE);
+    }
+    
+    /**
+     * Creates a source for the invoices following a specific invoice.
+     *
+     * @param factory the factory that reads the invoices
+     * @param after the invoice id after which to start
+     * @param page the number of invoices that are read with one query
+     */
+    public JdbcInvoiceSource(PojoFactory factory, int after, int page) {
+        this.factory = factory;
+        this.lastId = after;
+        this.page = page;
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.pojo.InvoiceSource#next()
+     */
+    public Invoice next() throws IOException {
+        if (current == null || !current.hasNext()) {
+            if (done)
+                return null;
+            List<Invoice> invoices;
+            try {
+                invoices = factory.getInvoicesAfter(lastId, page);
+            } catch (SQLException e) {
+                throw new IOException(String.format("Can't read the invoices after %s", lastId), e);
+            }
+            done = invoices.size() < page;
+            if (invoices.isEmpty())
+                return null;
+            current = invoices.iterator();
+        }
+        Invoice invoice = current.next();
+        lastId = invoice.getId();
+        return invoice;
+    }
+    
+    /**
+     * Does nothing: the factory is shared, and is closed by its owner.
+     */
+    public void close() {
+    }
+}
@@ -5,21 +5,87 @@
  */
 package com.itextpdf.zugferd.pojo;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Factory that creates Invoice, Customer, Product, and Item classes.
+ * The items of an invoice are only loaded when they are needed; at that
+ * moment, the items of the next invoices of the same query are loaded too.
  * @author Bruno Lowagie (iText Software)
  */
-public class PojoFactory {
+public class PojoFactory implements ItemLoader {
+    
+    /** The default URL of the HSQLDB database. */
+    public static final String URL = "jdbc:hsqldb:resources/db/invoices";
+    
+    /**
+     * The system property that overrides the database URL, e.g. to connect
+     * several processes to an HSQLDB server instead of to the database file.
+     */
+    public static final String URL_PROPERTY = "zugferd.db.url";
+    
+    /**
+     * The system property that selects how the database is opened:
+     * "file" (the default), "readonly" or "snapshot".
+     */
+    public static final String MODE_PROPERTY = "zugferd.db.mode";
+    
+    /** Opens the database files for reading and writing, with a lock file. */
+    public static final String MODE_FILE = "file";
+    
+    /** Opens the database files read-only, without a lock file, so that several processes can share them. */
+    public static final String MODE_READONLY = "readonly";
+    
+    /** Loads a {@link DatabaseSnapshot} into an in-memory database. */
+    public static final String MODE_SNAPSHOT = "snapshot";
+    
+    /** The system property that overrides the path of the snapshot. */
+    public static final String SNAPSHOT_PROPERTY = "zugferd.db.snapshot";
+    
+    /** The connection properties that open a file database read-only, without a lock file. */
+    public static final String READONLY = ";readonly=true;hsqldb.lock_file=false";
+    
+    /** The system property that overrides the number of invoices of which the items are loaded at once. */
+    public static final String PREFETCH_PROPERTY = "zugferd.prefetch";
+    
+    /** The default number of invoices of which the items are loaded at once. */
+    public static final int PREFETCH = 50;
+    
+    /**
+     * The system property that enables preloading: "products" preloads the
+     * product table, "all" also preloads the customers of the invoices
+     * that are about to be rendered.
+     */
+    public static final String PRELOAD_PROPERTY = "zugferd.preload";
+    
+    /** The value of {@link #PRELOAD_PROPERTY} that only preloads products. */
+    public static final String PRELOAD_PRODUCTS = "products";
+    
+    /** The value of {@link #PRELOAD_PROPERTY} that preloads products and customers. */
+    public static final String PRELOAD_ALL = "all";
+    
+    /**
+     * The invoice columns; the total is computed when it is needed, with an
+     * aggregate query per group of invoices (see {@link #loadTotals(List)}).
+     */
+    public static final String INVOICE_SELECT =
+        "SELECT i.id, i.customerid, i.invoicedate FROM Invoice i";
+    
+    /** The name of the index on the invoice dates. */
+    public static final String DATE_INDEX = "INVOICE_DATE_IDX";
     
     /** Instance of this PojoFactory that will be reused. */
     protected static PojoFactory factory = null;
@@ -33,15 +99,39 @@ public class PojoFactory {
     /** The product cache. */
     protected HashMap<Integer, Product> productCache = new HashMap<Integer, Product>();
     
+    /** The preloaded products, indexed by their id minus {@link #productOffset}. */
+    protected Product[] productIndex;
+    
+    /** The id of the first product in the product index. */
+    protected int productOffset;
+    
     /** Prepared statement to get customer data. */
     protected PreparedStatement getCustomer;
-
+    
     /** Prepared statement to get product data. */
     protected PreparedStatement getProduct;
-
+    
     /** Prepared statement to get items. */
     protected PreparedStatement getItems;
     
+    /** Prepared statement to get a single invoice. */
+    protected PreparedStatement getInvoice;
+    
+    /** Prepared statement to get a range of invoices. */
+    protected PreparedStatement getInvoiceRange;
+    
+    /** Prepared statement to get the invoices following a specific invoice. */
+    protected PreparedStatement getInvoicesAfter;
+    
+    /** Prepared statement to get a limited number of invoices following a specific invoice. */
+    protected PreparedStatement getInvoicePage;
+    
+    /** Prepared statement to get the invoices of a date range, optionally within an id range. */
+    protected PreparedStatement getInvoiceDateRange;
+    
+    /** The number of invoices of which the items are loaded at once. */
+    protected int prefetch = Integer.getInteger(PREFETCH_PROPERTY, PREFETCH);
+    
     /**
      * Instantiates a new POJO factory.
      *
@@ -50,11 +140,57 @@ public class PojoFactory {
      */
     private PojoFactory() throws ClassNotFoundException, SQLException {
         Class.forName("org.hsqldb.jdbcDriver");
-        connection = DriverManager.getConnection(
-            "jdbc:hsqldb:resources/db/invoices", "SA", "");
+        connection = openConnection();
         getCustomer = connection.prepareStatement("SELECT * FROM Customer WHERE id = ?");
         getProduct = connection.prepareStatement("SELECT * FROM Product WHERE id = ?");
         getItems = connection.prepareStatement("SELECT * FROM Item WHERE invoiceid = ?");
+        getInvoice = connection.prepareStatement(INVOICE_SELECT + " WHERE i.id = ?");
+        getInvoiceRange = connection.prepareStatement(
+            INVOICE_SELECT + " WHERE i.id >= ? AND i.id < ? ORDER BY i.id");
+        getInvoicesAfter = connection.prepareStatement(
+            INVOICE_SELECT + " WHERE i.id > ? ORDER BY i.id");
+        getInvoicePage = connection.prepareStatement(
+            INVOICE_SELECT + " WHERE i.id > ? ORDER BY i.id LIMIT ?");
+        getInvoiceDateRange = connection.prepareStatement(INVOICE_SELECT
+            + " WHERE i.invoicedate >= ? AND i.invoicedate < ? AND i.id >= ? AND i.id < ? ORDER BY i.id");
+    }
+    
+    /**
+     * Opens the connection in the mode selected with {@link #MODE_PROPERTY}.
+     * Unless the default file mode is used, the startup time and the
+     * approximate memory footprint are reported.
+     *
+     * @return the connection
+     * @throws SQLException the SQL exception
+     */
+    protected static Connection openConnection() throws SQLException {
+        String mode = System.getProperty(MODE_PROPERTY, MODE_FILE);
+        String url = System.getProperty(URL_PROPERTY, URL);
+        if (MODE_FILE.equals(mode))
+            return DriverManager.getConnection(url, "SA", "");
+        Runtime runtime = Runtime.getRuntime();
+        long memory = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        Connection connection;
+        if (MODE_READONLY.equals(mode)) {
+            connection = DriverManager.getConnection(url + READONLY, "SA", "");
+        }
+        else if (MODE_SNAPSHOT.equals(mode)) {
+            File snapshot = new File(System.getProperty(SNAPSHOT_PROPERTY, DatabaseSnapshot.SNAPSHOT));
+            try {
+                connection = DatabaseSnapshot.load(snapshot);
+            } catch (IOException ioe) {
+                throw new SQLException(String.format("Can't load snapshot %s", snapshot), ioe);
+            }
+        }
+        else {
+            throw new SQLException(String.format("Unknown database mode %s", mode));
+        }
+        System.out.println(String.format(
+            "Database opened in %s mode in %d ms, about %d KB",
+            mode, (System.nanoTime() - start) / 1000000,
+            Math.max(0, runtime.totalMemory() - runtime.freeMemory() - memory) / 1024));
+        return connection;
     }
     
     /**
@@ -74,6 +210,26 @@ public class PojoFactory {
         return factory;
     }
     
+    /**
+     * Creates a PojoFactory with a connection of its own, which isn't shared
+     * with the single instance. Use it to read the database from several
+     * threads in parallel, and close it when done. In the snapshot mode, the
+     * snapshot isn't loaded again: the connection is a new read-only
+     * connection to the in-memory database that the first factory of the
+     * process loaded (see {@link DatabaseSnapshot#load(File)}), so closing
+     * one factory doesn't affect the others.
+     *
+     * @return a new PojoFactory
+     * @throws SQLException the SQL exception
+     */
+    public static PojoFactory newInstance() throws SQLException {
+        try {
+            return new PojoFactory();
+        } catch (ClassNotFoundException cnfe) {
+            throw new SQLException(cnfe.getMessage());
+        }
+    }
+    
     /**
      * Close the database connection.
      *
@@ -89,19 +245,337 @@ public class PojoFactory {
      * @return the invoices
      * @throws SQLException the SQL exception
      */
-    public List<Invoice> getInvoices() throws SQLException {
-        List<Invoice> invoices = new ArrayList<Invoice>();
+    public synchronized List<Invoice> getInvoices() throws SQLException {
         Statement stm = connection.createStatement();
-        ResultSet rs = stm.executeQuery("SELECT * FROM Invoice");
+        List<Invoice> invoices = getInvoices(stm.executeQuery(INVOICE_SELECT));
+        stm.close();
+        return invoices;
+    }
+    
+    /**
+     * Gets a single {@link Invoice} object, given an invoice id.
+     * This method is synchronized so that it can be used
+     * by several threads sharing this factory.
+     *
+     * @param id the invoice id
+     * @return the invoice object, or <code>null</code> if there is no such invoice
+     * @throws SQLException the SQL exception
+     */
+    public synchronized Invoice getInvoice(int id) throws SQLException {
+        getInvoice.setInt(1, id);
+        ResultSet rs = getInvoice.executeQuery();
+        Invoice invoice = null;
+        if (rs.next()) {
+            invoice = getInvoice(rs);
+        }
+        rs.close();
+        return invoice;
+    }
+    
+    /**
+     * Gets the {@link Invoice} objects with an id in a specific range.
+     *
+     * @param from the lowest invoice id (inclusive)
+     * @param to the highest invoice id (exclusive)
+     * @return the invoices, ordered by id
+     * @throws SQLException the SQL exception
+     */
+    public synchronized List<Invoice> getInvoices(int from, int to) throws SQLException {
+        getInvoiceRange.setInt(1, from);
+        getInvoiceRange.setInt(2, to);
+        ResultSet rs = getInvoiceRange.executeQuery();
+        List<Invoice> invoices = getInvoices(rs);
+        rs.close();
+        return invoices;
+    }
+    
+    /**
+     * Gets the {@link Invoice} objects with an id higher than a specific id.
+     *
+     * @param id the invoice id after which to start
+     * @return the invoices, ordered by id
+     * @throws SQLException the SQL exception
+     */
+    public synchronized List<Invoice> getInvoicesAfter(int id) throws SQLException {
+        getInvoicesAfter.setInt(1, id);
+        ResultSet rs = getInvoicesAfter.executeQuery();
+        List<Invoice> invoices = getInvoices(rs);
+        rs.close();
+        return invoices;
+    }
+    
+    /**
+     * Gets at most a specific number of {@link Invoice} objects
+     * with an id higher than a specific id.
+     *
+     * @param id the invoice id after which to start
+     * @param limit the maximum number of invoices
+     * @return the invoices, ordered by id
+     * @throws SQLException the SQL exception
+     */
+    public synchronized List<Invoice> getInvoicesAfter(int id, int limit) throws SQLException {
+        getInvoicePage.setInt(1, id);
+        getInvoicePage.setInt(2, limit);
+        ResultSet rs = getInvoicePage.executeQuery();
+        List<Invoice> invoices = getInvoices(rs);
+        rs.close();
+        return invoices;
+    }
+    
+    /**
+     * Creates {@link Invoice} objects for all the rows of a result set.
+     * The invoices are grouped per {@link #prefetch} invoices: when the items
+     * of an invoice are needed, the items of its whole group are loaded.
+     *
+     * @param rs the result set
+     * @return the invoices
+     * @throws SQLException the SQL exception
+     */
+    protected List<Invoice> getInvoices(ResultSet rs) throws SQLException {
+        List<Invoice> invoices = new ArrayList<Invoice>();
+        Prefetch group = null;
         while (rs.next()) {
-            invoices.add(getInvoice(rs));
+            if (group == null || group.invoices.size() == prefetch)
+                group = new Prefetch();
+            Invoice invoice = getInvoice(rs);
+            invoice.setItemLoader(group);
+            group.invoices.add(invoice);
+            invoices.add(invoice);
         }
-        stm.close();
         return invoices;
     }
     
     /**
-     * Creates an {@link Invoice} object from a database result set.
+     * Gets the {@link Invoice} objects with an invoice date in a specific range.
+     *
+     * @param from the first invoice date (inclusive)
+     * @param to the last invoice date (exclusive)
+     * @return the invoices, ordered by id
+     * @throws SQLException the SQL exception
+     */
+    public List<Invoice> getInvoices(Date from, Date to) throws SQLException {
+        return getInvoices(from, to, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Gets the {@link Invoice} objects with an invoice date in a specific range
+     * and an id in a specific range.
+     *
+     * @param from the first invoice date (inclusive)
+     * @param to the last invoice date (exclusive)
+     * @param fromId the lowest invoice id (inclusive)
+     * @param toId the highest invoice id (exclusive)
+     * @return the invoices, ordered by id
+     * @throws SQLException the SQL exception
+     */
+    public synchronized List<Invoice> getInvoices(Date from, Date to, int fromId, int toId) throws SQLException {
+        getInvoiceDateRange.setDate(1, new java.sql.Date(from.getTime()));
+        getInvoiceDateRange.setDate(2, new java.sql.Date(to.getTime()));
+        getInvoiceDateRange.setInt(3, fromId);
+        getInvoiceDateRange.setInt(4, toId);
+        ResultSet rs = getInvoiceDateRange.executeQuery();
+        List<Invoice> invoices = getInvoices(rs);
+        rs.close();
+        return invoices;
+    }
+    
+    /**
+     * Gets the days of a date range on which there are invoices.
+     *
+     * @param from the first invoice date (inclusive)
+     * @param to the last invoice date (exclusive)
+     * @return the days, in chronological order
+     * @throws SQLException the SQL exception
+     */
+    public synchronized List<Date> getInvoiceDays(Date from, Date to) throws SQLException {
+        PreparedStatement stm = connection.prepareStatement(
+            "SELECT DISTINCT invoicedate FROM Invoice WHERE invoicedate >= ? AND invoicedate < ? ORDER BY invoicedate");
+        List<Date> days = new ArrayList<Date>();
+        try {
+            stm.setDate(1, new java.sql.Date(from.getTime()));
+            stm.setDate(2, new java.sql.Date(to.getTime()));
+            ResultSet rs = stm.executeQuery();
+            while (rs.next()) {
+                days.add(rs.getDate(1));
+            }
+            rs.close();
+        }
+        finally {
+            stm.close();
+        }
+        return days;
+    }
+    
+    /**
+     * Gets the lowest and the highest id of the invoices in a date range.
+     *
+     * @param from the first invoice date (inclusive)
+     * @param to the last invoice date (exclusive)
+     * @return an array with the lowest and the highest id,
+     * or <code>null</code> if there are no invoices in the range
+     * @throws SQLException the SQL exception
+     */
+    public synchronized int[] getInvoiceIdRange(Date from, Date to) throws SQLException {
+        PreparedStatement stm = connection.prepareStatement(
+            "SELECT MIN(id), MAX(id) FROM Invoice WHERE invoicedate >= ? AND invoicedate < ?");
+        int[] range = null;
+        try {
+            stm.setDate(1, new java.sql.Date(from.getTime()));
+            stm.setDate(2, new java.sql.Date(to.getTime()));
+            ResultSet rs = stm.executeQuery();
+            if (rs.next() && rs.getObject(1) != null) {
+                range = new int[]{rs.getInt(1), rs.getInt(2)};
+            }
+            rs.close();
+        }
+        finally {
+            stm.close();
+        }
+        return range;
+    }
+    
+    /**
+     * Creates the index on the invoice dates, unless the INVOICE table
+     * already has an index that starts with the INVOICEDATE column.
+     * Without it, every query on a date range scans the whole table.
+     *
+     * @return true if the index was created
+     * @throws SQLException the SQL exception, e.g. if the database is read-only
+     */
+    public synchronized boolean createDateIndex() throws SQLException {
+        DatabaseMetaData metadata = connection.getMetaData();
+        ResultSet rs = metadata.getIndexInfo(null, "PUBLIC", "INVOICE", false, true);
+        try {
+            while (rs.next()) {
+                if (rs.getShort("ORDINAL_POSITION") == 1 && "INVOICEDATE".equalsIgnoreCase(rs.getString("COLUMN_NAME")))
+                    return false;
+            }
+        }
+        finally {
+            rs.close();
+        }
+        Statement stm = connection.createStatement();
+        try {
+            stm.execute("CREATE INDEX " + DATE_INDEX + " ON Invoice(invoicedate)");
+        }
+        finally {
+            stm.close();
+        }
+        return true;
+    }
+    
+    /**
+     * Gets the lowest and the highest invoice id stored in the database.
+     *
+     * @return an array with the lowest and the highest id,
+     * or <code>null</code> if there are no invoices
+     * @throws SQLException the SQL exception
+     */
+    public synchronized int[] getInvoiceIdRange() throws SQLException {
+        Statement stm = connection.createStatement();
+        ResultSet rs = stm.executeQuery("SELECT MIN(id), MAX(id) FROM Invoice");
+        int[] range = null;
+        if (rs.next() && rs.getObject(1) != null) {
+            range = new int[]{rs.getInt(1), rs.getInt(2)};
+        }
+        stm.close();
+        return range;
+    }
+    
+    /**
+     * Preloads the data selected with {@link #PRELOAD_PROPERTY} before
+     * the invoices in a range are read, and reports the time and memory it took.
+     * Does nothing if the system property isn't set.
+     *
+     * @param from the lowest invoice id (inclusive)
+     * @param to the highest invoice id (exclusive)
+     * @throws SQLException the SQL exception
+     */
+    public synchronized void preload(int from, int to) throws SQLException {
+        String mode = System.getProperty(PRELOAD_PROPERTY);
+        if (mode == null)
+            return;
+        Runtime runtime = Runtime.getRuntime();
+        long memory = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        int products = productIndex == null ? preloadProducts() : 0;
+        int customers = PRELOAD_ALL.equals(mode) ? preloadCustomers(from, to) : 0;
+        System.out.println(String.format(
+            "Preloaded %d products and %d customers in %d ms, about %d KB",
+            products, customers, (System.nanoTime() - start) / 1000000,
+            Math.max(0, runtime.totalMemory() - runtime.freeMemory() - memory) / 1024));
+    }
+    
+    /**
+     * Reads the complete product table with a single query. If the product ids
+     * are dense, the products are stored in an array indexed by id.
+     *
+     * @return the number of products
+     * @throws SQLException the SQL exception
+     */
+    public synchronized int preloadProducts() throws SQLException {
+        Statement stm = connection.createStatement();
+        try {
+            ResultSet rs = stm.executeQuery("SELECT MIN(id), MAX(id), COUNT(*) FROM Product");
+            rs.next();
+            int min = rs.getInt(1);
+            int max = rs.getInt(2);
+            int count = rs.getInt(3);
+            rs.close();
+            Product[] index = null;
+            if (count > 0 && (long)max - min < 4L * count) {
+                index = new Product[max - min + 1];
+            }
+            rs = stm.executeQuery("SELECT * FROM Product");
+            while (rs.next()) {
+                Product product = getProduct(rs);
+                if (index == null)
+                    productCache.put(product.getId(), product);
+                else
+                    index[product.getId() - min] = product;
+            }
+            productOffset = min;
+            productIndex = index;
+            return count;
+        }
+        finally {
+            stm.close();
+        }
+    }
+    
+    /**
+     * Reads the customers of the invoices in a range with a single query.
+     *
+     * @param from the lowest invoice id (inclusive)
+     * @param to the highest invoice id (exclusive)
+     * @return the number of customers that were read
+     * @throws SQLException the SQL exception
+     */
+    public synchronized int preloadCustomers(int from, int to) throws SQLException {
+        PreparedStatement stm = connection.prepareStatement(
+            "SELECT * FROM Customer WHERE id IN"
+            + " (SELECT DISTINCT customerid FROM Invoice WHERE id >= ? AND id < ?)");
+        int count = 0;
+        try {
+            stm.setInt(1, from);
+            stm.setInt(2, to);
+            ResultSet rs = stm.executeQuery();
+            while (rs.next()) {
+                Customer customer = getCustomer(rs);
+                customerCache.put(customer.getId(), customer);
+                count++;
+            }
+        }
+        finally {
+            stm.close();
+        }
+        return count;
+    }
+    
+    /**
+     * Creates an {@link Invoice} object from a database result set
+     * obtained with {@link #INVOICE_SELECT}. The items aren't loaded
+     * until {@link Invoice#getItems()} is called.
      *
      * @param rs the result set
      * @return the invoice object
@@ -111,16 +585,104 @@ public class PojoFactory {
         Invoice invoice = new Invoice();
         invoice.setId(rs.getInt("id"));
         invoice.setCustomer(getCustomer(rs.getInt("customerid")));
-        List<Item> items = getItems(rs.getInt("id"));
-        invoice.setItems(items);
-        double total = 0;
-        for (Item item : items)
-            total += item.getCost();
-        invoice.setTotal(total);
         invoice.setInvoiceDate(rs.getDate("invoicedate"));
+        invoice.setItemLoader(this);
         return invoice;
     }
     
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.pojo.ItemLoader#loadItems(com.itextpdf.zugferd.pojo.Invoice)
+     */
+    public synchronized List<Item> loadItems(Invoice invoice) throws SQLException {
+        if (invoice.hasItems())
+            return invoice.getItems();
+        List<Invoice> invoices = new ArrayList<Invoice>();
+        invoices.add(invoice);
+        loadItems(invoices);
+        return invoice.getItems();
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.pojo.ItemLoader#loadTotal(com.itextpdf.zugferd.pojo.Invoice)
+     */
+    public synchronized double loadTotal(Invoice invoice) throws SQLException {
+        if (!invoice.hasTotal()) {
+            List<Invoice> invoices = new ArrayList<Invoice>();
+            invoices.add(invoice);
+            loadTotals(invoices);
+        }
+        return invoice.getTotal();
+    }
+    
+    /**
+     * Computes the totals of several invoices with a single aggregate query,
+     * and sets them on the invoices. The items aren't loaded.
+     *
+     * @param invoices the invoices
+     * @throws SQLException the SQL exception
+     */
+    public synchronized void loadTotals(List<Invoice> invoices) throws SQLException {
+        if (invoices.isEmpty())
+            return;
+        Map<Integer, Double> totals = new HashMap<Integer, Double>();
+        StringBuilder sql = new StringBuilder("SELECT it.invoiceid, SUM(it.quantity * p.price) FROM Item it"
+            + " JOIN Product p ON it.productid = p.id WHERE it.invoiceid IN (");
+        for (int i = 0; i < invoices.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") GROUP BY it.invoiceid");
+        PreparedStatement stm = connection.prepareStatement(sql.toString());
+        try {
+            for (int i = 0; i < invoices.size(); i++) {
+                stm.setInt(i + 1, invoices.get(i).getId());
+            }
+            ResultSet rs = stm.executeQuery();
+            while (rs.next()) {
+                totals.put(rs.getInt(1), rs.getDouble(2));
+            }
+        }
+        finally {
+            stm.close();
+        }
+        for (Invoice invoice : invoices) {
+            Double total = totals.get(invoice.getId());
+            invoice.setTotal(total == null ? 0 : total);
+        }
+    }
+    
+    /**
+     * Loads the items of several invoices with a single query,
+     * and sets them on the invoices.
+     *
+     * @param invoices the invoices
+     * @throws SQLException the SQL exception
+     */
+    public synchronized void loadItems(List<Invoice> invoices) throws SQLException {
+        Map<Integer, List<Item>> map = new HashMap<Integer, List<Item>>();
+        StringBuilder sql = new StringBuilder("SELECT * FROM Item WHERE invoiceid IN (");
+        for (int i = 0; i < invoices.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            map.put(invoices.get(i).getId(), new ArrayList<Item>());
+        }
+        sql.append(") ORDER BY invoiceid, item");
+        PreparedStatement stm = connection.prepareStatement(sql.toString());
+        try {
+            for (int i = 0; i < invoices.size(); i++) {
+                stm.setInt(i + 1, invoices.get(i).getId());
+            }
+            ResultSet rs = stm.executeQuery();
+            while (rs.next()) {
+                map.get(rs.getInt("InvoiceId")).add(getItem(rs));
+            }
+        }
+        finally {
+            stm.close();
+        }
+        for (Invoice invoice : invoices) {
+            invoice.setItems(map.get(invoice.getId()));
+        }
+    }
+    
     /**
      * Creates an {@link Item} object from a database result set.
      *
@@ -151,20 +713,32 @@ public class PojoFactory {
         getCustomer.setInt(1, id);
         ResultSet rs = getCustomer.executeQuery();
         if (rs.next()) {
-            Customer customer = new Customer();
-            customer.setId(id);
-            customer.setFirstName(rs.getString("FirstName"));
-            customer.setLastName(rs.getString("LastName"));
-            customer.setStreet(rs.getString("Street"));
-            customer.setPostalcode(rs.getString("Postalcode"));
-            customer.setCity(rs.getString("City"));
-            customer.setCountryId(rs.getString("CountryID"));
+            Customer customer = getCustomer(rs);
             customerCache.put(id, customer);
             return customer;
         }
         return null;
     }
     
+    /**
+     * Creates a {@link Customer} object from a database result set.
+     *
+     * @param rs the result set
+     * @return the customer object
+     * @throws SQLException the SQL exception
+     */
+    public Customer getCustomer(ResultSet rs) throws SQLException {
+        Customer customer = new Customer();
+        customer.setId(rs.getInt("Id"));
+        customer.setFirstName(rs.getString("FirstName"));
+        customer.setLastName(rs.getString("LastName"));
+        customer.setStreet(rs.getString("Street"));
+        customer.setPostalcode(rs.getString("Postalcode"));
+        customer.setCity(rs.getString("City"));
+        customer.setCountryId(rs.getString("CountryID"));
+        return customer;
+    }
+    
     /**
      * Gets a {@link Product} object, given a product id.
      *
@@ -173,22 +747,39 @@ public class PojoFactory {
      * @throws SQLException the SQL exception
      */
     public Product getProduct(int id) throws SQLException {
+        if (productIndex != null) {
+            int i = id - productOffset;
+            if (i >= 0 && i < productIndex.length && productIndex[i] != null)
+                return productIndex[i];
+        }
         if (productCache.containsKey(id))
             return productCache.get(id);
         getProduct.setInt(1, id);
         ResultSet rs = getProduct.executeQuery();
         if (rs.next()) {
-            Product product = new Product();
-            product.setId(id);
-            product.setName(rs.getString("Name"));
-            product.setPrice(rs.getDouble("Price"));
-            product.setVat(rs.getDouble("Vat"));
+            Product product = getProduct(rs);
             productCache.put(id, product);
             return product;
         }
         return null;
     }
     
+    /**
+     * Creates a {@link Product} object from a database result set.
+     *
+     * @param rs the result set
+     * @return the product object
+     * @throws SQLException the SQL exception
+     */
+    public Product getProduct(ResultSet rs) throws SQLException {
+        Product product = new Product();
+        product.setId(rs.getInt("Id"));
+        product.setName(rs.getString("Name"));
+        product.setPrice(rs.getDouble("Price"));
+        product.setVat(rs.getDouble("Vat"));
+        return product;
+    }
+    
     /**
      * Gets a list of {@link Item} objects for a specific invoice.
      *
@@ -196,7 +787,7 @@ public class PojoFactory {
      * @return the items
      * @throws SQLException the SQL exception
      */
-    public List<Item> getItems(int invoiceid) throws SQLException {
+    public synchronized List<Item> getItems(int invoiceid) throws SQLException {
         List<Item> items = new ArrayList<Item>();
         getItems.setInt(1, invoiceid);
         ResultSet rs = getItems.executeQuery();
@@ -205,4 +796,54 @@ public class PojoFactory {
         }
         return items;
     }
+    
+    /**
+     * A group of invoices read by the same query, of which the items
+     * are loaded together as soon as the items of one of them are needed.
+     */
+    protected class Prefetch implements ItemLoader {
+        
+        /** The invoices of the group. */
+        protected List<Invoice> invoices = new ArrayList<Invoice>();
+        
+        /* (non-Javadoc)
+         * @see com.itextpdf.zugferd.pojo.ItemLoader#loadItems(com.itextpdf.zugferd.pojo.Invoice)
+         */
+        public List<Item> loadItems(Invoice invoice) throws SQLException {
+            // the invoices of a group can be rendered by different threads:
+            // the check and the query are done under the lock of the factory
+            synchronized (PojoFactory.this) {
+                if (invoice.hasItems())
+                    return invoice.getItems();
+                List<Invoice> pending = new ArrayList<Invoice>();
+                for (Invoice i : invoices) {
+                    if (!i.hasItems())
+                        pending.add(i);
+                }
+                if (!pending.contains(invoice))
+                    pending.add(invoice);
+                PojoFactory.this.loadItems(pending);
+                return invoice.getItems();
+            }
+        }
+        
+        /* (non-Javadoc)
+         * @see com.itextpdf.zugferd.pojo.ItemLoader#loadTotal(com.itextpdf.zugferd.pojo.Invoice)
+         */
+        public double loadTotal(Invoice invoice) throws SQLException {
+            synchronized (PojoFactory.this) {
+                if (invoice.hasTotal())
+                    return invoice.getTotal();
+                List<Invoice> pending = new ArrayList<Invoice>();
+                for (Invoice i : invoices) {
+                    if (!i.hasTotal())
+                        pending.add(i);
+                }
+                if (!pending.contains(invoice))
+                    pending.add(invoice);
+                PojoFactory.this.loadTotals(pending);
+                return invoice.getTotal();
+            }
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.pojo;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An {@link InvoiceSource} that makes up invoices with a chosen number of
+ * lines, so that the generators can be measured without a database and
+ * with invoices that are much longer than the ones in the sample data.
+ * The invoices are reproducible: the same seed gives the same invoices.
+ */
+public class SyntheticInvoices implements InvoiceSource {
+    
+    /** The default seed. */
+    public static final long SEED = 42;
+    
+    /** The number of different products. */
+    public static final int PRODUCTS = 50;
+    
+    /** The number of different customers. */
+    public static final int CUSTOMERS = 20;
+    
+    /** The number of invoices to deliver. */
+    protected int count;
+    
+    /** The number of lines per invoice. */
+    protected int lines;
+    
+    /** The id of the next invoice. */
+    protected int id;
+    
+    /** The products that are used on the lines. */
+    protected Product[] products = new Product[PRODUCTS];
+    
+    /** The customers to which the invoices are addressed. */
+    protected Customer[] customers = new Customer[CUSTOMERS];
+    
+    /** Chooses the products, quantities and customers. */
+    protected Random random;
+    
+    /**
+     * Creates a source of synthetic invoices.
+     *
+     * @param count the number of invoices
+     * @param lines the number of lines per invoice
+     */
+    public SyntheticInvoices(int count, int lines) {
+        this(count, lines, SEED);
+    }
+    
+    /**
+     * Creates a source of synthetic invoices.
+     *
+     * @param count the number of invoices
+     * @param lines the number of lines per invoice
+     * @param seed the seed of the random generator
+     */
+    public SyntheticInvoices(int count, int lines, long seed) {
+        this.count = count;
+        this.lines = lines;
+        random = new Random(seed);
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.setId(i);
+            product.setName(String.format("Product %d (%s)", i, i % 10 == 0 ? "reduced rate" : "standard rate"));
+            product.setPrice(1 + random.nextInt(100));
+            product.setVat(i % 10 == 0 ? 6 : 21);
+            products[i] = product;
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = new Customer();
+            customer.setId(i);
+            customer.setFirstName("First" + i);
+            customer.setLastName("Last" + i);
+            customer.setStreet(String.format("%d Main Street", i + 1));
+            customer.setPostalcode("9000");
+            customer.setCity("Ghent");
+            customer.setCountryId("BE");
+            customers[i] = customer;
+        }
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.pojo.InvoiceSource#next()
+     */
+    public Invoice next() {
+        if (id >= count)
+            return null;
+        return create(id++, lines);
+    }
+    
+    /**
+     * Creates a synthetic invoice.
+     *
+     * @param id the id of the invoice
+     * @param lines the number of lines
+     * @return the invoice
+     */
+    public Invoice create(int id, int lines) {
+        Invoice invoice = new Invoice();
+        invoice.setId(id);
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2015, Calendar.APRIL, 1 + id % 30);
+        invoice.setInvoiceDate(calendar.getTime());
+        invoice.setCustomer(customers[id % CUSTOMERS]);
+        List<Item> items = new ArrayList<Item>(lines);
+        double total = 0;
+        for (int i = 0; i < lines; i++) {
+            Item item = new Item();
+            item.setItem(i + 1);
+            item.setProduct(products[random.nextInt(PRODUCTS)]);
+            item.setQuantity(1 + random.nextInt(10));
+            item.setCost(item.getQuantity() * item.getProduct().getPrice());
+            total += item.getCost();
+            items.add(item);
+        }
+        invoice.setItems(items);
+        invoice.setTotal(total);
+        return invoice;
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.pojo.InvoiceSource#close()
+     */
+    public void close() {
+    }
+}
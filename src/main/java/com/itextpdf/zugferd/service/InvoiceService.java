@@ -0,0 +1,289 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.batch.InvoiceFormat;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running local HTTP service that renders invoices on demand:
+ * <pre>
+ * GET /invoice/{id}/xml
+ * GET /invoice/{id}/html
+ * GET /invoice/{id}/basic
+ * GET /invoice/{id}/comfort
+ * </pre>
+ * The license, the fonts, the color profile and the compiled XSL are
+ * loaded once and stay warm for all requests. At most a fixed number of
+ * invoices is rendered at the same time; a limited number of requests
+ * can wait for a free renderer, all other requests get a 503 response.
+ */
+public class InvoiceService implements HttpHandler {
+    
+    /** The default port. */
+    public static final int PORT = 8080;
+    
+    /** The context path of the invoices. */
+    public static final String CONTEXT = "/invoice/";
+    
+    /** The factory that reads the invoices. */
+    protected PojoFactory factory;
+    
+    /** The threads that render the invoices. */
+    protected ExecutorService renderers;
+    
+    /** Admits as many requests as there are renderers and queue slots. */
+    protected Semaphore admission;
+    
+    /** The number of requests that were served. */
+    protected AtomicLong served = new AtomicLong();
+    
+    /** The number of requests that were rejected with a 503 response. */
+    protected AtomicLong rejected = new AtomicLong();
+    
+    /**
+     * The main method.
+     *
+     * @param args the port, the number of renderers, and the queue size
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws SQLException the SQL exception
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queue = args.length > 2 ? Integer.parseInt(args[2]) : 4 * threads;
+        final PojoFactory factory = PojoFactory.getInstance();
+        final InvoiceService service = new InvoiceService(factory, threads, queue);
+        long start = System.currentTimeMillis();
+        service.warmUp();
+        System.out.println(String.format("Warmed up in %s ms", System.currentTimeMillis() - start));
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext(CONTEXT, service);
+        final ExecutorService handlers = createHttpExecutor(threads, queue);
+        server.setExecutor(handlers);
+        server.start();
+        System.out.println(String.format(
+            "Serving invoices on http://localhost:%s%s{id}/{xml|html|basic|comfort} with %s renderers",
+            port, CONTEXT, threads));
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                server.stop(1);
+                handlers.shutdown();
+                service.shutdown();
+                try {
+                    factory.close();
+                } catch (SQLException e) {
+                    System.err.println(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Creates the service.
+     *
+     * @param factory the factory that reads the invoices
+     * @param threads the number of invoices that are rendered at the same time
+     * @param queue the number of requests that can wait for a renderer
+     */
+    public InvoiceService(PojoFactory factory, int threads, int queue) {
+        this.factory = factory;
+        this.renderers = Executors.newFixedThreadPool(threads);
+        this.admission = new Semaphore(threads + queue);
+    }
+    
+    /**
+     * Creates the bounded pool of threads that handle the HTTP exchanges.
+     * There is a thread for every request that can be admitted, since such
+     * a request waits for its renderer, plus as many threads again to answer
+     * the rejected requests. Exchanges that find all threads busy wait in a
+     * queue of the same size; beyond that, the exchange is handled by the
+     * thread of the server that accepts the connections, which slows down
+     * accepting new connections instead of starting more threads.
+     *
+     * @param threads the number of invoices that are rendered at the same time
+     * @param queue the number of requests that can wait for a renderer
+     * @return the executor
+     */
+    public static ExecutorService createHttpExecutor(int threads, int queue) {
+        int admitted = threads + queue;
+        return new ThreadPoolExecutor(admitted + threads, admitted + threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(admitted), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    
+    /**
+     * Renders the first invoice in every format, so that the fonts,
+     * the color profile, the stylesheet and the classes involved are
+     * loaded before the first request comes in. Also preloads the
+     * database tables selected with {@link PojoFactory#PRELOAD_PROPERTY}.
+     *
+     * @throws SQLException the SQL exception
+     */
+    public void warmUp() throws SQLException {
+        int[] ids = factory.getInvoiceIdRange();
+        if (ids == null) {
+            return;
+        }
+        factory.preload(ids[0], ids[1] + 1);
+        Invoice invoice = factory.getInvoice(ids[0]);
+        for (InvoiceFormat format : InvoiceFormat.values()) {
+            try {
+                format.render(invoice, new ByteArrayOutputStream());
+            } catch (Exception e) {
+                System.err.println(String.format("Warm-up of %s failed: %s", format, e));
+            }
+        }
+    }
+    
+    /**
+     * Stops the renderers.
+     */
+    public void shutdown() {
+        renderers.shutdown();
+        System.out.println(String.format("%s requests served, %s rejected", served.get(), rejected.get()));
+    }
+    
+    /* (non-Javadoc)
+     * @see com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "Only GET is supported");
+                return;
+            }
+            String[] parts = exchange.getRequestURI().getPath().substring(CONTEXT.length()).split("/");
+            final int id;
+            final InvoiceFormat format;
+            try {
+                id = Integer.parseInt(parts[0]);
+                format = InvoiceFormat.fromName(parts.length == 2 ? parts[1] : "");
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "text/plain", "Use " + CONTEXT + "{id}/{xml|html|basic|comfort}");
+                return;
+            }
+            if (!admission.tryAcquire()) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "text/plain", "Too many requests");
+                return;
+            }
+            try {
+                long start = System.nanoTime();
+                byte[] body = renderers.submit(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        return render(id, format);
+                    }
+                }).get();
+                if (body == null) {
+                    send(exchange, 404, "text/plain", "No invoice with id " + id);
+                    return;
+                }
+                exchange.getResponseHeaders().set("X-Render-Millis",
+                    String.valueOf((System.nanoTime() - start) / 1000000));
+                send(exchange, 200, getContentType(format), body);
+                served.incrementAndGet();
+            } catch (ExecutionException e) {
+                send(exchange, 500, "text/plain", String.valueOf(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "text/plain", "Interrupted");
+            } finally {
+                admission.release();
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Renders an invoice.
+     *
+     * @param id the invoice id
+     * @param format the format
+     * @return the rendered invoice, or <code>null</code> if there is no such invoice
+     * @throws Exception if the invoice can't be read or rendered
+     */
+    protected byte[] render(int id, InvoiceFormat format) throws Exception {
+        Invoice invoice = factory.getInvoice(id);
+        if (invoice == null) {
+            return null;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        format.render(invoice, baos);
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Gets the content type of a format.
+     *
+     * @param format the format
+     * @return the content type
+     */
+    protected String getContentType(InvoiceFormat format) {
+        switch (format) {
+            case XML:
+                return "application/xml";
+            case HTML:
+                return "text/html; charset=UTF-8";
+            default:
+                return "application/pdf";
+        }
+    }
+    
+    /**
+     * Sends a text response.
+     *
+     * @param exchange the exchange
+     * @param status the status code
+     * @param contentType the content type
+     * @param message the message
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void send(HttpExchange exchange, int status, String contentType, String message) throws IOException {
+        send(exchange, status, contentType, message.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Sends a response.
+     *
+     * @param exchange the exchange
+     * @param status the status code
+     * @param contentType the content type
+     * @param body the body of the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(body);
+        os.close();
+    }
+}
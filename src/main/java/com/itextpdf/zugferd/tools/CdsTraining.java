@@ -0,0 +1,45 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.util.List;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.batch.CountingOutputStream;
+import com.itextpdf.zugferd.batch.InvoiceFormat;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+
+/**
+ * The training run for the class-data sharing archive built by
+ * src/main/scripts/zugferd.sh: renders a few invoices of the database in
+ * every format, so that the classes of iText, pdfHTML, the XSLT engine
+ * and HSQLDB that a real run needs are all loaded. Nothing is written to disk.
+ */
+public class CdsTraining {
+    
+    /** The default number of invoices rendered per format. */
+    public static final int COUNT = 3;
+    
+    /**
+     * The main method.
+     *
+     * @param args optionally the number of invoices rendered per format
+     * @throws Exception if an invoice can't be rendered
+     */
+    public static void main(String[] args) throws Exception {
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : COUNT;
+        PojoFactory factory = PojoFactory.getInstance();
+        List<Invoice> invoices = factory.getInvoices();
+        for (InvoiceFormat format : InvoiceFormat.values()) {
+            for (int i = 0; i < count && i < invoices.size(); i++) {
+                format.render(invoices.get(i), new CountingOutputStream());
+            }
+        }
+        factory.close();
+        System.out.println(String.format("Training run done: %d invoices per format", count));
+    }
+}
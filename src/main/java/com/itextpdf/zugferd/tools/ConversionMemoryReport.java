@@ -0,0 +1,206 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.PdfInvoicesComfort;
+import com.itextpdf.zugferd.batch.CountingOutputStream;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.SyntheticInvoices;
+
+/**
+ * Reports the heap retained while converting a single Comfort invoice,
+ * for synthetic invoices of increasing length, with the conversion in one
+ * go and with the incremental conversion. The retained heap is the highest
+ * heap usage right after a garbage collection during the conversion, as
+ * reported by the garbage collection notifications, minus the usage after
+ * a full collection before the conversion. Short-lived garbage in the young
+ * generation doesn't count; objects that were promoted and not yet collected
+ * by an old generation collection do, so it is an upper bound of the live
+ * data. A conversion that is over before the first collection is reported
+ * as "no gc"; run with a small young generation (e.g. -Xmn16m) to see the
+ * small invoices too.
+ */
+public class ConversionMemoryReport {
+    
+    /** The default numbers of lines. */
+    public static final int[] LINES = { 10, 1000, 100000 };
+    
+    /** The names of the heap memory pools. */
+    protected Set<String> pools = new HashSet<String>();
+    
+    /** The number of garbage collections that have been notified. */
+    protected long notified;
+    
+    /** The highest heap usage after a collection since the last reset. */
+    protected long retained;
+    
+    /**
+     * Creates the report, and listens to the notifications of the garbage collectors.
+     */
+    public ConversionMemoryReport() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                pools.add(pool.getName());
+        }
+        notified = getCollections();
+        NotificationListener listener = new NotificationListener() {
+            public void handleNotification(Notification notification, Object handback) {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+                    collected(GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData()));
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter)
+                ((NotificationEmitter)gc).addNotificationListener(listener, null, null);
+        }
+    }
+    
+    /**
+     * The main method.
+     *
+     * @param args optionally the numbers of lines to measure
+     * @throws Exception if an invoice can't be rendered
+     */
+    public static void main(String[] args) throws Exception {
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        int[] lines = LINES;
+        if (args.length > 0) {
+            lines = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                lines[i] = Integer.parseInt(args[i]);
+            }
+        }
+        ConversionMemoryReport report = new ConversionMemoryReport();
+        PdfInvoicesComfort app = new PdfInvoicesComfort();
+        // warm up, so that class loading and the caches don't count
+        app.createPdf(new SyntheticInvoices(1, 10).next(), new CountingOutputStream());
+        System.out.println(String.format("%10s %12s %14s %10s %12s", "lines", "mode", "retained MB", "time ms", "bytes"));
+        for (int n : lines) {
+            Invoice invoice = new SyntheticInvoices(1, n).next();
+            report.measure(app, invoice, false);
+            report.measure(app, invoice, true);
+        }
+    }
+    
+    /**
+     * Converts an invoice and prints the heap it retained.
+     *
+     * @param app the PDF generator
+     * @param invoice the invoice
+     * @param incremental whether the incremental conversion is used
+     * @throws Exception if the invoice can't be rendered
+     */
+    public void measure(PdfInvoicesComfort app, Invoice invoice, boolean incremental) throws Exception {
+        app.setIncremental(incremental);
+        String mode = incremental ? "incremental" : "one go";
+        int lines = invoice.getItems().size();
+        System.gc();
+        awaitNotifications();
+        long baseline = getUsed();
+        long collections = reset();
+        CountingOutputStream os = new CountingOutputStream();
+        long start = System.nanoTime();
+        try {
+            app.createPdf(invoice, os);
+        } catch (OutOfMemoryError e) {
+            System.out.println(String.format("%10d %12s %14s", lines, mode, "out of memory"));
+            return;
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        awaitNotifications();
+        String peak;
+        synchronized (this) {
+            peak = notified == collections ? "no gc"
+                : String.format("%.1f", Math.max(0, retained - baseline) / (1024.0 * 1024.0));
+        }
+        System.out.println(String.format("%10d %12s %14s %10d %12d", lines, mode, peak, millis, os.getCount()));
+    }
+    
+    /**
+     * Records the heap usage after a garbage collection.
+     *
+     * @param info the notification of the collection
+     */
+    protected synchronized void collected(GarbageCollectionNotificationInfo info) {
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+            if (pools.contains(pool.getKey()))
+                used += pool.getValue().getUsed();
+        }
+        retained = Math.max(retained, used);
+        notified++;
+    }
+    
+    /**
+     * Gets the heap that is currently used.
+     *
+     * @return the number of bytes
+     */
+    protected long getUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pools.contains(pool.getName()))
+                used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+    
+    /**
+     * Forgets the heap usage after the earlier collections.
+     *
+     * @return the number of collections that have been notified so far
+     */
+    protected synchronized long reset() {
+        retained = 0;
+        return notified;
+    }
+    
+    /**
+     * Waits until the notifications of all collections so far have been
+     * handled; they are delivered on a thread of their own. Gives up after
+     * a second, e.g. if the collectors don't send notifications.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    protected void awaitNotifications() throws InterruptedException {
+        long collections = getCollections();
+        long deadline = System.currentTimeMillis() + 1000;
+        synchronized (this) {
+            while (notified < collections && System.currentTimeMillis() < deadline) {
+                wait(10);
+            }
+        }
+    }
+    
+    /**
+     * Gets the number of garbage collections since the start of the JVM.
+     *
+     * @return the number of collections
+     */
+    protected static long getCollections() {
+        long collections = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, gc.getCollectionCount());
+        }
+        return collections;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import com.itextpdf.zugferd.HtmlInvoicesComfort;
+import com.itextpdf.zugferd.html.ComfortHtmlWriter;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+
+/**
+ * Compares the HTML of the Comfort invoices written by the XSLT stylesheet
+ * with the HTML written by the {@link ComfortHtmlWriter}, and measures the
+ * speed of both engines. Two documents are considered equal if they have
+ * the same elements, attributes and text; whitespace between elements and
+ * namespace declarations are ignored. Exits with status 1 if any invoice differs.
+ */
+public class HtmlEngineBenchmark {
+
+    /** The default number of measured rounds per engine. */
+    public static final int ROUNDS = 3;
+
+    /** Parses the HTML documents. */
+    protected DocumentBuilder builder;
+
+    /**
+     * Creates the comparator.
+     *
+     * @throws Exception if no XML parser is available
+     */
+    public HtmlEngineBenchmark() throws Exception {
+        builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args optionally the number of rounds
+     * @throws Exception if an invoice can't be rendered
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : ROUNDS;
+        PojoFactory factory = PojoFactory.getInstance();
+        List<Invoice> invoices = factory.getInvoices();
+        HtmlInvoicesComfort xsl = new HtmlInvoicesComfort();
+        xsl.setDirectHtml(false);
+        HtmlInvoicesComfort direct = new HtmlInvoicesComfort();
+        direct.setDirectHtml(true);
+        HtmlEngineBenchmark benchmark = new HtmlEngineBenchmark();
+
+        // parity, which also serves as the warm-up
+        List<String> differences = new ArrayList<String>();
+        for (Invoice invoice : invoices) {
+            String difference = benchmark.compare(render(xsl, invoice), render(direct, invoice));
+            if (difference != null)
+                differences.add(String.format("Invoice %s: %s", invoice.getId(), difference));
+        }
+        for (String difference : differences) {
+            System.out.println(difference);
+        }
+        System.out.println(String.format("%d invoices compared, %d differ",
+            invoices.size(), differences.size()));
+
+        // speed
+        double xslRate = measure(xsl, invoices, rounds);
+        double directRate = measure(direct, invoices, rounds);
+        factory.close();
+        System.out.println(String.format("xsl:    %10.1f invoices/sec", xslRate));
+        System.out.println(String.format("direct: %10.1f invoices/sec (%.1fx)", directRate, directRate / xslRate));
+        if (!differences.isEmpty())
+            System.exit(1);
+    }
+
+    /**
+     * Renders the HTML of an invoice.
+     *
+     * @param app the HTML generator
+     * @param invoice the invoice
+     * @return the HTML
+     * @throws Exception if the invoice can't be rendered
+     */
+    protected static String render(HtmlInvoicesComfort app, Invoice invoice) throws Exception {
+        StringWriter writer = new StringWriter();
+        app.createHtml(invoice, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Renders all invoices a number of times.
+     *
+     * @param app the HTML generator
+     * @param invoices the invoices
+     * @param rounds the number of rounds
+     * @return the number of invoices per second
+     * @throws Exception if an invoice can't be rendered
+     */
+    protected static double measure(HtmlInvoicesComfort app, List<Invoice> invoices, int rounds) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (Invoice invoice : invoices) {
+                render(app, invoice);
+            }
+        }
+        return invoices.size() * rounds * 1e9 / (System.nanoTime() - start);
+    }
+
+    /**
+     * Compares two HTML documents.
+     *
+     * @param expected the HTML written by the stylesheet
+     * @param actual the HTML written by the {@link ComfortHtmlWriter}
+     * @return a description of the first difference, or <code>null</code> if the documents are equal
+     * @throws Exception if a document can't be parsed
+     */
+    public String compare(String expected, String actual) throws Exception {
+        List<String> e = canonicalize(expected);
+        List<String> a = canonicalize(actual);
+        for (int i = 0; i < Math.min(e.size(), a.size()); i++) {
+            if (!e.get(i).equals(a.get(i)))
+                return String.format("expected %s but found %s", e.get(i), a.get(i));
+        }
+        if (e.size() != a.size())
+            return String.format("expected %d nodes but found %d", e.size(), a.size());
+        return null;
+    }
+
+    /**
+     * Flattens a document into a list of start tags with sorted attributes,
+     * end tags and text with normalized whitespace.
+     *
+     * @param html the HTML
+     * @return the list
+     * @throws Exception if the document can't be parsed
+     */
+    public List<String> canonicalize(String html) throws Exception {
+        List<String> nodes = new ArrayList<String>();
+        canonicalize(builder.parse(new InputSource(new StringReader(html))).getDocumentElement(), nodes);
+        return nodes;
+    }
+
+    /**
+     * Adds an element and its descendants to a flattened document.
+     *
+     * @param element the element
+     * @param nodes the flattened document
+     */
+    protected void canonicalize(Element element, List<String> nodes) {
+        Map<String, String> attributes = new TreeMap<String, String>();
+        NamedNodeMap map = element.getAttributes();
+        for (int i = 0; i < map.getLength(); i++) {
+            Node attribute = map.item(i);
+            if (!attribute.getNodeName().startsWith("xmlns"))
+                attributes.put(attribute.getNodeName(), attribute.getNodeValue());
+        }
+        nodes.add("<" + element.getTagName() + attributes + ">");
+        StringBuilder text = new StringBuilder();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE) {
+                text.append(child.getNodeValue());
+            }
+            else if (child.getNodeType() == Node.ELEMENT_NODE) {
+                addText(text, nodes);
+                canonicalize((Element)child, nodes);
+            }
+        }
+        addText(text, nodes);
+        nodes.add("</" + element.getTagName() + ">");
+    }
+
+    /**
+     * Adds pending text with normalized whitespace, unless it is blank.
+     *
+     * @param text the pending text, which is cleared
+     * @param nodes the flattened document
+     */
+    protected static void addText(StringBuilder text, List<String> nodes) {
+        String s = text.toString().trim().replaceAll("\\s+", " ");
+        if (s.length() > 0)
+            nodes.add(s);
+        text.setLength(0);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+
+/**
+ * Compares generated invoices with reference invoices, in parallel.
+ * The comparison covers the structure (pages, page sizes, document info),
+ * the text of every page, the embedded ZUGFeRD XML and the XMP metadata.
+ * Fields that change with every run, such as dates, document ids and the
+ * producer, are ignored. No rendering is involved, so Ghostscript isn't needed.
+ */
+public class InvoiceComparator {
+    
+    /** The default directory with the generated invoices. */
+    public static final String OUT = "results/zugferd/pdf";
+    
+    /** The default directory with the reference invoices. */
+    public static final String CMP = "cmp";
+    
+    /** The document info entries that change with every run. */
+    public static final List<PdfName> VOLATILE_INFO = Arrays.asList(
+        PdfName.CreationDate, PdfName.ModDate, PdfName.Producer);
+    
+    /** The XMP properties that change with every run, in element or attribute form. */
+    protected static final Pattern VOLATILE_XMP = Pattern.compile(
+        "<(xmp:CreateDate|xmp:ModifyDate|xmp:MetadataDate|xmpMM:DocumentID|xmpMM:InstanceID|pdf:Producer)>[^<]*</\\1>"
+        + "|(xmp:CreateDate|xmp:ModifyDate|xmp:MetadataDate|xmpMM:DocumentID|xmpMM:InstanceID|pdf:Producer)=\"[^\"]*\"");
+    
+    /** Used to get the embedded XML. */
+    protected ZugferdXmlExtractor extractor = new ZugferdXmlExtractor();
+    
+    /**
+     * The main method. Exits with status 1 if any invoice differs from its reference.
+     *
+     * @param args the directory with the generated invoices, the directory with
+     * the reference invoices, and the number of threads
+     * @throws InterruptedException the interrupted exception
+     */
+    public static void main(String[] args) throws InterruptedException {
+        File out = new File(args.length > 0 ? args[0] : OUT);
+        File cmp = new File(args.length > 1 ? args[1] : CMP);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int failed = new InvoiceComparator().compareAll(out, cmp, threads);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Compares all the reference invoices with the generated invoices of the same name.
+     *
+     * @param out the directory with the generated invoices
+     * @param cmp the directory with the reference invoices
+     * @param threads the number of threads
+     * @return the number of invoices that differ or that couldn't be compared
+     * @throws InterruptedException the interrupted exception
+     */
+    public int compareAll(final File out, File cmp, int threads) throws InterruptedException {
+        File[] references = cmp.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".pdf");
+            }
+        });
+        if (references == null) {
+            System.err.println("Not a directory: " + cmp);
+            return 1;
+        }
+        Arrays.sort(references);
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+        for (final File reference : references) {
+            futures.add(executor.submit(new Callable<List<String>>() {
+                public List<String> call() throws IOException {
+                    return compare(new File(out, reference.getName()), reference);
+                }
+            }));
+        }
+        int failed = 0;
+        for (int i = 0; i < references.length; i++) {
+            List<String> differences;
+            try {
+                differences = futures.get(i).get();
+            } catch (ExecutionException e) {
+                differences = Arrays.asList("can't be compared: " + e.getCause());
+            }
+            if (differences.isEmpty()) {
+                System.out.println(references[i].getName() + ": OK");
+            }
+            else {
+                failed++;
+                for (String difference : differences) {
+                    System.out.println(references[i].getName() + ": " + difference);
+                }
+            }
+        }
+        executor.shutdown();
+        System.out.println(String.format("%s of %s invoices differ (%.2f s)",
+            failed, references.length, (System.nanoTime() - start) / 1e9));
+        return failed;
+    }
+    
+    /**
+     * Compares a generated invoice with its reference.
+     *
+     * @param out the generated invoice
+     * @param cmp the reference invoice
+     * @return the differences, an empty list if there are none
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public List<String> compare(File out, File cmp) throws IOException {
+        List<String> differences = new ArrayList<String>();
+        if (!out.exists()) {
+            differences.add("missing");
+            return differences;
+        }
+        PdfDocument outDocument = new PdfDocument(new PdfReader(out.getPath()));
+        try {
+            PdfDocument cmpDocument = new PdfDocument(new PdfReader(cmp.getPath()));
+            try {
+                compareStructure(outDocument, cmpDocument, differences);
+                compareText(outDocument, cmpDocument, differences);
+                compareXml(outDocument, cmpDocument, differences);
+                compareXmp(outDocument, cmpDocument, differences);
+            }
+            finally {
+                cmpDocument.close();
+            }
+        }
+        finally {
+            outDocument.close();
+        }
+        return differences;
+    }
+    
+    /**
+     * Compares the number of pages, the page sizes and the document info.
+     *
+     * @param out the generated document
+     * @param cmp the reference document
+     * @param differences the list to which differences are added
+     */
+    protected void compareStructure(PdfDocument out, PdfDocument cmp, List<String> differences) {
+        if (out.getNumberOfPages() != cmp.getNumberOfPages()) {
+            differences.add(String.format("%s pages instead of %s",
+                out.getNumberOfPages(), cmp.getNumberOfPages()));
+            return;
+        }
+        for (int i = 1; i <= cmp.getNumberOfPages(); i++) {
+            Rectangle outBox = out.getPage(i).getMediaBox();
+            Rectangle cmpBox = cmp.getPage(i).getMediaBox();
+            if (Math.abs(outBox.getWidth() - cmpBox.getWidth()) > 0.01
+                || Math.abs(outBox.getHeight() - cmpBox.getHeight()) > 0.01) {
+                differences.add(String.format("page %s measures %sx%s instead of %sx%s", i,
+                    outBox.getWidth(), outBox.getHeight(), cmpBox.getWidth(), cmpBox.getHeight()));
+            }
+        }
+        PdfDictionary outInfo = out.getTrailer().getAsDictionary(PdfName.Info);
+        PdfDictionary cmpInfo = cmp.getTrailer().getAsDictionary(PdfName.Info);
+        TreeSet<String> keys = new TreeSet<String>();
+        for (PdfDictionary info : Arrays.asList(outInfo, cmpInfo)) {
+            if (info != null) {
+                for (PdfName key : info.keySet()) {
+                    if (!VOLATILE_INFO.contains(key)) {
+                        keys.add(key.getValue());
+                    }
+                }
+            }
+        }
+        for (String key : keys) {
+            String outValue = getInfo(outInfo, key);
+            String cmpValue = getInfo(cmpInfo, key);
+            if (!cmpValue.equals(outValue)) {
+                differences.add(String.format("info %s is '%s' instead of '%s'", key, outValue, cmpValue));
+            }
+        }
+    }
+    
+    /**
+     * Gets an entry of the document info as a string.
+     *
+     * @param info the document info dictionary, possibly <code>null</code>
+     * @param key the key
+     * @return the value, or an empty string if there is none
+     */
+    protected String getInfo(PdfDictionary info, String key) {
+        if (info == null) {
+            return "";
+        }
+        PdfObject value = info.get(new PdfName(key));
+        return value == null ? "" : value.toString();
+    }
+    
+    /**
+     * Compares the text of every page.
+     *
+     * @param out the generated document
+     * @param cmp the reference document
+     * @param differences the list to which differences are added
+     */
+    protected void compareText(PdfDocument out, PdfDocument cmp, List<String> differences) {
+        int n = Math.min(out.getNumberOfPages(), cmp.getNumberOfPages());
+        for (int i = 1; i <= n; i++) {
+            String[] outLines = PdfTextExtractor.getTextFromPage(out.getPage(i)).split("\n");
+            String[] cmpLines = PdfTextExtractor.getTextFromPage(cmp.getPage(i)).split("\n");
+            for (int l = 0; l < Math.max(outLines.length, cmpLines.length); l++) {
+                String outLine = l < outLines.length ? outLines[l] : "";
+                String cmpLine = l < cmpLines.length ? cmpLines[l] : "";
+                if (!outLine.equals(cmpLine)) {
+                    differences.add(String.format("text on page %s, line %s is '%s' instead of '%s'",
+                        i, l + 1, outLine, cmpLine));
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Compares the embedded ZUGFeRD XML.
+     *
+     * @param out the generated document
+     * @param cmp the reference document
+     * @param differences the list to which differences are added
+     */
+    protected void compareXml(PdfDocument out, PdfDocument cmp, List<String> differences) {
+        byte[] outXml = extractor.getXml(out);
+        byte[] cmpXml = extractor.getXml(cmp);
+        if (cmpXml == null) {
+            if (outXml != null) {
+                differences.add("unexpected ZUGFeRD XML");
+            }
+            return;
+        }
+        if (outXml == null) {
+            differences.add("ZUGFeRD XML is missing");
+            return;
+        }
+        String[] outLines = new String(outXml, StandardCharsets.UTF_8).split("\r?\n");
+        String[] cmpLines = new String(cmpXml, StandardCharsets.UTF_8).split("\r?\n");
+        for (int l = 0; l < Math.max(outLines.length, cmpLines.length); l++) {
+            String outLine = l < outLines.length ? outLines[l].trim() : "";
+            String cmpLine = l < cmpLines.length ? cmpLines[l].trim() : "";
+            if (!outLine.equals(cmpLine)) {
+                differences.add(String.format("ZUGFeRD XML line %s is '%s' instead of '%s'",
+                    l + 1, outLine, cmpLine));
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Compares the XMP metadata, ignoring the dates, the ids and the producer.
+     *
+     * @param out the generated document
+     * @param cmp the reference document
+     * @param differences the list to which differences are added
+     */
+    protected void compareXmp(PdfDocument out, PdfDocument cmp, List<String> differences) {
+        String outXmp = normalizeXmp(out.getXmpMetadata());
+        String cmpXmp = normalizeXmp(cmp.getXmpMetadata());
+        if (!cmpXmp.equals(outXmp)) {
+            differences.add("XMP metadata differs");
+        }
+    }
+    
+    /**
+     * Removes the volatile properties and the whitespace from XMP metadata.
+     *
+     * @param xmp the XMP metadata, possibly <code>null</code>
+     * @return the normalized metadata
+     */
+    protected String normalizeXmp(byte[] xmp) {
+        if (xmp == null) {
+            return "";
+        }
+        String s = new String(xmp, StandardCharsets.UTF_8);
+        return VOLATILE_XMP.matcher(s).replaceAll("").replaceAll("\\s+", "");
+    }
+}
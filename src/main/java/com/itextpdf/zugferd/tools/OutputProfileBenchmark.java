@@ -0,0 +1,114 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.util.List;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.OutputProfile;
+import com.itextpdf.zugferd.PdfInvoicesBasic;
+import com.itextpdf.zugferd.PdfInvoicesComfort;
+import com.itextpdf.zugferd.batch.CountingOutputStream;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+
+/**
+ * Renders the same invoices with every {@link OutputProfile} and reports
+ * the average number of bytes per invoice and the number of invoices per second.
+ * The documents are written to a stream that only counts bytes, so disk speed
+ * doesn't influence the result.
+ */
+public class OutputProfileBenchmark {
+    
+    /** The default number of invoices per round. */
+    public static final int COUNT = 50;
+    
+    /** The default number of measured rounds per profile. */
+    public static final int ROUNDS = 3;
+    
+    /** Whether Comfort invoices are rendered instead of Basic invoices. */
+    protected boolean comfort;
+    
+    /** The invoices that are rendered. */
+    protected List<Invoice> invoices;
+    
+    /**
+     * Creates a benchmark.
+     *
+     * @param comfort true for Comfort invoices, false for Basic invoices
+     * @param invoices the invoices to render
+     */
+    public OutputProfileBenchmark(boolean comfort, List<Invoice> invoices) {
+        this.comfort = comfort;
+        this.invoices = invoices;
+    }
+    
+    /**
+     * The main method.
+     *
+     * @param args basic or comfort, optionally followed by the number of invoices and the number of rounds
+     * @throws Exception if an invoice can't be rendered
+     */
+    public static void main(String[] args) throws Exception {
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        boolean comfort = args.length > 0 && "comfort".equalsIgnoreCase(args[0]);
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : COUNT;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : ROUNDS;
+        PojoFactory factory = PojoFactory.getInstance();
+        List<Invoice> invoices = factory.getInvoices();
+        if (invoices.size() > count)
+            invoices = invoices.subList(0, count);
+        OutputProfileBenchmark benchmark = new OutputProfileBenchmark(comfort, invoices);
+        // one unmeasured round, so that class loading and caches don't count
+        for (OutputProfile profile : OutputProfile.values()) {
+            benchmark.measure(profile);
+        }
+        System.out.println(String.format("%-10s %15s %15s",
+            "profile", "bytes/invoice", "invoices/sec"));
+        for (OutputProfile profile : OutputProfile.values()) {
+            long bytes = 0;
+            long nanos = 0;
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                bytes += benchmark.measure(profile);
+                nanos += System.nanoTime() - start;
+            }
+            int total = invoices.size() * rounds;
+            System.out.println(String.format("%-10s %15d %15.1f",
+                profile.name().toLowerCase(), bytes / total, total * 1e9 / nanos));
+        }
+        factory.close();
+    }
+    
+    /**
+     * Renders all invoices once with a profile.
+     *
+     * @param profile the output profile
+     * @return the total number of bytes produced
+     * @throws Exception if an invoice can't be rendered
+     */
+    public long measure(OutputProfile profile) throws Exception {
+        long bytes = 0;
+        if (comfort) {
+            PdfInvoicesComfort app = new PdfInvoicesComfort();
+            app.setOutputProfile(profile);
+            for (Invoice invoice : invoices) {
+                CountingOutputStream os = new CountingOutputStream();
+                app.createPdf(invoice, os);
+                bytes += os.getCount();
+            }
+        }
+        else {
+            PdfInvoicesBasic app = new PdfInvoicesBasic();
+            app.setOutputProfile(profile);
+            for (Invoice invoice : invoices) {
+                CountingOutputStream os = new CountingOutputStream();
+                app.createPdf(invoice, os);
+                bytes += os.getCount();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.itextpdf.zugferd.InvoiceDOM;
+import com.itextpdf.zugferd.data.InvoiceData;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+import com.itextpdf.zugferd.profiles.IBasicProfile;
+import com.itextpdf.zugferd.xml.ZugferdXmlWriter;
+
+/**
+ * Checks that the {@link ZugferdXmlWriter} writes exactly the same bytes as
+ * {@link InvoiceDOM#toXML()} for the Basic and the Comfort profile of every
+ * invoice in the database, and measures the speed of both engines. The
+ * profiles are created before measuring, so only XML creation is timed.
+ * The streaming engine is timed as {@link com.itextpdf.zugferd.XmlInvoicesComfort}
+ * runs it: with the checks of InvoiceDOM only if
+ * {@link ZugferdXmlWriter#VALIDATE_PROPERTY} is true.
+ * Exits with status 1 if any invoice differs.
+ */
+public class XmlEngineBenchmark {
+    
+    /** The default number of measured rounds per engine. */
+    public static final int ROUNDS = 3;
+    
+    /**
+     * The main method.
+     *
+     * @param args optionally the number of rounds
+     * @throws Exception if an invoice can't be converted
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : ROUNDS;
+        PojoFactory factory = PojoFactory.getInstance();
+        List<Invoice> invoices = factory.getInvoices();
+        InvoiceData data = new InvoiceData();
+        List<IBasicProfile> profiles = new ArrayList<IBasicProfile>();
+        for (Invoice invoice : invoices) {
+            profiles.add(data.createBasicProfileData(invoice));
+            profiles.add(data.createComfortProfileData(invoice));
+        }
+        factory.close();
+        
+        // parity, which also serves as the warm-up
+        int differences = 0;
+        for (IBasicProfile profile : profiles) {
+            String difference = compare(new InvoiceDOM(profile).toXML(), ZugferdXmlWriter.toXML(profile));
+            if (difference != null) {
+                differences++;
+                System.out.println(String.format("%s (%s): %s", profile.getId(),
+                    profile.getClass().getSimpleName(), difference));
+            }
+        }
+        System.out.println(String.format("%d documents compared, %d differ", profiles.size(), differences));
+        
+        // speed
+        boolean checked = ZugferdXmlWriter.isChecked();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (IBasicProfile profile : profiles) {
+                new InvoiceDOM(profile).toXML();
+            }
+        }
+        double domRate = profiles.size() * rounds * 1e9 / (System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (IBasicProfile profile : profiles) {
+                if (checked)
+                    ZugferdXmlWriter.check(profile);
+                ZugferdXmlWriter.toXML(profile);
+            }
+        }
+        double streamingRate = profiles.size() * rounds * 1e9 / (System.nanoTime() - start);
+        System.out.println(String.format("dom:       %10.1f documents/sec", domRate));
+        System.out.println(String.format("streaming: %10.1f documents/sec (%.1fx)%s", streamingRate,
+            streamingRate / domRate, checked ? ", with the checks of InvoiceDOM" : ""));
+        if (differences > 0)
+            System.exit(1);
+    }
+    
+    /**
+     * Compares two XML documents byte by byte.
+     *
+     * @param expected the XML written by InvoiceDOM
+     * @param actual the XML written by the {@link ZugferdXmlWriter}
+     * @return a description of the first difference, or <code>null</code> if the documents are equal
+     */
+    public static String compare(byte[] expected, byte[] actual) {
+        int n = Math.min(expected.length, actual.length);
+        int i = 0;
+        while (i < n && expected[i] == actual[i]) {
+            i++;
+        }
+        if (i == n && expected.length == actual.length)
+            return null;
+        return String.format("first difference at byte %d: expected \"%s\" but found \"%s\"",
+            i, excerpt(expected, i), excerpt(actual, i));
+    }
+    
+    /**
+     * Gets the text around a position of a document.
+     *
+     * @param xml the document
+     * @param offset the position
+     * @return the text
+     */
+    protected static String excerpt(byte[] xml, int offset) {
+        int from = Math.max(0, offset - 20);
+        int to = Math.min(xml.length, offset + 40);
+        return new String(xml, from, to - from, StandardCharsets.UTF_8)
+            .replace("\r", "\\r").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Validates ZUGFeRD XML against the ZUGFeRD schema.
+ * The schema is compiled once and shared; every thread gets its own
+ * validator, because validators aren't thread-safe. The validation time
+ * of every invoice can be logged to a CSV file.
+ */
+public class XmlValidator {
+    
+    /** The system property with the path to the ZUGFeRD schema. */
+    public static final String SCHEMA_PROPERTY = "zugferd.schema";
+    
+    /** The compiled schema. */
+    protected final Schema schema;
+    
+    /** A validator per thread. */
+    protected final ThreadLocal<Validator> validators = new ThreadLocal<Validator>() {
+        @Override
+        protected Validator initialValue() {
+            return schema.newValidator();
+        }
+    };
+    
+    /** The CSV log with the validation time of every invoice, possibly <code>null</code>. */
+    protected Writer log;
+    
+    /** The number of validated documents. */
+    protected AtomicLong validated = new AtomicLong();
+    
+    /** The number of invalid documents. */
+    protected AtomicLong invalid = new AtomicLong();
+    
+    /** The total validation time in nanoseconds. */
+    protected AtomicLong nanos = new AtomicLong();
+    
+    /**
+     * The result of the validation of a single document.
+     */
+    public static class Result {
+        
+        /** The name of the document. */
+        protected final String name;
+        
+        /** The validation time in nanoseconds. */
+        protected final long nanos;
+        
+        /** The validation errors. */
+        protected final List<String> errors;
+        
+        /**
+         * Creates a result.
+         *
+         * @param name the name of the document
+         * @param nanos the validation time in nanoseconds
+         * @param errors the validation errors
+         */
+        public Result(String name, long nanos, List<String> errors) {
+            this.name = name;
+            this.nanos = nanos;
+            this.errors = errors;
+        }
+        
+        /**
+         * Checks if the document is valid.
+         *
+         * @return true if there were no errors
+         */
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+        
+        /**
+         * Gets the validation errors.
+         *
+         * @return the errors
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+        
+        /**
+         * Gets the validation time.
+         *
+         * @return the validation time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+    
+    /**
+     * Validates all the XML files in a directory, in parallel.
+     *
+     * @param args the schema, the directory, the number of threads, and the CSV log
+     * @throws SAXException the SAX exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    public static void main(String[] args) throws SAXException, IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: XmlValidator schema.xsd directory [threads] [log.csv]");
+            return;
+        }
+        XmlValidator validator = new XmlValidator(new File(args[0]));
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            validator.setLog(new FileWriter(args[3]));
+        }
+        validator.validateAll(new File(args[1]), threads);
+        validator.close();
+        System.out.println(validator.getSummary());
+    }
+    
+    /**
+     * Creates a validator using the schema defined by the
+     * {@link #SCHEMA_PROPERTY} system property.
+     *
+     * @return the validator, or <code>null</code> if the property isn't set
+     * @throws SAXException if the schema can't be compiled
+     */
+    public static XmlValidator fromSystemProperty() throws SAXException {
+        String schema = System.getProperty(SCHEMA_PROPERTY);
+        return schema == null ? null : new XmlValidator(new File(schema));
+    }
+    
+    /**
+     * Compiles the schema.
+     *
+     * @param xsd the ZUGFeRD schema
+     * @throws SAXException if the schema can't be compiled
+     */
+    public XmlValidator(File xsd) throws SAXException {
+        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schema = factory.newSchema(xsd);
+    }
+    
+    /**
+     * Sets the CSV log to which the result of every validation is written.
+     *
+     * @param log the log
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void setLog(Writer log) throws IOException {
+        this.log = log;
+        log.write("name,micros,valid,errors\n");
+    }
+    
+    /**
+     * Validates a single document.
+     *
+     * @param name the name of the document, used in the log
+     * @param xml the XML bytes
+     * @return the result
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Result validate(String name, byte[] xml) throws IOException {
+        final List<String> errors = new ArrayList<String>();
+        Validator validator = validators.get();
+        validator.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+            }
+            public void error(SAXParseException e) {
+                errors.add(String.format("line %s: %s", e.getLineNumber(), e.getMessage()));
+            }
+            public void fatalError(SAXParseException e) {
+                error(e);
+            }
+        });
+        long start = System.nanoTime();
+        try {
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+        } catch (SAXException e) {
+            if (errors.isEmpty()) {
+                errors.add(e.getMessage());
+            }
+        }
+        Result result = new Result(name, System.nanoTime() - start, errors);
+        validated.incrementAndGet();
+        nanos.addAndGet(result.nanos);
+        if (!result.isValid()) {
+            invalid.incrementAndGet();
+        }
+        if (log != null) {
+            String line = String.format("%s,%s,%s,%s\n", name, result.nanos / 1000, result.isValid(),
+                result.isValid() ? "" : "\"" + errors.get(0).replace("\"", "'") + "\"");
+            synchronized (this) {
+                log.write(line);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Validates all the XML files in a directory, in parallel.
+     *
+     * @param dir the directory
+     * @param threads the number of threads
+     * @throws InterruptedException the interrupted exception
+     */
+    public void validateAll(File dir, int threads) throws InterruptedException {
+        File[] files = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".xml");
+            }
+        });
+        if (files == null) {
+            System.err.println("Not a directory: " + dir);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final File file : files) {
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        Result result = validate(file.getName(), Files.readAllBytes(file.toPath()));
+                        for (String error : result.getErrors()) {
+                            System.err.println(file.getName() + ": " + error);
+                        }
+                    } catch (IOException e) {
+                        System.err.println(String.format("%s failed: %s", file, e));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.err.println(e.getCause());
+            }
+        }
+        executor.shutdown();
+    }
+    
+    /**
+     * Closes the log, if any.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+    
+    /**
+     * Gets a summary of all validations.
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        long n = validated.get();
+        return String.format("%s documents validated, %s invalid, %.3f ms on average",
+            n, invalid.get(), n == 0 ? 0 : nanos.get() / 1e6 / n);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.InflaterInputStream;
+
+import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.PdfString;
+
+/**
+ * Extracts the ZUGFeRD XML from existing ZUGFeRD invoices.
+ * Every PDF is opened as a regular {@link PdfDocument}, which reads the
+ * cross-reference table, the trailer and the catalog; the lookup then only
+ * follows the EmbeddedFiles name tree to the attachment stream, so the
+ * pages and their content streams are never parsed. A directory of PDFs is
+ * processed in parallel, and the throughput is reported at the end.
+ */
+public class ZugferdXmlExtractor {
+    
+    /** The default directory with the PDF invoices. */
+    public static final String SRC = "results/zugferd/pdf";
+    
+    /** The default directory for the extracted XML files. */
+    public static final String DEST = "results/zugferd/extracted";
+    
+    /** The file name of the ZUGFeRD XML attachment. */
+    public static final String XML_NAME = "ZUGFeRD-invoice.xml";
+    
+    /**
+     * The main method.
+     *
+     * @param args the source directory, the destination directory, and the number of threads
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File src = new File(args.length > 0 ? args[0] : SRC);
+        File dest = new File(args.length > 1 ? args[1] : DEST);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        dest.mkdirs();
+        new ZugferdXmlExtractor().extractAll(src, dest, threads);
+    }
+    
+    /**
+     * Extracts the XML of all the PDF files in a directory, in parallel.
+     *
+     * @param src the directory with the PDF files
+     * @param dest the directory for the XML files
+     * @param threads the number of threads
+     * @throws InterruptedException the interrupted exception
+     */
+    public void extractAll(File src, final File dest, int threads) throws InterruptedException {
+        File[] pdfs = src.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".pdf");
+            }
+        });
+        if (pdfs == null) {
+            System.err.println("Not a directory: " + src);
+            return;
+        }
+        final AtomicInteger extracted = new AtomicInteger();
+        final AtomicLong pdfBytes = new AtomicLong();
+        final AtomicLong xmlBytes = new AtomicLong();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final File pdf : pdfs) {
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    String name = pdf.getName().substring(0, pdf.getName().length() - 4) + ".xml";
+                    try {
+                        long length = extract(pdf, new File(dest, name));
+                        if (length < 0) {
+                            System.err.println("No ZUGFeRD XML in " + pdf);
+                            return;
+                        }
+                        extracted.incrementAndGet();
+                        pdfBytes.addAndGet(pdf.length());
+                        xmlBytes.addAndGet(length);
+                    } catch (IOException e) {
+                        System.err.println(String.format("%s failed: %s", pdf, e));
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.err.println(e.getCause());
+            }
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(
+            "%s of %s files in %.2f s: %.1f files/s, %.1f MB/s of PDF read, %.1f MB/s of XML written",
+            extracted.get(), pdfs.length, seconds, extracted.get() / seconds,
+            pdfBytes.get() / seconds / 1e6, xmlBytes.get() / seconds / 1e6));
+    }
+    
+    /**
+     * Extracts the XML of a single PDF file to a file.
+     *
+     * @param pdf the PDF file
+     * @param xml the XML file
+     * @return the number of XML bytes written, or -1 if there is no ZUGFeRD XML
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public long extract(File pdf, File xml) throws IOException {
+        PdfDocument pdfDocument = new PdfDocument(new PdfReader(pdf.getPath()));
+        try {
+            PdfStream stream = getXmlStream(pdfDocument);
+            if (stream == null) {
+                return -1;
+            }
+            OutputStream os = new FileOutputStream(xml);
+            try {
+                return copy(openStream(stream), os);
+            }
+            finally {
+                os.close();
+            }
+        }
+        finally {
+            pdfDocument.close();
+        }
+    }
+    
+    /**
+     * Gets the decoded ZUGFeRD XML of a document.
+     *
+     * @param pdfDocument the document
+     * @return the XML bytes, or <code>null</code> if there is no ZUGFeRD XML
+     */
+    public byte[] getXml(PdfDocument pdfDocument) {
+        PdfStream stream = getXmlStream(pdfDocument);
+        return stream == null ? null : stream.getBytes();
+    }
+    
+    /**
+     * Finds the embedded file stream of the ZUGFeRD XML.
+     *
+     * @param pdfDocument the document
+     * @return the embedded file stream, or <code>null</code> if there is none
+     */
+    public PdfStream getXmlStream(PdfDocument pdfDocument) {
+        PdfDictionary names = pdfDocument.getCatalog().getPdfObject().getAsDictionary(PdfName.Names);
+        if (names == null) {
+            return null;
+        }
+        PdfDictionary fileSpec = findFileSpec(names.getAsDictionary(PdfName.EmbeddedFiles), 0);
+        if (fileSpec == null) {
+            return null;
+        }
+        PdfDictionary ef = fileSpec.getAsDictionary(PdfName.EF);
+        if (ef == null) {
+            return null;
+        }
+        PdfStream stream = ef.getAsStream(PdfName.UF);
+        return stream != null ? stream : ef.getAsStream(PdfName.F);
+    }
+    
+    /**
+     * Walks a node of a name tree, looking for the file specification of the ZUGFeRD XML.
+     *
+     * @param node the node of the name tree
+     * @param depth the depth of the node, to protect against cyclic trees
+     * @return the file specification, or <code>null</code> if there is none
+     */
+    protected PdfDictionary findFileSpec(PdfDictionary node, int depth) {
+        if (node == null || depth > 32) {
+            return null;
+        }
+        PdfArray names = node.getAsArray(PdfName.Names);
+        if (names != null) {
+            for (int i = 1; i < names.size(); i += 2) {
+                PdfDictionary fileSpec = names.getAsDictionary(i);
+                if (fileSpec != null && isZugferdXml(fileSpec)) {
+                    return fileSpec;
+                }
+            }
+        }
+        PdfArray kids = node.getAsArray(PdfName.Kids);
+        if (kids != null) {
+            for (int i = 0; i < kids.size(); i++) {
+                PdfDictionary fileSpec = findFileSpec(kids.getAsDictionary(i), depth + 1);
+                if (fileSpec != null) {
+                    return fileSpec;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Checks if a file specification refers to the ZUGFeRD XML.
+     *
+     * @param fileSpec the file specification
+     * @return true if the file name is the ZUGFeRD file name
+     */
+    protected boolean isZugferdXml(PdfDictionary fileSpec) {
+        PdfString name = fileSpec.getAsString(PdfName.UF);
+        if (name == null) {
+            name = fileSpec.getAsString(PdfName.F);
+        }
+        return name != null && XML_NAME.equals(name.toUnicodeString());
+    }
+    
+    /**
+     * Opens an embedded file stream for reading. The encoded bytes of the
+     * stream are always read into memory as a whole. A stream that is only
+     * flate compressed is inflated while it is copied, so that the decoded
+     * XML is never held in memory; other streams are decoded as a whole.
+     *
+     * @param stream the embedded file stream
+     * @return an input stream with the decoded bytes
+     */
+    protected InputStream openStream(PdfStream stream) {
+        if (PdfName.FlateDecode.equals(stream.get(PdfName.Filter)) && stream.get(PdfName.DecodeParms) == null) {
+            return new InflaterInputStream(new ByteArrayInputStream(stream.getBytes(false)));
+        }
+        return new ByteArrayInputStream(stream.getBytes());
+    }
+    
+    /**
+     * Copies an input stream to an output stream.
+     *
+     * @param is the input stream
+     * @param os the output stream
+     * @return the number of bytes copied
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected long copy(InputStream is, OutputStream os) throws IOException {
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int bytesRead;
+        while ((bytesRead = is.read(buf)) > 0) {
+            os.write(buf, 0, bytesRead);
+            total += bytesRead;
+        }
+        is.close();
+        return total;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.xml;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads single invoices from an archive written by {@link XmlArchiveWriter}.
+ * The index is loaded into memory and sorted by invoice id, so the invoices
+ * may have been added in any order; reading an invoice costs one seek and
+ * the decompression of that invoice only.
+ */
+public class XmlArchive {
+    
+    /** The extension of the index file, which is appended to the name of the archive. */
+    public static final String INDEX_EXTENSION = ".idx";
+    
+    /** The header of the index file. */
+    public static final String INDEX_HEADER = "invoiceid,offset,length,xmlbytes";
+    
+    /** The archive. */
+    protected RandomAccessFile file;
+    
+    /** The invoice ids, sorted. */
+    protected int[] ids;
+    
+    /** The offsets of the members, in the order of the ids. */
+    protected long[] offsets;
+    
+    /** The lengths of the members, in the order of the ids. */
+    protected int[] lengths;
+    
+    /** The sizes of the XML documents, in the order of the ids. */
+    protected int[] sizes;
+    
+    /**
+     * Opens an archive and loads its index.
+     *
+     * @param archive the archive
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public XmlArchive(File archive) throws IOException {
+        loadIndex(getIndexFile(archive));
+        file = new RandomAccessFile(archive, "r");
+    }
+    
+    /**
+     * The main method.
+     *
+     * @param args the path of the archive, and the id of the invoice to print
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: XmlArchive archive invoiceid");
+            return;
+        }
+        XmlArchive archive = new XmlArchive(new File(args[0]));
+        try {
+            byte[] xml = archive.get(Integer.parseInt(args[1]));
+            if (xml == null)
+                System.err.println(String.format("Invoice %s isn't in the archive", args[1]));
+            else
+                System.out.write(xml);
+            System.out.flush();
+        }
+        finally {
+            archive.close();
+        }
+    }
+    
+    /**
+     * Gets the index file of an archive.
+     *
+     * @param archive the archive
+     * @return the index file
+     */
+    public static File getIndexFile(File archive) {
+        return new File(archive.getPath() + INDEX_EXTENSION);
+    }
+    
+    /**
+     * Loads the index.
+     *
+     * @param index the index file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void loadIndex(File index) throws IOException {
+        int n = 0;
+        ids = new int[1024];
+        offsets = new long[1024];
+        lengths = new int[1024];
+        sizes = new int[1024];
+        boolean sorted = true;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(index), StandardCharsets.US_ASCII));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.equals(INDEX_HEADER))
+                    continue;
+                String[] fields = line.split(",");
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, n * 2);
+                    offsets = Arrays.copyOf(offsets, n * 2);
+                    lengths = Arrays.copyOf(lengths, n * 2);
+                    sizes = Arrays.copyOf(sizes, n * 2);
+                }
+                ids[n] = Integer.parseInt(fields[0]);
+                offsets[n] = Long.parseLong(fields[1]);
+                lengths[n] = Integer.parseInt(fields[2]);
+                sizes[n] = Integer.parseInt(fields[3]);
+                if (n > 0 && ids[n] < ids[n - 1])
+                    sorted = false;
+                n++;
+            }
+        }
+        finally {
+            reader.close();
+        }
+        ids = Arrays.copyOf(ids, n);
+        offsets = Arrays.copyOf(offsets, n);
+        lengths = Arrays.copyOf(lengths, n);
+        sizes = Arrays.copyOf(sizes, n);
+        if (!sorted)
+            sortIndex();
+        for (int i = 1; i < n; i++) {
+            if (ids[i] == ids[i - 1])
+                throw new IOException(String.format("The index %s contains invoice %d twice", index, ids[i]));
+        }
+    }
+    
+    /**
+     * Sorts the entries of the index by invoice id.
+     */
+    protected void sortIndex() {
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return Integer.compare(ids[i1], ids[i2]);
+            }
+        });
+        int[] sortedIds = new int[ids.length];
+        long[] sortedOffsets = new long[ids.length];
+        int[] sortedLengths = new int[ids.length];
+        int[] sortedSizes = new int[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedIds[i] = ids[order[i]];
+            sortedOffsets[i] = offsets[order[i]];
+            sortedLengths[i] = lengths[order[i]];
+            sortedSizes[i] = sizes[order[i]];
+        }
+        ids = sortedIds;
+        offsets = sortedOffsets;
+        lengths = sortedLengths;
+        sizes = sortedSizes;
+    }
+    
+    /**
+     * Gets the number of invoices in the archive.
+     *
+     * @return the number of invoices
+     */
+    public int size() {
+        return ids.length;
+    }
+    
+    /**
+     * Checks if an invoice is in the archive.
+     *
+     * @param id the invoice id
+     * @return true if the archive contains the invoice
+     */
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+    
+    /**
+     * Reads the XML of a single invoice.
+     *
+     * @param id the invoice id
+     * @return the XML, or <code>null</code> if the invoice isn't in the archive
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public byte[] get(int id) throws IOException {
+        int i = Arrays.binarySearch(ids, id);
+        if (i < 0)
+            return null;
+        byte[] compressed = new byte[lengths[i]];
+        synchronized (file) {
+            file.seek(offsets[i]);
+            file.readFully(compressed);
+        }
+        GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed), 8192);
+        try {
+            ByteArrayOutputStream xml = new ByteArrayOutputStream(sizes[i]);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = gzip.read(buffer)) > 0) {
+                xml.write(buffer, 0, n);
+            }
+            return xml.toByteArray();
+        }
+        finally {
+            gzip.close();
+        }
+    }
+    
+    /**
+     * Closes the archive.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.InvoiceDOM;
+import com.itextpdf.zugferd.XmlAttachment;
+import com.itextpdf.zugferd.data.InvoiceData;
+import com.itextpdf.zugferd.pojo.CsvInvoiceSource;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.InvoiceSource;
+import com.itextpdf.zugferd.pojo.JdbcInvoiceSource;
+import com.itextpdf.zugferd.pojo.PojoFactory;
+import com.itextpdf.zugferd.profiles.IBasicProfile;
+
+/**
+ * Exports the ZUGFeRD XML of many invoices into a single compressed file,
+ * for bulk delivery. Every invoice is compressed as a gzip member of its
+ * own, and the members are concatenated: any gzip tool decompresses the
+ * file into all documents, one after the other. An index file lists the
+ * offset and length of every member, so that {@link XmlArchive} can read
+ * a single invoice without decompressing the others.
+ */
+public class XmlArchiveWriter {
+    
+    /** The default path of the archive. */
+    public static final String DEST = "results/zugferd/xml/comfort.xml.gz";
+    
+    /** The output stream of the archive. */
+    protected OutputStream os;
+    
+    /** The writer of the index. */
+    protected Writer index;
+    
+    /** The position of the next member in the archive. */
+    protected long offset;
+    
+    /** The number of invoices written. */
+    protected int count;
+    
+    /** The number of uncompressed bytes written. */
+    protected long xmlBytes;
+    
+    /** The ids of the invoices written, as every id may only be added once. */
+    protected Set<Integer> ids = new HashSet<Integer>();
+    
+    /** The buffer in which a member is compressed. */
+    protected ByteArrayOutputStream member = new ByteArrayOutputStream(8192);
+    
+    /** Whether the XML is written with the {@link ZugferdXmlWriter} instead of InvoiceDOM. */
+    protected boolean streaming = ZugferdXmlWriter.isSelected();
+    
+    /**
+     * Creates an archive, with its index next to it.
+     *
+     * @param file the archive
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public XmlArchiveWriter(File file) throws IOException {
+        os = new BufferedOutputStream(new FileOutputStream(file), 65536);
+        index = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(XmlArchive.getIndexFile(file)), StandardCharsets.US_ASCII));
+        index.write(XmlArchive.INDEX_HEADER);
+        index.write('\n');
+    }
+    
+    /**
+     * The main method.
+     *
+     * @param args optionally the path of the archive, and the path of a CSV export that is read instead of the database
+     * @throws Exception if an invoice can't be exported
+     */
+    public static void main(String[] args) throws Exception {
+        LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+        File file = new File(args.length > 0 ? args[0] : DEST);
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        PojoFactory factory = args.length > 1 ? null : PojoFactory.getInstance();
+        InvoiceSource source = factory == null
+            ? new CsvInvoiceSource(new File(args[1])) : new JdbcInvoiceSource(factory);
+        long start = System.currentTimeMillis();
+        XmlArchiveWriter archive = new XmlArchiveWriter(file);
+        InvoiceData data = new InvoiceData();
+        Invoice invoice;
+        while ((invoice = source.next()) != null) {
+            archive.add(invoice.getId(), data.createComfortProfileData(invoice));
+        }
+        source.close();
+        if (factory != null)
+            factory.close();
+        archive.close();
+        System.out.println(String.format("%d invoices exported to %s in %d ms: %d XML bytes, %d compressed bytes",
+            archive.count, file, System.currentTimeMillis() - start, archive.xmlBytes, archive.offset));
+    }
+    
+    /**
+     * Adds the XML of an invoice.
+     *
+     * @param id the invoice id
+     * @param profile the profile with the data of the invoice
+     * @throws Exception if the XML can't be created
+     */
+    public void add(int id, IBasicProfile profile) throws Exception {
+        if (streaming && ZugferdXmlWriter.isChecked())
+            ZugferdXmlWriter.check(profile);
+        add(id, streaming ? ZugferdXmlWriter.toXML(profile) : new InvoiceDOM(profile).toXML());
+    }
+    
+    /**
+     * Adds an XML document.
+     *
+     * @param id the invoice id
+     * @param xml the XML
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws IllegalArgumentException if the invoice was already added
+     */
+    public synchronized void add(int id, byte[] xml) throws IOException {
+        if (!ids.add(id))
+            throw new IllegalArgumentException(String.format("Invoice %d is already in the archive", id));
+        member.reset();
+        GZIPOutputStream gzip = new GZIPOutputStream(member, 8192);
+        gzip.write(xml);
+        gzip.close();
+        member.writeTo(os);
+        index.write(String.format("%d,%d,%d,%d\n", id, offset, member.size(), xml.length));
+        offset += member.size();
+        xmlBytes += xml.length;
+        count++;
+    }
+    
+    /**
+     * Adds an XML document, and returns the compressed data of its gzip
+     * member in the zlib format, so that the same XML can be embedded in
+     * a PDF without compressing it a second time.
+     *
+     * @param id the invoice id
+     * @param xml the XML
+     * @return the XML deflated in the zlib format
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws IllegalArgumentException if the invoice was already added
+     * @see XmlAttachment#createFileSpec(com.itextpdf.kernel.pdf.PdfDocument, int, byte[], byte[], String, String, com.itextpdf.kernel.pdf.PdfName)
+     */
+    public synchronized byte[] addDeflated(int id, byte[] xml) throws IOException {
+        add(id, xml);
+        return XmlAttachment.gzipToZlib(member.toByteArray(), xml);
+    }
+    
+    /**
+     * Closes the archive and its index.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void close() throws IOException {
+        os.close();
+        index.close();
+    }
+}
@@ -0,0 +1,670 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.xml;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import com.itextpdf.zugferd.InvoiceDOM;
+import com.itextpdf.zugferd.exceptions.DataIncompleteException;
+import com.itextpdf.zugferd.exceptions.InvalidCodeException;
+import com.itextpdf.zugferd.profiles.IBasicProfile;
+import com.itextpdf.zugferd.profiles.IComfortProfile;
+
+/**
+ * Writes the ZUGFeRD XML of an invoice straight from an {@link IBasicProfile}
+ * or {@link IComfortProfile} instance, without building a DOM tree and
+ * without a {@link javax.xml.transform.Transformer}. The output is meant to
+ * be byte for byte the output of {@link com.itextpdf.zugferd.InvoiceDOM#toXML()}:
+ * the same declaration, elements in the same order, four spaces of indentation,
+ * the line separator of the platform, and no elements without content.
+ * <p>
+ * Elements are opened lazily: a container element is only written once it
+ * gets its first child with content, so empty branches disappear just like
+ * InvoiceDOM removes them.
+ * <p>
+ * Unlike InvoiceDOM, this writer doesn't check the profile for missing data
+ * or invalid codes. Those checks need the DOM tree that this writer avoids,
+ * so they only run if {@link #VALIDATE_PROPERTY} is set to true, in which
+ * case callers run them with {@link #check(IBasicProfile)} first. The writer writes
+ * the Comfort data that our {@link com.itextpdf.zugferd.data.InvoiceData}
+ * produces: notes, payment means, taxes, totals and line items with their
+ * prices, taxes and product identification. Use {@link com.itextpdf.zugferd.tools.XmlEngineBenchmark}
+ * to verify parity after changing the data.
+ * <p>
+ * A writer is meant to be used for a single document.
+ */
+public class ZugferdXmlWriter {
+    
+    /**
+     * The system property that selects the XML engine: "dom" (the default)
+     * for InvoiceDOM, or "streaming" for this writer.
+     */
+    public static final String ENGINE_PROPERTY = "zugferd.xml.engine";
+    
+    /** The value of {@link #ENGINE_PROPERTY} that selects this writer. */
+    public static final String STREAMING = "streaming";
+    
+    /**
+     * The system property that can be set to true to run the checks of
+     * InvoiceDOM before the XML is written with this writer, for data that
+     * isn't known to be complete. The checks build the DOM tree, which
+     * costs most of what this writer saves.
+     */
+    public static final String VALIDATE_PROPERTY = "zugferd.xml.validate";
+    
+    /** The indentation of one level. */
+    public static final String INDENT = "    ";
+    
+    /** The XML declaration. */
+    public static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    
+    /** The guideline; InvoiceDOM keeps the value of its template for both profiles. */
+    public static final String GUIDELINE = "urn:ferd:CrossIndustryDocument:invoice:1p0:comfort";
+    
+    /** The namespace declarations of the root element, in the order the Transformer writes them. */
+    protected static final String[] NAMESPACES = {
+        "xmlns:ram", "urn:un:unece:uncefact:data:standard:ReusableAggregateBusinessInformationEntity:12",
+        "xmlns:rsm", "urn:ferd:CrossIndustryDocument:invoice:1p0",
+        "xmlns:udt", "urn:un:unece:uncefact:data:standard:UnqualifiedDataType:15",
+        "xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance"
+    };
+    
+    /** The line separator, which the Transformer also uses inside text. */
+    protected static final String NEWLINE = System.getProperty("line.separator");
+    
+    /** The writer to which the XML is written. */
+    protected Writer writer;
+    
+    /** The elements that are open, whether they were written or not. */
+    protected List<String> open = new ArrayList<String>();
+    
+    /** The number of open elements that were written. */
+    protected int written;
+    
+    /**
+     * Creates an XML writer.
+     *
+     * @param os the output stream to which the XML will be written
+     */
+    public ZugferdXmlWriter(OutputStream os) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Checks if the streaming engine was selected with {@link #ENGINE_PROPERTY}.
+     *
+     * @return true if the XML should be written with this class
+     */
+    public static boolean isSelected() {
+        return STREAMING.equalsIgnoreCase(System.getProperty(ENGINE_PROPERTY));
+    }
+    
+    /**
+     * Checks if the checks of InvoiceDOM must run before the XML is written
+     * with this class; they only run if {@link #VALIDATE_PROPERTY} is true.
+     *
+     * @return true if {@link #check(IBasicProfile)} must be called first
+     */
+    public static boolean isChecked() {
+        return Boolean.getBoolean(VALIDATE_PROPERTY);
+    }
+    
+    /**
+     * Runs the checks of InvoiceDOM for missing mandatory data and invalid
+     * codes. The DOM tree is built for the checks, but it isn't serialized.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @throws ParserConfigurationException the parser configuration exception
+     * @throws SAXException the SAX exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws DataIncompleteException if mandatory data is missing
+     * @throws InvalidCodeException if a code is invalid
+     */
+    public static void check(IBasicProfile data)
+        throws ParserConfigurationException, SAXException, IOException,
+            DataIncompleteException, InvalidCodeException {
+        new InvoiceDOM(data);
+    }
+    
+    /**
+     * Writes the XML of an invoice to a byte array.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @return the XML
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static byte[] toXML(IBasicProfile data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(8192);
+        new ZugferdXmlWriter(baos).write(data);
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Writes the XML of an invoice. The writer is flushed, but the output stream isn't closed.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void write(IBasicProfile data) throws IOException {
+        IComfortProfile comfort = data instanceof IComfortProfile ? (IComfortProfile)data : null;
+        writer.write(DECLARATION);
+        writer.write(NEWLINE);
+        start("rsm:CrossIndustryDocument", NAMESPACES);
+        writeContext(data);
+        writeHeader(data, comfort);
+        start("rsm:SpecifiedSupplyChainTradeTransaction");
+        writeAgreement(data);
+        writeDelivery(data);
+        writeSettlement(data, comfort);
+        writeLineItems(data, comfort);
+        end();
+        end();
+        writer.flush();
+    }
+    
+    /**
+     * Writes the exchanged document context.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeContext(IBasicProfile data) throws IOException {
+        start("rsm:SpecifiedExchangedDocumentContext");
+        start("ram:TestIndicator");
+        element("udt:Indicator", data.getTestIndicator() ? "true" : "false");
+        end();
+        start("ram:GuidelineSpecifiedDocumentContextParameter");
+        element("ram:ID", GUIDELINE);
+        end();
+        end();
+    }
+    
+    /**
+     * Writes the header: id, name, type, date and notes.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @param comfort the same instance as {@link IComfortProfile}, or <code>null</code>
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeHeader(IBasicProfile data, IComfortProfile comfort) throws IOException {
+        start("rsm:HeaderExchangedDocument");
+        element("ram:ID", data.getId());
+        element("ram:Name", data.getName());
+        element("ram:TypeCode", data.getTypeCode());
+        writeDateTime("ram:IssueDateTime", data.getDateTime(), data.getDateTimeFormat());
+        String[][] notes = data.getNotes();
+        String[] codes = comfort == null ? null : comfort.getNotesCodes();
+        for (int i = 0; notes != null && i < notes.length; i++) {
+            start("ram:IncludedNote");
+            for (int j = 0; notes[i] != null && j < notes[i].length; j++) {
+                element("ram:Content", notes[i][j]);
+            }
+            element("ram:SubjectCode", get(codes, i));
+            end();
+        }
+        end();
+    }
+    
+    /**
+     * Writes the trade agreement with the seller and the buyer.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeAgreement(IBasicProfile data) throws IOException {
+        start("ram:ApplicableSupplyChainTradeAgreement");
+        writeParty("ram:SellerTradeParty", data.getSellerName(), data.getSellerPostcode(),
+            data.getSellerLineOne(), data.getSellerLineTwo(), data.getSellerCityName(), data.getSellerCountryID(),
+            data.getSellerTaxRegistrationID(), data.getSellerTaxRegistrationSchemeID());
+        writeParty("ram:BuyerTradeParty", data.getBuyerName(), data.getBuyerPostcode(),
+            data.getBuyerLineOne(), data.getBuyerLineTwo(), data.getBuyerCityName(), data.getBuyerCountryID(),
+            data.getBuyerTaxRegistrationID(), data.getBuyerTaxRegistrationSchemeID());
+        end();
+    }
+    
+    /**
+     * Writes a trade party.
+     *
+     * @param tag the element name of the party
+     * @param name the name
+     * @param postcode the postcode
+     * @param lineOne the first address line
+     * @param lineTwo the second address line
+     * @param city the city
+     * @param country the country code
+     * @param taxIDs the tax registration ids
+     * @param schemeIDs the schemes of the tax registration ids
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeParty(String tag, String name, String postcode, String lineOne, String lineTwo,
+        String city, String country, String[] taxIDs, String[] schemeIDs) throws IOException {
+        start(tag);
+        element("ram:Name", name);
+        start("ram:PostalTradeAddress");
+        element("ram:PostcodeCode", postcode);
+        element("ram:LineOne", lineOne);
+        element("ram:LineTwo", lineTwo);
+        element("ram:CityName", city);
+        element("ram:CountryID", country);
+        end();
+        start("ram:SpecifiedTaxRegistration");
+        for (int i = 0; taxIDs != null && i < taxIDs.length; i++) {
+            element("ram:ID", taxIDs[i], "schemeID", get(schemeIDs, i));
+        }
+        end();
+        end();
+    }
+    
+    /**
+     * Writes the delivery date, if there is one.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeDelivery(IBasicProfile data) throws IOException {
+        start("ram:ApplicableSupplyChainTradeDelivery");
+        start("ram:ActualDeliverySupplyChainEvent");
+        writeDateTime("ram:OccurrenceDateTime", data.getDeliveryDateTime(), data.getDeliveryDateTimeFormat());
+        end();
+        end();
+    }
+    
+    /**
+     * Writes the trade settlement: payment means, taxes and totals.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @param comfort the same instance as {@link IComfortProfile}, or <code>null</code>
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeSettlement(IBasicProfile data, IComfortProfile comfort) throws IOException {
+        start("ram:ApplicableSupplyChainTradeSettlement");
+        element("ram:PaymentReference", data.getPaymentReference());
+        element("ram:InvoiceCurrencyCode", data.getInvoiceCurrencyCode());
+        String[] ibans = data.getPaymentMeansPayeeAccountIBAN();
+        for (int i = 0; ibans != null && i < ibans.length; i++) {
+            start("ram:SpecifiedTradeSettlementPaymentMeans");
+            if (comfort != null) {
+                element("ram:TypeCode", get(comfort.getPaymentMeansTypeCode(), i));
+                String[] information = get(comfort.getPaymentMeansInformation(), i);
+                for (int j = 0; information != null && j < information.length; j++) {
+                    element("ram:Information", information[j]);
+                }
+            }
+            element("ram:ID", get(data.getPaymentMeansID(), i),
+                "schemeAgencyID", get(data.getPaymentMeansSchemeAgencyID(), i));
+            if (comfort != null) {
+                start("ram:PayerPartyDebtorFinancialAccount");
+                element("ram:IBANID", get(comfort.getPaymentMeansPayerAccountIBAN(), i));
+                element("ram:ProprietaryID", get(comfort.getPaymentMeansPayerAccountProprietaryID(), i));
+                end();
+            }
+            start("ram:PayeePartyCreditorFinancialAccount");
+            element("ram:IBANID", ibans[i]);
+            element("ram:AccountName", get(data.getPaymentMeansPayeeAccountName(), i));
+            element("ram:ProprietaryID", get(data.getPaymentMeansPayeeAccountProprietaryID(), i));
+            end();
+            if (comfort != null) {
+                start("ram:PayerSpecifiedDebtorFinancialInstitution");
+                element("ram:BICID", get(comfort.getPaymentMeansPayerFinancialInstitutionBIC(), i));
+                element("ram:GermanBankleitzahlID",
+                    get(comfort.getPaymentMeansPayerFinancialInstitutionGermanBankleitzahlID(), i));
+                element("ram:Name", get(comfort.getPaymentMeansPayerFinancialInstitutionName(), i));
+                end();
+            }
+            start("ram:PayeeSpecifiedCreditorFinancialInstitution");
+            element("ram:BICID", get(data.getPaymentMeansPayeeFinancialInstitutionBIC(), i));
+            element("ram:GermanBankleitzahlID",
+                get(data.getPaymentMeansPayeeFinancialInstitutionGermanBankleitzahlID(), i));
+            element("ram:Name", get(data.getPaymentMeansPayeeFinancialInstitutionName(), i));
+            end();
+            end();
+        }
+        String[] amounts = data.getTaxCalculatedAmount();
+        for (int i = 0; amounts != null && i < amounts.length; i++) {
+            start("ram:ApplicableTradeTax");
+            element("ram:CalculatedAmount", amounts[i],
+                "currencyID", get(data.getTaxCalculatedAmountCurrencyID(), i));
+            element("ram:TypeCode", get(data.getTaxTypeCode(), i));
+            if (comfort != null)
+                element("ram:ExemptionReason", get(comfort.getTaxExemptionReason(), i));
+            element("ram:BasisAmount", get(data.getTaxBasisAmount(), i),
+                "currencyID", get(data.getTaxBasisAmountCurrencyID(), i));
+            if (comfort != null)
+                element("ram:CategoryCode", get(comfort.getTaxCategoryCode(), i));
+            element("ram:ApplicablePercent", get(data.getTaxApplicablePercent(), i));
+            end();
+        }
+        start("ram:SpecifiedTradeSettlementMonetarySummation");
+        element("ram:LineTotalAmount", data.getLineTotalAmount(),
+            "currencyID", data.getLineTotalAmountCurrencyID());
+        element("ram:ChargeTotalAmount", data.getChargeTotalAmount(),
+            "currencyID", data.getChargeTotalAmountCurrencyID());
+        element("ram:AllowanceTotalAmount", data.getAllowanceTotalAmount(),
+            "currencyID", data.getAllowanceTotalAmountCurrencyID());
+        element("ram:TaxBasisTotalAmount", data.getTaxBasisTotalAmount(),
+            "currencyID", data.getTaxBasisTotalAmountCurrencyID());
+        element("ram:TaxTotalAmount", data.getTaxTotalAmount(),
+            "currencyID", data.getTaxTotalAmountCurrencyID());
+        element("ram:GrandTotalAmount", data.getGrandTotalAmount(),
+            "currencyID", data.getGrandTotalAmountCurrencyID());
+        if (comfort != null) {
+            element("ram:TotalPrepaidAmount", comfort.getTotalPrepaidAmount(),
+                "currencyID", comfort.getTotalPrepaidAmountCurrencyID());
+            element("ram:DuePayableAmount", comfort.getDuePayableAmount(),
+                "currencyID", comfort.getDuePayableAmountCurrencyID());
+        }
+        end();
+        end();
+    }
+    
+    /**
+     * Writes the line items.
+     *
+     * @param data the {@link IBasicProfile} instance
+     * @param comfort the same instance as {@link IComfortProfile}, or <code>null</code>
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeLineItems(IBasicProfile data, IComfortProfile comfort) throws IOException {
+        String[] quantities = data.getLineItemBilledQuantity();
+        String[] units = data.getLineItemBilledQuantityUnitCode();
+        String[] names = data.getLineItemSpecifiedTradeProductName();
+        for (int i = 0; quantities != null && i < quantities.length; i++) {
+            start("ram:IncludedSupplyChainTradeLineItem");
+            if (comfort != null) {
+                writeLineItemAgreement(comfort, i);
+            }
+            start("ram:SpecifiedSupplyChainTradeDelivery");
+            element("ram:BilledQuantity", quantities[i], "unitCode", get(units, i));
+            end();
+            if (comfort != null) {
+                writeLineItemSettlement(comfort, i);
+            }
+            start("ram:SpecifiedTradeProduct");
+            if (comfort != null) {
+                element("ram:GlobalID", get(comfort.getLineItemSpecifiedTradeProductGlobalID(), i),
+                    "schemeID", get(comfort.getLineItemSpecifiedTradeProductSchemeID(), i));
+                element("ram:SellerAssignedID", get(comfort.getLineItemSpecifiedTradeProductSellerAssignedID(), i));
+                element("ram:BuyerAssignedID", get(comfort.getLineItemSpecifiedTradeProductBuyerAssignedID(), i));
+            }
+            element("ram:Name", get(names, i));
+            if (comfort != null) {
+                element("ram:Description", get(comfort.getLineItemSpecifiedTradeProductDescription(), i));
+            }
+            end();
+            end();
+        }
+    }
+    
+    /**
+     * Writes the line id, the notes and the prices of a Comfort line item.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @param i the index of the line item
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeLineItemAgreement(IComfortProfile comfort, int i) throws IOException {
+        start("ram:AssociatedDocumentLineDocument");
+        element("ram:LineID", get(comfort.getLineItemLineID(), i));
+        String[] notes = get(comfort.getLineItemIncludedNote(), i);
+        for (int j = 0; notes != null && j < notes.length; j++) {
+            start("ram:IncludedNote");
+            element("ram:Content", notes[j]);
+            end();
+        }
+        end();
+        start("ram:SpecifiedSupplyChainTradeAgreement");
+        start("ram:GrossPriceProductTradePrice");
+        element("ram:ChargeAmount", get(comfort.getLineItemGrossPriceChargeAmount(), i),
+            "currencyID", get(comfort.getLineItemGrossPriceChargeAmountCurrencyID(), i));
+        element("ram:BasisQuantity", get(comfort.getLineItemGrossPriceBasisQuantity(), i),
+            "unitCode", get(comfort.getLineItemGrossPriceBasisQuantityCode(), i));
+        end();
+        start("ram:NetPriceProductTradePrice");
+        element("ram:ChargeAmount", get(comfort.getLineItemNetPriceChargeAmount(), i),
+            "currencyID", get(comfort.getLineItemNetPriceChargeAmountCurrencyID(), i));
+        element("ram:BasisQuantity", get(comfort.getLineItemNetPriceBasisQuantity(), i),
+            "unitCode", get(comfort.getLineItemNetPriceBasisQuantityCode(), i));
+        end();
+        end();
+    }
+    
+    /**
+     * Writes the taxes and the total of a Comfort line item.
+     *
+     * @param comfort the {@link IComfortProfile} instance
+     * @param i the index of the line item
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeLineItemSettlement(IComfortProfile comfort, int i) throws IOException {
+        start("ram:SpecifiedSupplyChainTradeSettlement");
+        String[] types = get(comfort.getLineItemSettlementTaxTypeCode(), i);
+        String[] reasons = get(comfort.getLineItemSettlementTaxExemptionReason(), i);
+        String[] categories = get(comfort.getLineItemSettlementTaxCategoryCode(), i);
+        String[] percents = get(comfort.getLineItemSettlementTaxApplicablePercent(), i);
+        for (int j = 0; types != null && j < types.length; j++) {
+            start("ram:ApplicableTradeTax");
+            element("ram:TypeCode", types[j]);
+            element("ram:ExemptionReason", get(reasons, j));
+            element("ram:CategoryCode", get(categories, j));
+            element("ram:ApplicablePercent", get(percents, j));
+            end();
+        }
+        start("ram:SpecifiedTradeSettlementMonetarySummation");
+        element("ram:LineTotalAmount", get(comfort.getLineItemLineTotalAmount(), i),
+            "currencyID", get(comfort.getLineItemLineTotalAmountCurrencyID(), i));
+        end();
+        end();
+    }
+    
+    /**
+     * Writes a date, formatted according to its format code.
+     *
+     * @param tag the element name of the date
+     * @param date the date, or <code>null</code>
+     * @param format the format code: 102, 610 or 616
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeDateTime(String tag, Date date, String format) throws IOException {
+        if (date == null)
+            return;
+        String pattern;
+        if ("610".equals(format))
+            pattern = "yyyyMM";
+        else if ("616".equals(format))
+            pattern = "yyyyww";
+        else
+            pattern = "yyyyMMdd";
+        start(tag);
+        element("udt:DateTimeString", new SimpleDateFormat(pattern).format(date), "format", format);
+        end();
+    }
+    
+    /**
+     * Gets a value of an array.
+     *
+     * @param <T> the type of the values
+     * @param array the array, or <code>null</code>
+     * @param i the index
+     * @return the value, or <code>null</code> if there is none
+     */
+    protected static <T> T get(T[] array, int i) {
+        return array == null || i >= array.length ? null : array[i];
+    }
+    
+    /**
+     * Opens an element. It is only written once it gets content.
+     *
+     * @param name the element name
+     * @param attributes the attribute names and values, alternately
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void start(String name, String... attributes) throws IOException {
+        open.add(name);
+        if (attributes.length > 0) {
+            // only the root element has attributes, and it is always written
+            flush();
+            indent(open.size() - 1);
+            writeTag(name, attributes);
+            writer.write(NEWLINE);
+            written++;
+        }
+    }
+    
+    /**
+     * Closes the innermost open element, writing its end tag if its start tag was written.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void end() throws IOException {
+        int depth = open.size() - 1;
+        String name = open.remove(depth);
+        if (written > depth) {
+            written--;
+            indent(depth);
+            writer.write("</");
+            writer.write(name);
+            writer.write('>');
+            writer.write(NEWLINE);
+        }
+    }
+    
+    /**
+     * Writes the start tags of the open elements that weren't written yet.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void flush() throws IOException {
+        int target = open.size() - 1;
+        while (written < target) {
+            indent(written);
+            writer.write('<');
+            writer.write(open.get(written));
+            writer.write('>');
+            writer.write(NEWLINE);
+            written++;
+        }
+    }
+    
+    /**
+     * Writes an element with text content on a single line,
+     * unless there is no text. Empty attributes are left out.
+     *
+     * @param name the element name
+     * @param text the text
+     * @param attributes the attribute names and values, alternately
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void element(String name, String text, String... attributes) throws IOException {
+        if (text == null || text.length() == 0)
+            return;
+        open.add(name);
+        flush();
+        open.remove(open.size() - 1);
+        indent(open.size());
+        writeTag(name, attributes);
+        escape(text, false);
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+        writer.write(NEWLINE);
+    }
+    
+    /**
+     * Writes a start tag with its non-empty attributes.
+     *
+     * @param name the element name
+     * @param attributes the attribute names and values, alternately
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void writeTag(String name, String[] attributes) throws IOException {
+        writer.write('<');
+        writer.write(name);
+        for (int i = 0; i < attributes.length; i += 2) {
+            String value = attributes[i + 1];
+            if (value == null || value.length() == 0)
+                continue;
+            writer.write(' ');
+            writer.write(attributes[i]);
+            writer.write("=\"");
+            escape(value, true);
+            writer.write('"');
+        }
+        writer.write('>');
+    }
+    
+    /**
+     * Writes the indentation of a nesting level.
+     *
+     * @param depth the nesting level
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void indent(int depth) throws IOException {
+        for (int i = 0; i < depth; i++) {
+            writer.write(INDENT);
+        }
+    }
+    
+    /**
+     * Writes text, escaping it the way the JDK serializer does: markup
+     * characters become entities, and a line feed in text becomes the
+     * line separator of the platform.
+     *
+     * @param text the text
+     * @param attribute whether the text is an attribute value
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected void escape(String text, boolean attribute) throws IOException {
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            String replacement;
+            switch (text.charAt(i)) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '"':
+                replacement = attribute ? "&quot;" : null;
+                break;
+            case '\n':
+                replacement = attribute ? "&#10;" : NEWLINE;
+                break;
+            case '\r':
+                replacement = "&#13;";
+                break;
+            case '\t':
+                replacement = attribute ? "&#9;" : null;
+                break;
+            default:
+                replacement = null;
+            }
+            if (replacement != null) {
+                writer.write(text, start, i - start);
+                writer.write(replacement);
+                start = i + 1;
+            }
+        }
+        writer.write(text, start, length - start);
+    }
+}
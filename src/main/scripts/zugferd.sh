@@ -0,0 +1,139 @@
+#!/bin/sh
+#
+# Part of the batch tools built around the examples of the ZUGFeRD book.
+# See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+#
+# Starts the invoice generators with an application class-data sharing
+# (AppCDS) archive, so that the classes of iText, pdfHTML, the XSLT engine
+# and HSQLDB are mapped from the archive instead of being loaded, parsed
+# and verified at every start. Needs Java 11 or later; on older versions
+# the generators are started without the archive.
+#
+# Build the project jar and the classpath file first:
+#   mvn -Pappcds package
+# which also runs "train". Then:
+#   src/main/scripts/zugferd.sh train
+#       records the classes loaded by CdsTraining and dumps the archive
+#   src/main/scripts/zugferd.sh run <main class> [args]
+#       starts a generator with the archive
+#   src/main/scripts/zugferd.sh measure [runs] [main class [args]]
+#       starts a program with the default CDS archive of the JDK
+#       (-Xshare:auto) and with the application archive, and prints the
+#       average wall times; by default PdfInvoicesBasic, PdfInvoicesComfort
+#       and XmlInvoicesComfort are measured, each reading the first
+#       3 invoices of a small CSV export, so that the startup dominates
+#
+# The archive is only valid for the exact JDK and classpath it was dumped
+# with: train again after changing either.
+
+cd "$(dirname "$0")/../../.." || exit 1
+
+TARGET=target
+ARCHIVE=$TARGET/zugferd.jsa
+CLASSLIST=$TARGET/zugferd.classlist
+TIMES=$TARGET/zugferd.times
+SAMPLE=$TARGET/zugferd.sample.csv
+SAMPLE_SIZE=3
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+
+JAR=$(ls $TARGET/zugferd-book-*.jar 2>/dev/null | grep -v -e '-sources' -e '-javadoc' | head -n 1)
+if [ -z "$JAR" ] || [ ! -f $TARGET/classpath.txt ]; then
+    echo "Run 'mvn -Pappcds package' first" >&2
+    exit 1
+fi
+# AppCDS only archives classes from jar files, so the classes directory isn't used
+CP=$JAR:$(cat $TARGET/classpath.txt)
+
+supported() {
+    version=$("$JAVA" -version 2>&1 | head -n 1 | sed 's/.*version "\([0-9]*\).*/\1/')
+    [ "$version" -ge 11 ] 2>/dev/null
+}
+
+# prints the wall time of a command in seconds: with the POSIX time utility
+# if it is installed, otherwise with the nanoseconds of GNU or busybox date
+elapsed() {
+    if command time -p true > /dev/null 2>&1; then
+        LC_ALL=C command time -p sh -c '"$@" > /dev/null 2>&1' sh "$@" 2> "$TIMES" || return 1
+        awk '/^real/ { print $2 }' "$TIMES"
+        return 0
+    fi
+    case $(date +%N) in
+    *[!0-9]*)
+        echo "Neither the time utility nor date +%N is available" >&2
+        return 1
+        ;;
+    esac
+    start=$(date +%s%N)
+    "$@" > /dev/null 2>&1 || return 1
+    awk -v start="$start" -v end="$(date +%s%N)" 'BEGIN { print (end - start) / 1e9 }'
+}
+
+# runs a program $RUNS times with each kind of sharing and prints the average wall times
+measure() {
+    for mode in default archive; do
+        total=0
+        i=0
+        while [ $i -lt "$RUNS" ]; do
+            if [ $mode = default ]; then
+                t=$(elapsed "$JAVA" -Xshare:auto $JAVA_OPTS -cp "$CP" "$@") || return 1
+            else
+                t=$(elapsed "$JAVA" -Xshare:on -XX:SharedArchiveFile="$ARCHIVE" $JAVA_OPTS -cp "$CP" "$@") || return 1
+            fi
+            total=$(awk -v a="$total" -v b="$t" 'BEGIN { print a + b }')
+            i=$((i + 1))
+        done
+        awk -v total="$total" -v runs="$RUNS" -v main="$1" -v mode="$mode" \
+            'BEGIN { printf "%s, %s sharing: %.0f ms on average over %d runs\n", main, mode, total * 1000 / runs, runs }'
+    done
+}
+
+case "$1" in
+train)
+    if ! supported; then
+        echo "AppCDS needs Java 11 or later, no archive created" >&2
+        exit 0
+    fi
+    rm -f "$ARCHIVE" "$CLASSLIST"
+    "$JAVA" -Xshare:off -XX:DumpLoadedClassList="$CLASSLIST" -cp "$CP" \
+        com.itextpdf.zugferd.tools.CdsTraining || exit 1
+    "$JAVA" -Xshare:dump -XX:SharedClassListFile="$CLASSLIST" -XX:SharedArchiveFile="$ARCHIVE" \
+        -cp "$CP" || exit 1
+    echo "Archive written to $ARCHIVE"
+    ;;
+run)
+    shift
+    if supported && [ -f "$ARCHIVE" ]; then
+        exec "$JAVA" -Xshare:auto -XX:SharedArchiveFile="$ARCHIVE" $JAVA_OPTS -cp "$CP" "$@"
+    fi
+    exec "$JAVA" $JAVA_OPTS -cp "$CP" "$@"
+    ;;
+measure)
+    shift
+    RUNS=${1:-5}
+    case $RUNS in
+    *[!0-9]*)
+        echo "Usage: $0 measure [runs] [main class [args]]" >&2
+        exit 1
+        ;;
+    esac
+    [ $# -gt 0 ] && shift
+    if ! supported || [ ! -f "$ARCHIVE" ]; then
+        echo "No archive, run '$0 train' first" >&2
+        exit 1
+    fi
+    if [ $# -gt 0 ]; then
+        measure "$@" || exit 1
+        exit 0
+    fi
+    if [ ! -f "$SAMPLE" ]; then
+        "$JAVA" $JAVA_OPTS -cp "$CP" com.itextpdf.zugferd.pojo.CsvInvoiceSource "$SAMPLE" $SAMPLE_SIZE || exit 1
+    fi
+    for main in PdfInvoicesBasic PdfInvoicesComfort XmlInvoicesComfort; do
+        measure com.itextpdf.zugferd.$main "$SAMPLE" || exit 1
+    done
+    ;;
+*)
+    echo "Usage: $0 train | run <main class> [args] | measure [runs] [main class [args]]" >&2
+    exit 1
+    ;;
+esac
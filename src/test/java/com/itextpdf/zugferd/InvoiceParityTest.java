@@ -0,0 +1,120 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.itextpdf.licensekey.LicenseKey;
+import com.itextpdf.zugferd.pojo.Customer;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.pojo.Item;
+import com.itextpdf.zugferd.pojo.Product;
+import com.itextpdf.zugferd.pojo.SyntheticInvoices;
+
+/**
+ * Base class of the tests that check that a faster engine writes the same
+ * output as the engine of the book. Every subclass is run for synthetic
+ * invoices of different lengths, and can use {@link #createInvoice(int, String, String, double...)}
+ * for invoices with unusual names or prices.
+ */
+public abstract class InvoiceParityTest {
+    
+    /** A name with the characters that must be escaped in XML and HTML, umlauts and a line break. */
+    public static final String SPECIAL = "M\u00fcller & S\u00f6hne <GmbH> \"Die \u00c4lteste\" 'B\u00e4ckerei'\nStra\u00dfe";
+    
+    @BeforeClass
+    public static void beforeClass() {
+        if (System.getenv("ITEXT7_LICENSEKEY") != null)
+            LicenseKey.loadLicenseFile(System.getenv("ITEXT7_LICENSEKEY") + "/itextkey-html2pdf_typography.xml");
+    }
+    
+    @Test
+    public void singleLineTest() throws Exception {
+        assertSame(1);
+    }
+    
+    @Test
+    public void severalLinesTest() throws Exception {
+        assertSame(12);
+    }
+    
+    @Test
+    public void manyLinesTest() throws Exception {
+        assertSame(150);
+    }
+    
+    /**
+     * Checks a few synthetic invoices.
+     *
+     * @param lines the number of lines per invoice
+     * @throws Exception if an invoice can't be processed
+     */
+    protected void assertSame(int lines) throws Exception {
+        SyntheticInvoices invoices = new SyntheticInvoices(3, lines);
+        Invoice invoice;
+        while ((invoice = invoices.next()) != null) {
+            assertSame(invoice);
+        }
+    }
+    
+    /**
+     * Processes an invoice with both engines and compares the output.
+     *
+     * @param invoice the invoice
+     * @throws Exception if the invoice can't be processed
+     */
+    protected abstract void assertSame(Invoice invoice) throws Exception;
+    
+    /**
+     * Creates an invoice with one line per price, with a quantity of 1, 2, 3...
+     *
+     * @param id the id of the invoice
+     * @param customerName the first and the last name of the customer
+     * @param productName the name of the products, followed by their number
+     * @param prices the prices of the products
+     * @return the invoice
+     */
+    public static Invoice createInvoice(int id, String customerName, String productName, double... prices) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setFirstName(customerName);
+        customer.setLastName(customerName);
+        customer.setStreet(customerName);
+        customer.setPostalcode("9000");
+        customer.setCity(customerName);
+        customer.setCountryId("DE");
+        Invoice invoice = new Invoice();
+        invoice.setId(id);
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2015, Calendar.APRIL, 1);
+        invoice.setInvoiceDate(calendar.getTime());
+        invoice.setCustomer(customer);
+        List<Item> items = new ArrayList<Item>();
+        double total = 0;
+        for (int i = 0; i < prices.length; i++) {
+            Product product = new Product();
+            product.setId(i);
+            product.setName(String.format("%s %d", productName, i + 1));
+            product.setPrice(prices[i]);
+            product.setVat(i % 2 == 0 ? 19 : 7);
+            Item item = new Item();
+            item.setItem(i + 1);
+            item.setProduct(product);
+            item.setQuantity(i + 1);
+            item.setCost(item.getQuantity() * product.getPrice());
+            total += item.getCost();
+            items.add(item);
+        }
+        invoice.setItems(items);
+        invoice.setTotal(total);
+        return invoice;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.html;
+
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.itextpdf.test.annotations.type.UnitTest;
+import com.itextpdf.zugferd.HtmlInvoicesComfort;
+import com.itextpdf.zugferd.InvoiceParityTest;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.tools.HtmlEngineBenchmark;
+
+/**
+ * Checks that the {@link ComfortHtmlWriter} writes the same HTML as the
+ * XSLT stylesheet, for synthetic invoices of different lengths, for names
+ * that must be escaped, and for amounts that are rounded half up.
+ */
+@Category(UnitTest.class)
+public class ComfortHtmlWriterTest extends InvoiceParityTest {
+    
+    /** Renders the HTML with the XSLT stylesheet. */
+    protected HtmlInvoicesComfort xsl = new HtmlInvoicesComfort();
+    
+    /** Renders the HTML directly. */
+    protected HtmlInvoicesComfort direct = new HtmlInvoicesComfort();
+    
+    /** Compares the two versions of the HTML. */
+    protected HtmlEngineBenchmark comparator = new HtmlEngineBenchmark();
+    
+    /**
+     * Creates the test with both HTML engines.
+     */
+    public ComfortHtmlWriterTest() {
+        xsl.setDirectHtml(false);
+        direct.setDirectHtml(true);
+    }
+    
+    @Test
+    public void specialCharactersTest() throws Exception {
+        assertSame(createInvoice(1, SPECIAL, SPECIAL, 10, 20.5, 3.99));
+    }
+    
+    @Test
+    public void halfCentPricesTest() throws Exception {
+        assertSame(createInvoice(2, "Half", "Half cent", 0.125, 0.005, 1.005, 2.675, 0.045, 1.115));
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.InvoiceParityTest#assertSame(com.itextpdf.zugferd.pojo.Invoice)
+     */
+    protected void assertSame(Invoice invoice) throws Exception {
+        String difference = comparator.compare(render(xsl, invoice), render(direct, invoice));
+        Assert.assertNull(String.format("Invoice %s", invoice.getId()), difference);
+    }
+    
+    /**
+     * Renders the HTML of an invoice.
+     *
+     * @param app the HTML generator
+     * @param invoice the invoice
+     * @return the HTML
+     * @throws Exception if the invoice can't be rendered
+     */
+    protected static String render(HtmlInvoicesComfort app, Invoice invoice) throws Exception {
+        StringWriter writer = new StringWriter();
+        app.createHtml(invoice, writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.xml;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import com.itextpdf.test.annotations.type.UnitTest;
+
+/**
+ * Checks that an {@link XmlArchive} finds the invoices of an archive that
+ * were added out of order, and that an invoice can't be added twice.
+ */
+@Category(UnitTest.class)
+public class XmlArchiveTest {
+    
+    /** The ids in the order in which they are added. */
+    protected static final int[] IDS = {5, 2, 9, 1};
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void outOfOrderTest() throws Exception {
+        File file = createArchive();
+        XmlArchive archive = new XmlArchive(file);
+        try {
+            Assert.assertEquals(IDS.length, archive.size());
+            for (int id : IDS) {
+                Assert.assertTrue(archive.contains(id));
+                Assert.assertArrayEquals(createXml(id), archive.get(id));
+            }
+            Assert.assertFalse(archive.contains(3));
+            Assert.assertNull(archive.get(3));
+        }
+        finally {
+            archive.close();
+        }
+    }
+    
+    @Test
+    public void duplicateAddTest() throws Exception {
+        File file = folder.newFile("duplicate.xml.gz");
+        XmlArchiveWriter writer = new XmlArchiveWriter(file);
+        try {
+            writer.add(2, createXml(2));
+            writer.add(1, createXml(1));
+            writer.add(2, createXml(1));
+            Assert.fail("Invoice 2 was added twice");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        finally {
+            writer.close();
+        }
+        XmlArchive archive = new XmlArchive(file);
+        try {
+            Assert.assertEquals(2, archive.size());
+            Assert.assertArrayEquals(createXml(2), archive.get(2));
+        }
+        finally {
+            archive.close();
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void duplicateIndexTest() throws Exception {
+        File file = createArchive();
+        Writer index = new FileWriter(XmlArchive.getIndexFile(file), true);
+        try {
+            // a second entry for invoice 2, e.g. left by an interrupted run that was appended to
+            index.write(String.format("2,0,%d,%d\n", file.length(), createXml(5).length));
+        }
+        finally {
+            index.close();
+        }
+        new XmlArchive(file).close();
+    }
+    
+    /**
+     * Creates an archive with the invoices of {@link #IDS}, in that order.
+     *
+     * @return the archive
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected File createArchive() throws IOException {
+        File file = folder.newFile("invoices.xml.gz");
+        XmlArchiveWriter writer = new XmlArchiveWriter(file);
+        try {
+            for (int id : IDS) {
+                writer.add(id, createXml(id));
+            }
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+    
+    /**
+     * Creates a small XML document that is different for every invoice.
+     *
+     * @param id the invoice id
+     * @return the XML
+     */
+    protected static byte[] createXml(int id) {
+        StringBuilder xml = new StringBuilder("<invoice id=\"").append(id).append("\">");
+        for (int i = 0; i < id * 10; i++) {
+            xml.append("<line>").append(i).append("</line>");
+        }
+        return xml.append("</invoice>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Part of the batch tools built around the examples of the ZUGFeRD book.
+ * See http://developers.itextpdf.com/content/zugferd-future-invoicing/
+ */
+package com.itextpdf.zugferd.xml;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.itextpdf.test.annotations.type.UnitTest;
+import com.itextpdf.zugferd.InvoiceDOM;
+import com.itextpdf.zugferd.InvoiceParityTest;
+import com.itextpdf.zugferd.data.InvoiceData;
+import com.itextpdf.zugferd.pojo.Invoice;
+import com.itextpdf.zugferd.profiles.BasicProfileImp;
+import com.itextpdf.zugferd.profiles.IBasicProfile;
+import com.itextpdf.zugferd.tools.XmlEngineBenchmark;
+
+/**
+ * Checks that the {@link ZugferdXmlWriter} writes the same bytes as
+ * InvoiceDOM, for the Basic and the Comfort profile of synthetic invoices
+ * of different lengths, and for names that must be escaped.
+ */
+@Category(UnitTest.class)
+public class ZugferdXmlWriterTest extends InvoiceParityTest {
+    
+    /** Creates the profiles. */
+    protected InvoiceData data = new InvoiceData();
+    
+    @Test
+    public void specialCharactersTest() throws Exception {
+        Invoice invoice = createInvoice(1, SPECIAL, SPECIAL, 10, 20.5, 3.99);
+        BasicProfileImp basic = (BasicProfileImp)data.createBasicProfileData(invoice);
+        basic.setSellerName(SPECIAL);
+        assertSameXml(basic, invoice);
+        BasicProfileImp comfort = (BasicProfileImp)data.createComfortProfileData(invoice);
+        comfort.setSellerName(SPECIAL);
+        assertSameXml(comfort, invoice);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.itextpdf.zugferd.InvoiceParityTest#assertSame(com.itextpdf.zugferd.pojo.Invoice)
+     */
+    protected void assertSame(Invoice invoice) throws Exception {
+        assertSameXml(data.createBasicProfileData(invoice), invoice);
+        assertSameXml(data.createComfortProfileData(invoice), invoice);
+    }
+    
+    /**
+     * Writes the XML of a profile with both engines and compares the bytes.
+     *
+     * @param profile the Basic or Comfort profile
+     * @param invoice the invoice of the profile
+     * @throws Exception if the XML can't be created
+     */
+    protected void assertSameXml(IBasicProfile profile, Invoice invoice) throws Exception {
+        byte[] expected = new InvoiceDOM(profile).toXML();
+        byte[] actual = ZugferdXmlWriter.toXML(profile);
+        String message = String.format("Invoice %s", invoice.getId());
+        Assert.assertNull(message, XmlEngineBenchmark.compare(expected, actual));
+        Assert.assertArrayEquals(message, expected, actual);
+    }
+}